@@ -1,10 +1,22 @@
 package org.galatea.starter;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import feign.Logger;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
-import net.sf.aspect4log.aspect.LogAspect;
 import org.galatea.starter.domain.SettlementMission;
 import org.galatea.starter.service.IAgreementTransformer;
+import org.galatea.starter.service.IexAsyncClient;
+import org.galatea.starter.utils.cache.CacheHitRatioMetrics;
+import org.galatea.starter.utils.cache.JitteredCacheWriter;
+import org.galatea.starter.utils.concurrent.ChunkingExecutor;
+import org.galatea.starter.utils.logging.LoggedAspect;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
@@ -15,20 +27,24 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.EnableAspectJAutoProxy;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
 @Slf4j
 @Configuration
 @EnableAspectJAutoProxy
 @EnableCaching
 @EnableFeignClients
+@EnableScheduling
 public class AppConfig {
 
   /**
-   * Create a LogAspect for use with the SpringAOP @Log annotation.
+   * Create a LoggedAspect for use with the SpringAOP @Logged annotation.
    */
   @Bean
-  public LogAspect createLogAspect() {
-    return new LogAspect();
+  public LoggedAspect createLoggedAspect() {
+    return new LoggedAspect();
   }
 
   /**
@@ -66,6 +82,23 @@ public class AppConfig {
     return cmfb;
   }
 
+  /**
+   * Writes missions to the missions cache, spreading out when the entries written together expire.
+   */
+  @Bean
+  public JitteredCacheWriter missionCacheWriter(
+      @Value("${missions-cache.ttl-jitter}") final double ttlJitter) {
+    return new JitteredCacheWriter(ttlJitter);
+  }
+
+  /**
+   * Publishes the hit ratio of each cache.
+   */
+  @Bean
+  public CacheHitRatioMetrics cacheHitRatioMetrics(final CacheManager cacheManager) {
+    return new CacheHitRatioMetrics(cacheManager);
+  }
+
   /**
    * Set the Feign log level for interfaces annotated with @FeignClient.
    *
@@ -76,4 +109,66 @@ public class AppConfig {
     return Logger.Level.BASIC;
   }
 
+  /**
+   * Executor used to split IEX requests for many symbols into smaller requests that run in
+   * parallel. The pool and its queue are both bounded; once they are full the calling thread makes
+   * the request itself, which stops a flood of callers from queueing up unbounded work. Requests
+   * made with the non-blocking client are capped at the pool size too.
+   *
+   * <p>The pool isn't a bean of its own, as the ChunkingExecutor shuts it down when it's closed.
+   */
+  @Bean
+  public ChunkingExecutor iexChunkingExecutor(
+      @Value("${iex.fan-out.chunk-size}") final int chunkSize,
+      @Value("${iex.fan-out.pool-size}") final int poolSize,
+      @Value("${iex.fan-out.queue-capacity}") final int queueCapacity) {
+    ThreadPoolExecutor pool = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("iex-fan-out-"),
+        new ThreadPoolExecutor.CallerRunsPolicy());
+    pool.allowCoreThreadTimeOut(true);
+    return new ChunkingExecutor(pool, chunkSize, poolSize);
+  }
+
+  /**
+   * Executor used to fetch historical prices for many symbols at once, one request per symbol. Kept
+   * apart from the iexChunkingExecutor so that a large batch can't hold up last traded price
+   * lookups. Its pool size caps how many requests a batch makes to IEX at the same time.
+   *
+   * <p>Once the pool and its queue are full, further requests are rejected and reported as failed
+   * symbols. Making them on the caller's thread instead would block the request past its timeout.
+   */
+  @Bean
+  public ChunkingExecutor iexHistoricalExecutor(
+      @Value("${iex.historical-batch.pool-size}") final int poolSize,
+      @Value("${iex.historical-batch.queue-capacity}") final int queueCapacity) {
+    ThreadPoolExecutor pool = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("iex-historical-"),
+        new ThreadPoolExecutor.AbortPolicy());
+    pool.allowCoreThreadTimeOut(true);
+    return new ChunkingExecutor(pool, 1, poolSize);
+  }
+
+  /**
+   * Non-blocking client for IEX. Responses are handled on a small fixed pool of daemon threads,
+   * however many requests are in flight.
+   */
+  @Bean
+  public IexAsyncClient iexAsyncClient(final ObjectProvider<ObjectMapper> objectMapper,
+      @Value("${spring.rest.iexBasePath}") final String basePath,
+      @Value("${spring.rest.iexCloudPath}") final String cloudPath,
+      @Value("${spring.rest.iexApiToken:}") final String apiToken,
+      @Value("${iex.async.threads}") final int threads,
+      @Value("${iex.async.request-timeout-millis}") final long requestTimeoutMillis) {
+    CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("iex-async-");
+    threadFactory.setDaemon(true);
+    HttpClient httpClient = HttpClient.newBuilder()
+        .executor(Executors.newFixedThreadPool(threads, threadFactory))
+        .connectTimeout(Duration.ofMillis(requestTimeoutMillis))
+        .build();
+    // Use the same JSON mapping as the Feign clients where the application's mapper is available
+    return new IexAsyncClient(httpClient,
+        objectMapper.getIfAvailable(() -> Jackson2ObjectMapperBuilder.json().build()),
+        basePath, cloudPath, apiToken, Duration.ofMillis(requestTimeoutMillis));
+  }
+
 }
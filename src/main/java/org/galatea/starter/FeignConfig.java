@@ -0,0 +1,95 @@
+package org.galatea.starter;
+
+import feign.Client;
+import feign.Request;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.galatea.starter.utils.http.ConnectionPoolMetrics;
+import org.galatea.starter.utils.http.PooledFeignClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Sends the requests of the @FeignClient interfaces (IexClient and IexHistoricalClient) through a
+ * pool of kept-alive connections, rather than a new HttpURLConnection per request.
+ *
+ * <p>Set iex.http.pooled to false to fall back to Feign's default client.
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "iex.http.pooled", matchIfMissing = true)
+public class FeignConfig {
+
+  /**
+   * Pool of connections shared by the Feign clients. Connections are checked before being reused if
+   * they've sat idle for a while, and are retired after a fixed time to live so that changes to the
+   * addresses behind a host name get picked up.
+   */
+  @Bean
+  public PoolingHttpClientConnectionManager iexConnectionManager(
+      @Value("${iex.http.max-connections}") final int maxConnections,
+      @Value("${iex.http.max-connections-per-route}") final int maxConnectionsPerRoute,
+      @Value("${iex.http.connection-ttl-millis}") final long connectionTtlMillis,
+      @Value("${iex.http.validate-after-inactivity-millis}") final int validateAfterMillis) {
+    PoolingHttpClientConnectionManager connectionManager =
+        new PoolingHttpClientConnectionManager(connectionTtlMillis, TimeUnit.MILLISECONDS);
+    connectionManager.setMaxTotal(maxConnections);
+    connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+    connectionManager.setValidateAfterInactivity(validateAfterMillis);
+    return connectionManager;
+  }
+
+  /**
+   * HTTP client over the pool. A background thread closes connections that have expired or sat
+   * idle for too long, so they don't linger half-closed. Unless compression is turned off, gzip
+   * responses are asked for and unpacked before Feign sees them.
+   */
+  @Bean
+  public CloseableHttpClient iexHttpClient(
+      final PoolingHttpClientConnectionManager iexConnectionManager,
+      @Value("${iex.http.idle-evict-millis}") final long idleEvictMillis,
+      @Value("${iex.http.compression}") final boolean compression) {
+    HttpClientBuilder builder = HttpClients.custom()
+        .setConnectionManager(iexConnectionManager)
+        .evictExpiredConnections()
+        .evictIdleConnections(idleEvictMillis, TimeUnit.MILLISECONDS)
+        .disableCookieManagement();
+    if (!compression) {
+      builder.disableContentCompression();
+    }
+    return builder.build();
+  }
+
+  /**
+   * The client used by every @FeignClient that is given a url.
+   */
+  @Bean
+  public Client iexFeignClient(final CloseableHttpClient iexHttpClient) {
+    return new PooledFeignClient(iexHttpClient);
+  }
+
+  /**
+   * Connect and read timeouts for every @FeignClient.
+   */
+  @Bean
+  public Request.Options iexFeignOptions(
+      @Value("${iex.http.connect-timeout-millis}") final int connectTimeoutMillis,
+      @Value("${iex.http.read-timeout-millis}") final int readTimeoutMillis) {
+    return new Request.Options(connectTimeoutMillis, readTimeoutMillis);
+  }
+
+  /**
+   * Publishes the utilization of the Feign connection pool through actuator.
+   */
+  @Bean
+  public ConnectionPoolMetrics iexConnectionPoolMetrics(
+      final PoolingHttpClientConnectionManager iexConnectionManager) {
+    return new ConnectionPoolMetrics(iexConnectionManager, "iex");
+  }
+}
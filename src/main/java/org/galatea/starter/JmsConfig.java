@@ -5,6 +5,8 @@ import javax.jms.ConnectionFactory;
 import javax.jms.Message;
 import lombok.extern.slf4j.Slf4j;
 import org.galatea.starter.utils.jms.FuseJmsListenerContainerFactory;
+import org.galatea.starter.utils.jms.JmsBatchDrainer;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.jms.DefaultJmsListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -32,6 +34,18 @@ public class JmsConfig implements JmsListenerConfigurer {
         "Message {} failed to process after retries.  Removing message from queue", msg, err);
   }
 
+  /**
+   * Lets the listeners pull several queued messages and handle them in one go.
+   *
+   * @param maxBatchSize the most messages to handle at once, or 1 to handle them one at a time
+   * @param maxWaitMillis how long to wait for a batch to fill up
+   */
+  @Bean
+  public JmsBatchDrainer jmsBatchDrainer(@Value("${jms.batch.max-size}") final int maxBatchSize,
+      @Value("${jms.batch.max-wait-millis}") final long maxWaitMillis) {
+    return new JmsBatchDrainer(maxBatchSize, maxWaitMillis);
+  }
+
   /**
    * Returns a message converter to handle JSON formatted messages.
    */
@@ -64,6 +78,9 @@ public class JmsConfig implements JmsListenerConfigurer {
     // http://docs.spring.io/spring-framework/docs/current/javadoc-api/org/springframework/
     // jms/listener/DefaultMessageListenerContainer.html
     configurer.configure(listenerFactory, queueConnectionFactory);
+    // Boot already does this when there's no JTA transaction manager, but batched listeners rely
+    // on it: every message drained into a batch is acknowledged when the session commits
+    listenerFactory.setSessionTransacted(true);
 
     // TODO: override any defaults in the listener factory before we return the object
     return listenerFactory;
@@ -2,12 +2,23 @@ package org.galatea.starter;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.Sets;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
 import lombok.extern.slf4j.Slf4j;
 import org.galatea.starter.utils.FuseHttpTraceRepository;
 import org.galatea.starter.utils.http.converter.SettlementMissionCsvConverter;
 import org.galatea.starter.utils.http.converter.SettlementMissionXlsxConverter;
 import org.galatea.starter.utils.rest.FuseHttpTraceFilter;
+import org.galatea.starter.utils.rest.IRequestIdGenerator;
+import org.galatea.starter.utils.rest.PayloadCapturePolicy;
+import org.galatea.starter.utils.rest.RandomRequestIdGenerator;
+import org.galatea.starter.utils.rest.RouteLatencyEndpoint;
+import org.galatea.starter.utils.rest.RouteLatencyRecorder;
+import org.galatea.starter.utils.rest.SnowflakeRequestIdGenerator;
+import org.galatea.starter.utils.rest.TraceSampler;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.actuate.trace.http.HttpExchangeTracer;
 import org.springframework.boot.actuate.trace.http.Include;
 import org.springframework.boot.actuate.web.trace.servlet.HttpTraceFilter;
@@ -33,23 +44,110 @@ public class MvcConfig implements WebMvcConfigurer {
   public static final MediaType APPLICATION_EXCEL = new MediaType("application", "vnd.ms-excel");
   public static final String APPLICATION_EXCEL_VALUE = "application/vnd.ms-excel";
 
+  public static final MediaType APPLICATION_NDJSON = new MediaType("application", "x-ndjson");
+  public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+  @Value("${mvc.xlsx-row-access-window}")
+  private int xlsxRowAccessWindow;
+
+  @Value("${mvc.trace.queue-capacity}")
+  private int traceQueueCapacity;
+
+  @Value("${mvc.trace.batch-size}")
+  private int traceBatchSize;
+
+  @Value("${mvc.trace.idle-millis}")
+  private long traceIdleMillis;
+
+  @Value("${mvc.max-size-trace-payload}")
+  private int maxSizeTracePayload;
+
+  @Value("${mvc.trace.payload-sample-rate}")
+  private double tracePayloadSampleRate;
+
   /**
    * This is used to trace web requests and store that trace info.
    *
+   * @param requestIdGenerator generates the internal id given to each request
+   * @param latencyRecorder records how long each request takes, by route
+   * @param traceSampler decides which requests are traced
    * @return the trace filter
    */
   @Bean
-  public HttpTraceFilter httpTraceFilter() {
+  public HttpTraceFilter httpTraceFilter(final IRequestIdGenerator requestIdGenerator,
+      final RouteLatencyRecorder latencyRecorder, final TraceSampler traceSampler) {
     return new FuseHttpTraceFilter(fuseHttpTraceRepository(), httpExchangeTracer(),
-        path -> path.startsWith("/trace"));
+        path -> path.startsWith("/trace"), requestIdGenerator,
+        new PayloadCapturePolicy(maxSizeTracePayload, tracePayloadSampleRate), latencyRecorder,
+        traceSampler);
   }
 
   /**
-   * Repository for storing trace info.
+   * Decides which requests are traced.
+   *
+   * @param probability the fraction of requests to trace
+   * @param maxPerSecond the most requests to trace a second, 0 for no limit
+   * @param routes the fraction of requests to trace for paths starting with each prefix
+   * @param alwaysTraceErrors whether failed requests are traced even if they weren't sampled
    */
   @Bean
+  public TraceSampler traceSampler(
+      @Value("${mvc.trace.sampling.probability}") final double probability,
+      @Value("${mvc.trace.sampling.max-per-second}") final double maxPerSecond,
+      @Value("#{${mvc.trace.sampling.routes}}") final Map<String, Double> routes,
+      @Value("${mvc.trace.sampling.always-trace-errors}") final boolean alwaysTraceErrors) {
+    return new TraceSampler(probability, maxPerSecond, routes, alwaysTraceErrors);
+  }
+
+  /**
+   * Keeps a latency histogram for each route.
+   *
+   * @param windowMillis how far back the latency percentiles look
+   * @param windowBuffers how many steps the window rolls forward in
+   */
+  @Bean
+  public RouteLatencyRecorder routeLatencyRecorder(final MeterRegistry meterRegistry,
+      @Value("${mvc.trace.latency.window-millis}") final long windowMillis,
+      @Value("${mvc.trace.latency.window-buffers}") final int windowBuffers) {
+    return new RouteLatencyRecorder(meterRegistry, Duration.ofMillis(windowMillis),
+        windowBuffers);
+  }
+
+  /**
+   * Lists every route's latency percentiles at /actuator/latency.
+   */
+  @Bean
+  public RouteLatencyEndpoint routeLatencyEndpoint(final RouteLatencyRecorder latencyRecorder) {
+    return new RouteLatencyEndpoint(latencyRecorder);
+  }
+
+  /**
+   * Generates the internal id given to each request.
+   *
+   * @param generator "snowflake" for time-ordered ids, or "random" for random ones
+   * @param nodeId identifies this instance of the application in snowflake ids
+   */
+  @Bean
+  public IRequestIdGenerator requestIdGenerator(
+      @Value("${mvc.request-id.generator}") final String generator,
+      @Value("${mvc.request-id.node-id}") final int nodeId) {
+    switch (generator) {
+      case "snowflake":
+        return new SnowflakeRequestIdGenerator(nodeId);
+      case "random":
+        return new RandomRequestIdGenerator();
+      default:
+        throw new IllegalArgumentException("Unknown request id generator " + generator);
+    }
+  }
+
+  /**
+   * Repository for storing trace info. Traces are written to the trace log in the background.
+   */
+  @Bean(initMethod = "start")
   public FuseHttpTraceRepository fuseHttpTraceRepository() {
-    return new FuseHttpTraceRepository(new ObjectMapper());
+    return new FuseHttpTraceRepository(new ObjectMapper(), traceQueueCapacity, traceBatchSize,
+        traceIdleMillis);
   }
 
   /**
@@ -78,6 +176,7 @@ public class MvcConfig implements WebMvcConfigurer {
     configurer.mediaType("xml", MediaType.APPLICATION_XML);
     configurer.mediaType("csv", TEXT_CSV);
     configurer.mediaType("xlsx", APPLICATION_EXCEL);
+    configurer.mediaType("ndjson", APPLICATION_NDJSON);
 
   }
 
@@ -89,7 +188,7 @@ public class MvcConfig implements WebMvcConfigurer {
     converters.add(new MappingJackson2HttpMessageConverter()); // JSON
     converters.add(new Jaxb2RootElementHttpMessageConverter()); // XML
     converters.add(new SettlementMissionCsvConverter());
-    converters.add(new SettlementMissionXlsxConverter());
+    converters.add(new SettlementMissionXlsxConverter(xlsxRowAccessWindow));
   }
 
 }
@@ -0,0 +1,121 @@
+package org.galatea.starter;
+
+import feign.FeignException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.galatea.starter.service.IexAsyncClient.IexRequestException;
+import org.galatea.starter.utils.resilience.CircuitBreaker;
+import org.galatea.starter.utils.resilience.ResiliencePolicy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Resilience policies for the calls IexService makes to IEX, one per endpoint so that trouble with
+ * one endpoint doesn't hold up calls to the other. Each bean publishes its own metrics through
+ * actuator.
+ */
+@Slf4j
+@Configuration
+public class ResilienceConfig {
+
+  @Value("${iex.resilience.circuit-breaker.window-size}")
+  private int windowSize;
+
+  @Value("${iex.resilience.circuit-breaker.minimum-calls}")
+  private int minimumCalls;
+
+  @Value("${iex.resilience.circuit-breaker.failure-rate-threshold}")
+  private double failureRateThreshold;
+
+  @Value("${iex.resilience.circuit-breaker.open-millis}")
+  private long openMillis;
+
+  @Value("${iex.resilience.hedging.enabled}")
+  private boolean hedgingEnabled;
+
+  /**
+   * Guards requests to IEX for last traded prices.
+   */
+  @Bean
+  public ResiliencePolicy lastTradedPricePolicy(
+      @Value("${iex.resilience.last-traded-price.max-concurrent-calls}") final int maxCalls,
+      final ThreadPoolExecutor lastTradedPriceHedgeExecutor) {
+    return policy("lastTradedPrice", maxCalls, lastTradedPriceHedgeExecutor);
+  }
+
+  /**
+   * Guards requests to IEX for historical prices.
+   */
+  @Bean
+  public ResiliencePolicy historicalPricesPolicy(
+      @Value("${iex.resilience.historical-prices.max-concurrent-calls}") final int maxCalls,
+      final ThreadPoolExecutor historicalPricesHedgeExecutor) {
+    return policy("historicalPrices", maxCalls, historicalPricesHedgeExecutor);
+  }
+
+  /**
+   * Runs the calls made through the lastTradedPricePolicy when hedging is enabled.
+   */
+  @Bean(destroyMethod = "shutdown")
+  public ThreadPoolExecutor lastTradedPriceHedgeExecutor(
+      @Value("${iex.resilience.last-traded-price.max-concurrent-calls}") final int maxCalls) {
+    return hedgeExecutor("lastTradedPrice", maxCalls);
+  }
+
+  /**
+   * Runs the calls made through the historicalPricesPolicy when hedging is enabled.
+   */
+  @Bean(destroyMethod = "shutdown")
+  public ThreadPoolExecutor historicalPricesHedgeExecutor(
+      @Value("${iex.resilience.historical-prices.max-concurrent-calls}") final int maxCalls) {
+    return hedgeExecutor("historicalPrices", maxCalls);
+  }
+
+  private ResiliencePolicy policy(final String name, final int maxConcurrentCalls,
+      final ThreadPoolExecutor hedgeExecutor) {
+    CircuitBreaker circuitBreaker = new CircuitBreaker(name, windowSize, minimumCalls,
+        failureRateThreshold, openMillis, ResilienceConfig::isIexOutage);
+    return new ResiliencePolicy(name, maxConcurrentCalls, circuitBreaker,
+        hedgingEnabled ? hedgeExecutor : null);
+  }
+
+  /*
+   * Threads for hedged calls. The bulkhead lets maxConcurrentCalls calls in at once, and each can
+   * have its first attempt and one hedge running, so that's how many threads the pool has. An
+   * attempt abandoned once the other finished keeps its thread until the IEX read timeout, so
+   * attempts can queue behind those for a while. Past that the pool rejects, failing a first
+   * attempt or skipping a hedge. Threads are only started when needed and stop once idle.
+   */
+  private static ThreadPoolExecutor hedgeExecutor(final String name,
+      final int maxConcurrentCalls) {
+    CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("iex-hedge-" + name
+        + "-");
+    threadFactory.setDaemon(true);
+    int threads = 2 * maxConcurrentCalls;
+    ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(maxConcurrentCalls), threadFactory,
+        new ThreadPoolExecutor.AbortPolicy());
+    pool.allowCoreThreadTimeOut(true);
+    return pool;
+  }
+
+  /*
+   * IEX rejecting a request (an unknown symbol, say) shows that it's up, so only server errors,
+   * timeouts and connection failures count against the circuit breaker.
+   */
+  static boolean isIexOutage(final Throwable error) {
+    int status;
+    if (error instanceof FeignException) {
+      status = ((FeignException) error).status();
+    } else if (error instanceof IexRequestException) {
+      status = ((IexRequestException) error).getStatus();
+    } else {
+      return true;
+    }
+    return status < 400 || status >= 500;
+  }
+}
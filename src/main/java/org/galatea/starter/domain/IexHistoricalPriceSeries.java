@@ -0,0 +1,367 @@
+package org.galatea.starter.domain;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import java.io.IOException;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.AbstractList;
+import java.util.List;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+/**
+ * A series of historical prices for one symbol, held column by column in primitive arrays rather
+ * than as one {@link IexHistoricalPrices} object per bar.
+ *
+ * <p>A bar as an IexHistoricalPrices object is the object itself, five BigDecimals (each with its
+ * own BigInteger once the value is large enough) and a date String. Here it is a handful of array
+ * slots, which is an order of magnitude less heap for long series and much less for the garbage
+ * collector to trace. See IexHistoricalPriceSeriesTest for a comparison.
+ *
+ * <p>Prices and volumes are held as an unscaled long and a scale, so they come back exactly as
+ * IEX sent them, 116.50 included. Dates are held as a day number and the format IEX used for
+ * them. Values that don't fit, such as a date in neither format, are kept as they were. Missing
+ * values come back as null.
+ *
+ * <p>Serializes to the same JSON as the equivalent list of IexHistoricalPrices.
+ */
+@EqualsAndHashCode
+@JsonSerialize(using = IexHistoricalPriceSeries.Serializer.class)
+public final class IexHistoricalPriceSeries implements Serializable {
+
+  /**
+   * Stands in for a missing volume or date.
+   */
+  public static final long MISSING = Long.MIN_VALUE;
+
+  // The way the series is held changed, so series cached to disk before then can't be read
+  private static final long serialVersionUID = 2L;
+
+  // The formats a date can be held in. Daily bars are dated yyyy-MM-dd, and intraday bars yyyyMMdd
+  private static final byte ISO_DATE = 0;
+  private static final byte BASIC_DATE = 1;
+  private static final byte OTHER_DATE = 2;
+
+  /**
+   * The symbol every bar in the series is for. Interned, so that the many series for one symbol
+   * share a single String.
+   */
+  @Getter
+  private final String symbol;
+
+  private final long[] epochDays;
+  private final byte[] dateFormats;
+  // Dates in neither format, as they were. Only created if there are any
+  private String[] otherDates;
+  private final DecimalColumn open;
+  private final DecimalColumn high;
+  private final DecimalColumn low;
+  private final DecimalColumn close;
+  private final DecimalColumn volume;
+
+  private IexHistoricalPriceSeries(final String symbol, final int size) {
+    this.symbol = symbol == null ? null : symbol.intern();
+    this.epochDays = new long[size];
+    this.dateFormats = new byte[size];
+    this.open = new DecimalColumn(size);
+    this.high = new DecimalColumn(size);
+    this.low = new DecimalColumn(size);
+    this.close = new DecimalColumn(size);
+    this.volume = new DecimalColumn(size);
+  }
+
+  /**
+   * Create an empty series for the given symbol.
+   */
+  public static IexHistoricalPriceSeries empty(final String symbol) {
+    return new IexHistoricalPriceSeries(symbol, 0);
+  }
+
+  /**
+   * Create a series from the prices returned by IEX for a single symbol.
+   *
+   * @param symbol the symbol the prices were requested for. Only used if IEX didn't include the
+   *     symbol in the prices themselves.
+   * @param prices the prices, in the order they should be held in the series
+   * @return the series
+   */
+  public static IexHistoricalPriceSeries from(final String symbol,
+      final List<IexHistoricalPrices> prices) {
+    String seriesSymbol = prices.isEmpty() || prices.get(0).getSymbol() == null
+        ? symbol
+        : prices.get(0).getSymbol();
+    IexHistoricalPriceSeries series = new IexHistoricalPriceSeries(seriesSymbol, prices.size());
+    for (int i = 0; i < prices.size(); i++) {
+      IexHistoricalPrices bar = prices.get(i);
+      series.setDate(i, bar.getDate());
+      series.open.set(i, bar.getOpen());
+      series.high.set(i, bar.getHigh());
+      series.low.set(i, bar.getLow());
+      series.close.set(i, bar.getClose());
+      series.volume.set(i, bar.getVolume());
+    }
+    return series;
+  }
+
+  /**
+   * Returns the number of bars in the series.
+   */
+  public int size() {
+    return epochDays.length;
+  }
+
+  /**
+   * Returns the date of the bar at the given index as a count of days since 1970-01-01, or
+   * {@link #MISSING} if it's missing or in neither of the formats used by IEX.
+   */
+  public long getEpochDay(final int index) {
+    return epochDays[index];
+  }
+
+  /**
+   * Returns the opening price of the bar at the given index, or NaN.
+   */
+  public double getOpen(final int index) {
+    return open.doubleValue(index);
+  }
+
+  /**
+   * Returns the highest price of the bar at the given index, or NaN.
+   */
+  public double getHigh(final int index) {
+    return high.doubleValue(index);
+  }
+
+  /**
+   * Returns the lowest price of the bar at the given index, or NaN.
+   */
+  public double getLow(final int index) {
+    return low.doubleValue(index);
+  }
+
+  /**
+   * Returns the closing price of the bar at the given index, or NaN.
+   */
+  public double getClose(final int index) {
+    return close.doubleValue(index);
+  }
+
+  /**
+   * Returns the volume traded in the bar at the given index, or {@link #MISSING}.
+   */
+  public long getVolume(final int index) {
+    return volume.longValue(index);
+  }
+
+  /**
+   * Get the bar at the given index as an IexHistoricalPrices object.
+   */
+  public IexHistoricalPrices get(final int index) {
+    return IexHistoricalPrices.builder()
+        .symbol(symbol)
+        .date(getDate(index))
+        .open(open.get(index))
+        .high(high.get(index))
+        .low(low.get(index))
+        .close(close.get(index))
+        .volume(volume.get(index))
+        .build();
+  }
+
+  /**
+   * Get a read-only view of the series as IexHistoricalPrices objects. Each bar is created as it
+   * is read from the list, so the objects aren't held onto by the series.
+   */
+  public List<IexHistoricalPrices> asList() {
+    return new AbstractList<IexHistoricalPrices>() {
+      @Override
+      public IexHistoricalPrices get(final int index) {
+        return IexHistoricalPriceSeries.this.get(index);
+      }
+
+      @Override
+      public int size() {
+        return IexHistoricalPriceSeries.this.size();
+      }
+    };
+  }
+
+  @Override
+  public String toString() {
+    return "IexHistoricalPriceSeries(symbol=" + symbol + ", size=" + size() + ")";
+  }
+
+  private void setDate(final int index, final String date) {
+    epochDays[index] = MISSING;
+    if (date == null) {
+      return;
+    }
+    byte format = date.indexOf('-') >= 0 ? ISO_DATE : BASIC_DATE;
+    long epochDay = toEpochDay(date, format);
+    if (epochDay != MISSING) {
+      epochDays[index] = epochDay;
+      dateFormats[index] = format;
+      return;
+    }
+    if (otherDates == null) {
+      otherDates = new String[size()];
+    }
+    otherDates[index] = date;
+    dateFormats[index] = OTHER_DATE;
+  }
+
+  private String getDate(final int index) {
+    if (dateFormats[index] == OTHER_DATE) {
+      return otherDates[index];
+    }
+    return epochDays[index] == MISSING
+        ? null
+        : LocalDate.ofEpochDay(epochDays[index]).format(formatter(dateFormats[index]));
+  }
+
+  /*
+   * The date as a day number, or MISSING if it isn't in the format or wouldn't format back to the
+   * same string.
+   */
+  private static long toEpochDay(final String date, final byte format) {
+    try {
+      LocalDate parsed = LocalDate.parse(date, formatter(format));
+      return parsed.format(formatter(format)).equals(date) ? parsed.toEpochDay() : MISSING;
+    } catch (DateTimeParseException e) {
+      return MISSING;
+    }
+  }
+
+  private static DateTimeFormatter formatter(final byte format) {
+    return format == ISO_DATE ? DateTimeFormatter.ISO_LOCAL_DATE : DateTimeFormatter.BASIC_ISO_DATE;
+  }
+
+  /**
+   * A column of BigDecimals, each held as an unscaled long and a scale. One that doesn't fit is
+   * held as it is.
+   */
+  @EqualsAndHashCode
+  private static final class DecimalColumn implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // Marks a missing value, or one that's held in overflow, in place of a scale
+    private static final byte MISSING_SCALE = Byte.MIN_VALUE;
+
+    // Powers of ten that are exact as doubles
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8,
+        1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    // The largest unscaled value that is exact as a double
+    private static final long MAX_EXACT_DOUBLE = 1L << 53;
+
+    private final long[] unscaled;
+    private final byte[] scales;
+    // Values that don't fit in a long and a byte. Only created if there are any
+    private BigDecimal[] overflow;
+
+    private DecimalColumn(final int size) {
+      this.unscaled = new long[size];
+      this.scales = new byte[size];
+    }
+
+    private void set(final int index, final BigDecimal value) {
+      scales[index] = MISSING_SCALE;
+      if (value == null) {
+        return;
+      }
+      if (value.scale() > MISSING_SCALE && value.scale() <= Byte.MAX_VALUE
+          && value.unscaledValue().bitLength() < Long.SIZE) {
+        unscaled[index] = value.unscaledValue().longValue();
+        scales[index] = (byte) value.scale();
+        return;
+      }
+      if (overflow == null) {
+        overflow = new BigDecimal[unscaled.length];
+      }
+      overflow[index] = value;
+    }
+
+    private BigDecimal get(final int index) {
+      if (scales[index] != MISSING_SCALE) {
+        return BigDecimal.valueOf(unscaled[index], scales[index]);
+      }
+      return overflow == null ? null : overflow[index];
+    }
+
+    private boolean isMissing(final int index) {
+      return scales[index] == MISSING_SCALE && (overflow == null || overflow[index] == null);
+    }
+
+    private double doubleValue(final int index) {
+      byte scale = scales[index];
+      long value = unscaled[index];
+      // Dividing two exact doubles rounds once, so this is the closest double to the value
+      if (scale >= 0 && scale < POWERS_OF_TEN.length && Math.abs(value) <= MAX_EXACT_DOUBLE) {
+        return value / POWERS_OF_TEN[scale];
+      }
+      return isMissing(index) ? Double.NaN : get(index).doubleValue();
+    }
+
+    private long longValue(final int index) {
+      if (scales[index] == 0) {
+        return unscaled[index];
+      }
+      return isMissing(index) ? MISSING : get(index).longValue();
+    }
+  }
+
+  /**
+   * Writes a series as a JSON array with one object per bar, straight from the columns.
+   */
+  public static class Serializer extends StdSerializer<IexHistoricalPriceSeries> {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Create a serializer. Called by Jackson.
+     */
+    public Serializer() {
+      super(IexHistoricalPriceSeries.class);
+    }
+
+    @Override
+    public void serialize(final IexHistoricalPriceSeries series, final JsonGenerator gen,
+        final SerializerProvider provider) throws IOException {
+      gen.writeStartArray(series.size());
+      for (int i = 0; i < series.size(); i++) {
+        gen.writeStartObject();
+        writeDecimal(gen, "close", series.close, i);
+        writeDecimal(gen, "high", series.high, i);
+        writeDecimal(gen, "low", series.low, i);
+        writeDecimal(gen, "open", series.open, i);
+        gen.writeStringField("symbol", series.symbol);
+        writeDecimal(gen, "volume", series.volume, i);
+        gen.writeStringField("date", series.getDate(i));
+        gen.writeEndObject();
+      }
+      gen.writeEndArray();
+    }
+
+    private static void writeDecimal(final JsonGenerator gen, final String name,
+        final DecimalColumn column, final int index) throws IOException {
+      if (column.scales[index] == 0) {
+        // Written the same as the BigDecimal would be, without creating it
+        gen.writeNumberField(name, column.unscaled[index]);
+        return;
+      }
+      BigDecimal value = column.get(index);
+      if (value == null) {
+        gen.writeNullField(name);
+      } else {
+        gen.writeNumberField(name, value);
+      }
+    }
+  }
+}
@@ -1,12 +1,16 @@
 package org.galatea.starter.domain;
 
+import java.io.Serializable;
 import java.math.BigDecimal;
 import lombok.Builder;
 import lombok.Data;
 
+// Serializable so that cached prices can overflow to disk
 @Data
 @Builder
-public class IexHistoricalPrices {
+public class IexHistoricalPrices implements Serializable {
+
+  private static final long serialVersionUID = 1L;
 
   private BigDecimal close;
   private BigDecimal high;
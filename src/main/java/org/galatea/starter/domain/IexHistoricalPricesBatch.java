@@ -0,0 +1,24 @@
+package org.galatea.starter.domain;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import lombok.Data;
+
+/**
+ * Historical prices for several symbols, grouped by symbol. Symbols whose prices couldn't be
+ * fetched are listed in errors, with the reason, rather than failing the whole batch.
+ */
+@Data
+public class IexHistoricalPricesBatch {
+
+  /**
+   * The prices for each symbol that was fetched successfully, in the order they were asked for.
+   */
+  private final Map<String, IexHistoricalPriceSeries> prices = new LinkedHashMap<>();
+
+  /**
+   * Why the prices couldn't be fetched, for each symbol that failed.
+   */
+  private final Map<String, String> errors = new LinkedHashMap<>();
+
+}
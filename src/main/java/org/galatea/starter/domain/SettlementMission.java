@@ -4,6 +4,7 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Version;
 import javax.validation.constraints.DecimalMin;
 import javax.xml.bind.annotation.XmlRootElement;
@@ -24,8 +25,14 @@ import org.galatea.starter.utils.validation.StringEnumeration;
 @XmlRootElement(name = "settlementMission")
 public class SettlementMission {
 
+  // The pooled optimizer (see hibernate.id.optimizer.pooled.preferred) hands out ids from memory
+  // and only goes to the sequence once per allocationSize inserts. allocationSize is kept in line
+  // with hibernate.jdbc.batch_size so each batch of inserts needs at most one trip for its ids.
+  // Dialects without sequences, such as MySQL, get a table that behaves like one.
   @Id
-  @GeneratedValue(strategy = GenerationType.AUTO)
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "settlement_mission_seq")
+  @SequenceGenerator(name = "settlement_mission_seq", sequenceName = "settlement_mission_seq",
+      allocationSize = 50)
   protected Long id;
 
   @NonNull
@@ -1,25 +1,97 @@
 package org.galatea.starter.domain.rpsy;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+import javax.persistence.QueryHint;
 import org.galatea.starter.domain.SettlementMission;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
 public interface ISettlementMissionRpsy extends CrudRepository<SettlementMission, Long> {
 
+  /**
+   * Name of the cache that findById reads missions through.
+   */
+  String MISSIONS_CACHE = "missions";
+
+  /**
+   * Number of rows the JDBC driver fetches per round trip when streaming missions.
+   */
+  String STREAM_FETCH_SIZE = "500";
+
+  String FETCH_SIZE_HINT = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
   /**
    * Retrieves all entities with the given depot.
    */
   List<SettlementMission> findByDepot(String depot);
 
+  /**
+   * Streams the missions with an id greater than afterId, in id order. Pass the id of the last
+   * mission seen as afterId to get the next page. The stream must be consumed, and closed, inside
+   * a transaction.
+   */
+  @QueryHints(@QueryHint(name = FETCH_SIZE_HINT, value = STREAM_FETCH_SIZE))
+  @Query("select m from SettlementMission m where m.id > :afterId order by m.id")
+  Stream<SettlementMission> streamByIdGreaterThan(@Param("afterId") Long afterId,
+      Pageable pageable);
+
+  /**
+   * Streams the missions with the given depot and an id greater than afterId, in id order. The
+   * stream must be consumed, and closed, inside a transaction.
+   */
+  @QueryHints(@QueryHint(name = FETCH_SIZE_HINT, value = STREAM_FETCH_SIZE))
+  @Query("select m from SettlementMission m where m.depot = :depot and m.id > :afterId"
+      + " order by m.id")
+  Stream<SettlementMission> streamByDepotAndIdGreaterThan(@Param("depot") String depot,
+      @Param("afterId") Long afterId, Pageable pageable);
+
+  /**
+   * Deletes the missions with the given ids in a single statement. Unlike deleteById, the
+   * missions aren't read first, and the missions cache isn't touched.
+   *
+   * @return the number of missions deleted
+   */
+  @Modifying
+  @Query("delete from SettlementMission m where m.id in :ids")
+  int deleteByIdIn(@Param("ids") Collection<Long> ids);
+
+  /**
+   * Deletes every mission with the given depot in a single statement. The missions cache isn't
+   * touched.
+   *
+   * @return the number of missions deleted
+   */
+  @Modifying
+  @Query("delete from SettlementMission m where m.depot = :depot")
+  int deleteByDepot(@Param("depot") String depot);
+
+  /**
+   * Deletes every mission with the given depot and instrument in a single statement. The missions
+   * cache isn't touched.
+   *
+   * @return the number of missions deleted
+   */
+  @Modifying
+  @Query("delete from SettlementMission m where m.depot = :depot"
+      + " and m.instrument = :instrument")
+  int deleteByDepotAndInstrument(@Param("depot") String depot,
+      @Param("instrument") String instrument);
+
   @Override
-  @Cacheable(cacheNames = "missions", sync = true)
+  @Cacheable(cacheNames = MISSIONS_CACHE, sync = true)
   Optional<SettlementMission> findById(Long id);
 
   @Override
-  @CacheEvict(cacheNames = "missions")
+  @CacheEvict(cacheNames = MISSIONS_CACHE)
   void deleteById(Long id);
 
   /**
@@ -27,6 +99,6 @@ public interface ISettlementMissionRpsy extends CrudRepository<SettlementMission
    * specified. You must use position parameter bindings otherwise.
    */
   @Override
-  @CacheEvict(cacheNames = "missions", key = "#p0.getId()")
+  @CacheEvict(cacheNames = MISSIONS_CACHE, key = "#p0.getId()")
   <S extends SettlementMission> S save(S entity);
 }
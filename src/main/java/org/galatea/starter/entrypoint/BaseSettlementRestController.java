@@ -1,5 +1,7 @@
 package org.galatea.starter.entrypoint;
 
+import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -8,11 +10,13 @@ import lombok.AccessLevel;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import net.sf.aspect4log.Log;
-import net.sf.aspect4log.Log.Level;
 import org.galatea.starter.domain.SettlementMission;
 import org.galatea.starter.domain.TradeAgreement;
+import org.galatea.starter.service.MissionUpdateResult;
 import org.galatea.starter.service.SettlementService;
+import org.galatea.starter.service.SettlementService.IMissionConsumer;
+import org.galatea.starter.utils.logging.Logged;
+import org.slf4j.event.Level;
 
 /**
  * Implements a base class for settlement rest controllers to avoid duplicating the logic of calling
@@ -20,7 +24,7 @@ import org.galatea.starter.service.SettlementService;
  */
 @RequiredArgsConstructor(access = AccessLevel.PROTECTED)
 @Slf4j
-@Log(enterLevel = Level.INFO, exitLevel = Level.INFO)
+@Logged(enterLevel = Level.INFO, exitLevel = Level.INFO)
 public abstract class BaseSettlementRestController extends BaseRestController {
 
   @NonNull
@@ -53,6 +57,14 @@ public abstract class BaseSettlementRestController extends BaseRestController {
     return settlementService.findMissions(ids);
   }
 
+  /**
+   * Streams settlement missions from the settlement service.
+   */
+  protected void streamMissionsInternal(final String depot, final long afterId,
+      final Integer limit, final IMissionConsumer consumer) throws IOException {
+    settlementService.streamMissions(depot, afterId, limit, consumer);
+  }
+
   /**
    * Updates settlement mission, if it exists.
    */
@@ -65,10 +77,32 @@ public abstract class BaseSettlementRestController extends BaseRestController {
     }
   }
 
+  /**
+   * Updates a batch of settlement missions, reporting those that couldn't be updated.
+   */
+  protected MissionUpdateResult updateMissionsInternal(final List<SettlementMission> missions) {
+    return settlementService.updateMissions(missions);
+  }
+
   /**
    * Deletes a settlement mission from the settlement service.
    */
   protected void deleteMissionInternal(final Long id) {
     settlementService.deleteMission(id);
   }
+
+  /**
+   * Deletes the settlement missions with the given ids, returning how many there were.
+   */
+  protected int deleteMissionsInternal(final Collection<Long> ids) {
+    return settlementService.deleteMissions(ids);
+  }
+
+  /**
+   * Deletes the settlement missions with the given depot, and instrument if there is one,
+   * returning how many there were.
+   */
+  protected int deleteMissionsByDepotInternal(final String depot, final String instrument) {
+    return settlementService.deleteMissionsByDepot(depot, instrument);
+  }
 }
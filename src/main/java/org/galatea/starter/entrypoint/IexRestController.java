@@ -1,54 +1,70 @@
 package org.galatea.starter.entrypoint;
 
-import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import javax.validation.constraints.Size;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import net.sf.aspect4log.Log;
-import net.sf.aspect4log.Log.Level;
-import org.galatea.starter.domain.IexHistoricalPrices;
+import org.galatea.starter.domain.IexHistoricalPriceSeries;
+import org.galatea.starter.domain.IexHistoricalPricesBatch;
 import org.galatea.starter.domain.IexLastTradedPrice;
 import org.galatea.starter.domain.IexSymbol;
 import org.galatea.starter.service.IexService;
+import org.galatea.starter.service.IexSymbolStore;
+import org.galatea.starter.utils.logging.Logged;
+import org.slf4j.event.Level;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 @Slf4j
-@Log(enterLevel = Level.INFO, exitLevel = Level.INFO)
+@Logged(enterLevel = Level.INFO, exitLevel = Level.INFO)
 @Validated
 @RestController
 @RequiredArgsConstructor
 public class IexRestController {
 
 
+  // Most symbols that can be asked for in one historical price batch
+  private static final int MAX_BATCH_SYMBOLS = 500;
+
   @NonNull
   private IexService iexService;
 
   /**
    * Exposes an endpoint to get all of the symbols available on IEX.
    *
+   * <p>The response carries an ETag. A client that sends it back in an If-None-Match header gets an
+   * empty 304 Not Modified response until the symbols change.
+   *
    * @return a list of all IexStockSymbols.
    */
   @GetMapping(value = "${mvc.iex.getAllSymbolsPath}", produces = {MediaType.APPLICATION_JSON_VALUE})
-  public List<IexSymbol> getAllStockSymbols() {
-    return iexService.getAllSymbols();
+  public ResponseEntity<List<IexSymbol>> getAllStockSymbols() {
+    IexSymbolStore.Snapshot snapshot = iexService.getAllSymbolsSnapshot();
+    // Spring compares the ETag with any If-None-Match header, and skips writing the body if they
+    // match
+    return ResponseEntity.ok().eTag(snapshot.getEtag()).body(snapshot.getSymbols());
   }
 
   /**
    * Get the last traded price for each of the symbols passed in.
    *
+   * <p>Handled asynchronously: the request thread is released while IEX is called, and the
+   * response is written once the prices arrive.
+   *
    * @param symbols list of symbols to get last traded price for.
    * @return a List of IexLastTradedPrice objects for the given symbols.
    */
   @GetMapping(value = "${mvc.iex.getLastTradedPricePath}", produces = {
       MediaType.APPLICATION_JSON_VALUE})
-  public List<IexLastTradedPrice> getLastTradedPrice(
+  public CompletableFuture<List<IexLastTradedPrice>> getLastTradedPrice(
       @RequestParam(value = "symbols") final List<String> symbols) {
-    return iexService.getLastTradedPriceForSymbols(symbols);
+    return iexService.getLastTradedPriceForSymbolsAsync(symbols);
   }
 
   /**
@@ -57,38 +73,54 @@ public class IexRestController {
    * @param symbols the list of symbols to get a historical prices for.
    * @param range the range (day, month, year) to get a historical prices for.
    * @param date the particular date to get historical prices for.
-   * @return a List of IexHistoricalPrice objects for the given symbols.
+   * @return the historical prices for the given symbols. Handled asynchronously, like
+   *     getLastTradedPrice.
    */
   @GetMapping(value = "${mvc.iex.getHistoricalPricesPath}", produces = {
       MediaType.APPLICATION_JSON_VALUE})
-  public List<IexHistoricalPrices> getHistoricalPrices(
+  public CompletableFuture<IexHistoricalPriceSeries> getHistoricalPrices(
       @RequestParam(value = "symbol") final String symbols,
       @RequestParam(value = "range", required = false) final String range,
       @RequestParam(value = "date", required = false) final String date) {
 
     if (queryNullLengthCheck(symbols)) {
-      return Collections.emptyList();
+      return CompletableFuture.completedFuture(IexHistoricalPriceSeries.empty(symbols));
     }
 
-    if (queryNullLengthCheck(date)) {
-      if (queryNullLengthCheck(range)) {
-        return iexService.getHistoricalPricesForSymbols(symbols);
-      } else {
-        return iexService.getHistoricalPricesForSymbols(symbols, range);
-      }
-    } else {
-      return iexService.getHistoricalPricesForSymbols(symbols, range, date);
-    }
+    // The series is written out as JSON straight from its columns, so no per-bar objects are
+    // created for the response
+    return iexService.getHistoricalPriceSeriesAsync(symbols, range, date);
+  }
+
+  /**
+   * Get the historical prices for many symbols at once. The symbols are fetched from IEX
+   * concurrently, and any that can't be fetched are listed in the response's errors rather than
+   * failing the whole request.
+   *
+   * @param symbols the symbols to get historical prices for.
+   * @param range the range (day, month, year) to get historical prices for.
+   * @param date the particular date to get historical prices for.
+   * @return the historical prices, grouped by symbol.
+   */
+  @GetMapping(value = "${mvc.iex.getHistoricalPricesBatchPath}", produces = {
+      MediaType.APPLICATION_JSON_VALUE})
+  public IexHistoricalPricesBatch getHistoricalPricesBatch(
+      @RequestParam(value = "symbols") @Size(min = 1, max = MAX_BATCH_SYMBOLS,
+          message = "Between 1 and " + MAX_BATCH_SYMBOLS + " symbols must be given")
+      final List<String> symbols,
+      @RequestParam(value = "range", required = false) final String range,
+      @RequestParam(value = "date", required = false) final String date) {
+    return iexService.getHistoricalPriceSeriesForSymbols(symbols, range, date);
   }
 
   /**
    * Utility method for getHistoricalPrices that helps null and length
-   * checks
+   * checks.
    *
    * @param query a string on which the check will be performed
    * @return boolean value based on the checked result
    */
-  private boolean queryNullLengthCheck(String query){
+  private boolean queryNullLengthCheck(final String query) {
 
     return query == null || query.length() == 0;
   }
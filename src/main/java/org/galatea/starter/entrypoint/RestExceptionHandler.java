@@ -4,6 +4,7 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import javax.validation.ConstraintViolationException;
 import lombok.extern.slf4j.Slf4j;
 import org.galatea.starter.entrypoint.exception.EntityNotFoundException;
+import org.galatea.starter.utils.resilience.CallNotPermittedException;
 import org.springframework.dao.DataAccessException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -73,6 +74,15 @@ public class RestExceptionHandler {
     return buildResponseEntity(error);
   }
 
+  @ExceptionHandler(CallNotPermittedException.class)
+  protected ResponseEntity<Object> handleCallNotPermitted(
+      final CallNotPermittedException exception) {
+    log.warn("Call to a dependency turned away: {}", exception.getMessage());
+
+    ApiError error = new ApiError(HttpStatus.SERVICE_UNAVAILABLE, exception.getMessage());
+    return buildResponseEntity(error);
+  }
+
   private ResponseEntity<Object> buildResponseEntity(final ApiError apiError) {
     return new ResponseEntity<>(apiError, apiError.getStatus());
   }
@@ -1,15 +1,25 @@
 package org.galatea.starter.entrypoint;
 
-import java.util.Arrays;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.function.BiConsumer;
+import javax.jms.JMSException;
+import javax.jms.Message;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.galatea.starter.domain.TradeAgreement;
 import org.galatea.starter.entrypoint.messagecontracts.TradeAgreementMessage;
 import org.galatea.starter.service.SettlementService;
+import org.galatea.starter.utils.jms.JmsBatchDrainer;
+import org.galatea.starter.utils.logging.LogFormat;
 import org.galatea.starter.utils.translation.ITranslator;
 import org.springframework.jms.annotation.JmsListener;
+import org.springframework.jms.support.converter.SimpleMessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Component;
 
 @RequiredArgsConstructor
@@ -17,6 +27,13 @@ import org.springframework.stereotype.Component;
 @Component
 public class SettlementJmsListener {
 
+  // Pulls the String or byte[] payload out of the raw JMS messages drained into a batch
+  private static final SimpleMessageConverter PAYLOAD_CONVERTER = new SimpleMessageConverter();
+
+  // How much of a batch's agreements and mission ids gets logged
+  private static final int LOGGED_ELEMENTS = 10;
+  private static final int LOGGED_LENGTH = 500;
+
   @NonNull
   protected SettlementService settlementService;
 
@@ -26,17 +43,34 @@ public class SettlementJmsListener {
   @NonNull
   protected ITranslator<TradeAgreementMessage, TradeAgreement> tradeAgreementMessageTranslator;
 
+  @NonNull
+  protected MessageConverter jacksonJmsMessageConverter;
+
+  @NonNull
+  protected JmsBatchDrainer jmsBatchDrainer;
+
+  @NonNull
+  protected BiConsumer<Message, Exception> failedMessageConsumer;
+
+  @NonNull
+  protected MeterRegistry meterRegistry;
+
   /**
    * Spawns Missions for any TradeAgreements pulled off the jms queue in JSON format.
    */
   @JmsListener(destination = "${jms.agreement-queue-json}",
       concurrency = "${jms.listener-concurrency}")
-  public void settleAgreementJson(final TradeAgreementMessage agreementMessage) {
-    log.info("Handling agreements {}", agreementMessage);
+  public void settleAgreementJson(final TradeAgreementMessage agreementMessage)
+      throws JMSException {
+    List<TradeAgreement> agreements = new ArrayList<>();
+    agreements.add(tradeAgreementMessageTranslator.translate(agreementMessage));
+    agreements.addAll(drainAgreements(json -> {
+      TradeAgreementMessage drained = (TradeAgreementMessage) jacksonJmsMessageConverter
+          .fromMessage(MessageBuilder.withPayload(json).build(), TradeAgreementMessage.class);
+      return tradeAgreementMessageTranslator.translate(drained);
+    }));
 
-    TradeAgreement agreement = tradeAgreementMessageTranslator.translate(agreementMessage);
-    Set<Long> missionIds = settlementService.spawnMissions(Arrays.asList(agreement));
-    log.info("Created missions {}", missionIds);
+    spawnMissions(agreements);
   }
 
   /**
@@ -44,13 +78,58 @@ public class SettlementJmsListener {
    */
   @JmsListener(destination = "${jms.agreement-queue-proto}",
       concurrency = "${jms.listener-concurrency}")
-  public void settleAgreementProto(final byte[] message) {
-    log.info("Received message. Translating.");
-    TradeAgreement agreement = tradeAgreementProtoTranslator.translate(message);
+  public void settleAgreementProto(final byte[] message) throws JMSException {
+    List<TradeAgreement> agreements = new ArrayList<>();
+    agreements.add(tradeAgreementProtoTranslator.translate(message));
+    agreements.addAll(drainAgreements(
+        bytes -> tradeAgreementProtoTranslator.translate((byte[]) bytes)));
+
+    spawnMissions(agreements);
+  }
+
+  /*
+   * Pull any messages queued up behind the one being handled and translate their payloads to
+   * agreements.
+   *
+   * A message that can't be translated is handed to the failed message consumer and left out of
+   * the batch, rather than failing (and so redelivering) every other agreement in the batch.
+   */
+  private List<TradeAgreement> drainAgreements(
+      final ITranslator<Object, TradeAgreement> translator) throws JMSException {
+    List<TradeAgreement> agreements = new ArrayList<>();
+    for (Message message : jmsBatchDrainer.drain()) {
+      try {
+        agreements.add(translator.translate(PAYLOAD_CONVERTER.fromMessage(message)));
+      } catch (JMSException | RuntimeException e) {
+        failedMessageConsumer.accept(message, e);
+      }
+    }
+    return agreements;
+  }
+
+  /*
+   * Persist the agreements' missions in one transaction, recording how long it took so that
+   * batched and single-message throughput can be compared.
+   */
+  private void spawnMissions(final List<TradeAgreement> agreements) {
+    String mode = jmsBatchDrainer.isBatching() ? "batch" : "single";
+    if (log.isDebugEnabled()) {
+      log.debug("Handling agreements {}",
+          LogFormat.abbreviate(agreements, LOGGED_ELEMENTS, LOGGED_LENGTH));
+    }
 
-    log.info("Handling agreement {}", agreement);
+    Set<Long> missionIds = meterRegistry.timer("settlement.jms.batch.duration", "mode", mode)
+        .record(() -> settlementService.spawnMissions(agreements));
+    meterRegistry.counter("settlement.jms.agreements", "mode", mode)
+        .increment(agreements.size());
+    meterRegistry.summary("settlement.jms.batch.size", "mode", mode)
+        .record(agreements.size());
 
-    Set<Long> missionIds = settlementService.spawnMissions(Arrays.asList(agreement));
-    log.info("Created missions {}", missionIds);
+    // One line per batch, however many agreements are in it
+    log.info("Created {} mission(s) from {} agreement(s)", missionIds.size(), agreements.size());
+    if (log.isDebugEnabled()) {
+      log.debug("Created missions {}",
+          LogFormat.abbreviate(missionIds, LOGGED_ELEMENTS, LOGGED_LENGTH));
+    }
   }
 }
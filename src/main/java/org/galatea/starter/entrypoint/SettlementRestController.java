@@ -1,27 +1,38 @@
 package org.galatea.starter.entrypoint;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
+import javax.validation.constraints.Min;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
-import net.sf.aspect4log.Log;
-import net.sf.aspect4log.Log.Level;
 import org.galatea.starter.MvcConfig;
 import org.galatea.starter.domain.SettlementMission;
 import org.galatea.starter.domain.TradeAgreement;
 import org.galatea.starter.entrypoint.exception.EntityNotFoundException;
+import org.galatea.starter.entrypoint.messagecontracts.MissionConflictMessage;
+import org.galatea.starter.entrypoint.messagecontracts.SettlementDeleteResponseMessage;
 import org.galatea.starter.entrypoint.messagecontracts.SettlementMissionList;
 import org.galatea.starter.entrypoint.messagecontracts.SettlementMissionMessage;
+import org.galatea.starter.entrypoint.messagecontracts.SettlementMissionMessages;
 import org.galatea.starter.entrypoint.messagecontracts.SettlementResponseMessage;
+import org.galatea.starter.entrypoint.messagecontracts.SettlementUpdateResponseMessage;
 import org.galatea.starter.entrypoint.messagecontracts.TradeAgreementMessages;
+import org.galatea.starter.service.MissionUpdateResult;
 import org.galatea.starter.service.SettlementService;
+import org.galatea.starter.utils.http.converter.CsvSerializer;
+import org.galatea.starter.utils.logging.Logged;
 import org.galatea.starter.utils.translation.ITranslator;
+import org.slf4j.event.Level;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -31,13 +42,14 @@ import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 /**
  * REST Controller that generates and listens to http endpoints which allow the caller to create
  * Missions from TradeAgreements and query them back out.
  */
 @Slf4j
-@Log(enterLevel = Level.INFO, exitLevel = Level.INFO)
+@Logged(enterLevel = Level.INFO, exitLevel = Level.INFO)
 @Validated
 @RestController
 public class SettlementRestController extends BaseSettlementRestController {
@@ -48,9 +60,15 @@ public class SettlementRestController extends BaseSettlementRestController {
   @NonNull
   ITranslator<SettlementMissionMessage, SettlementMission> settlementMissionMsgTranslator;
 
+  @NonNull
+  ITranslator<SettlementMissionMessages, List<SettlementMission>> settlementMissionMsgsTranslator;
+
   @NonNull
   ITranslator<TradeAgreementMessages, List<TradeAgreement>> tradeAgreementTranslator;
 
+  // Built from the application's mapper, so streamed missions are written as they are elsewhere
+  private final ObjectWriter missionJsonWriter;
+
   @Value("${mvc.settleMissionPath}")
   private String settleMissionPath;
 
@@ -66,11 +84,16 @@ public class SettlementRestController extends BaseSettlementRestController {
       final ITranslator<TradeAgreementMessages, List<TradeAgreement>> tradeAgreementTranslator,
       final ITranslator<SettlementMission, SettlementMissionMessage> settlementMissionTranslator,
       final ITranslator<SettlementMissionMessage, SettlementMission>
-          settlementMissionMsgTranslator) {
+          settlementMissionMsgTranslator,
+      final ITranslator<SettlementMissionMessages, List<SettlementMission>>
+          settlementMissionMsgsTranslator,
+      final ObjectMapper objectMapper) {
     super(settlementService);
     this.tradeAgreementTranslator = tradeAgreementTranslator;
     this.settlementMissionTranslator = settlementMissionTranslator;
     this.settlementMissionMsgTranslator = settlementMissionMsgTranslator;
+    this.settlementMissionMsgsTranslator = settlementMissionMsgsTranslator;
+    this.missionJsonWriter = objectMapper.writerFor(SettlementMission.class);
   }
 
   /**
@@ -145,6 +168,55 @@ public class SettlementRestController extends BaseSettlementRestController {
     return new SettlementMissionList(missions);
   }
 
+  /**
+   * Stream missions as newline-delimited JSON, one mission per line.
+   *
+   * <p>Missions are returned in id order. To page through them, pass the id of the last mission
+   * received as afterId on the next request. The limit is checked before the response starts, as a
+   * failure while it's being written can no longer change its status.
+   */
+  // StreamingResponseBody writes the response on a separate thread after this method returns, so
+  // the missions are never all held in memory at once
+  @GetMapping(value = "${mvc.streamMissionsPath}", produces = MvcConfig.APPLICATION_NDJSON_VALUE)
+  public ResponseEntity<StreamingResponseBody> streamMissionsNdjson(
+      @RequestParam(value = "depot", required = false) final String depot,
+      @RequestParam(value = "afterId", defaultValue = "0") final long afterId,
+      @RequestParam(value = "limit", required = false)
+      @Min(value = 1, message = "limit must be at least 1") final Integer limit,
+      @RequestParam(value = "requestId", required = false) final String requestId) {
+
+    // if an external request id was provided, grab it
+    processRequestId(requestId);
+
+    StreamingResponseBody body = out -> streamMissionsInternal(depot, afterId, limit,
+        missions -> {
+          for (SettlementMission mission : missions) {
+            out.write(missionJsonWriter.writeValueAsBytes(mission));
+            out.write('\n');
+          }
+        });
+    return ResponseEntity.ok().contentType(MvcConfig.APPLICATION_NDJSON).body(body);
+  }
+
+  /**
+   * Stream missions as a CSV document. Takes the same parameters as the NDJSON variant.
+   */
+  @GetMapping(value = "${mvc.streamMissionsPath}", produces = MvcConfig.TEXT_CSV_VALUE)
+  public ResponseEntity<StreamingResponseBody> streamMissionsCsv(
+      @RequestParam(value = "depot", required = false) final String depot,
+      @RequestParam(value = "afterId", defaultValue = "0") final long afterId,
+      @RequestParam(value = "limit", required = false)
+      @Min(value = 1, message = "limit must be at least 1") final Integer limit,
+      @RequestParam(value = "requestId", required = false) final String requestId) {
+
+    // if an external request id was provided, grab it
+    processRequestId(requestId);
+
+    StreamingResponseBody body = out -> streamMissionsInternal(depot, afterId, limit,
+        missions -> CsvSerializer.serializeToCsv(missions, SettlementMission.class, out));
+    return ResponseEntity.ok().contentType(MvcConfig.TEXT_CSV).body(body);
+  }
+
   /**
    * Update an existing mission given an ID.
    */
@@ -173,6 +245,39 @@ public class SettlementRestController extends BaseSettlementRestController {
     }
   }
 
+  /**
+   * Update a batch of existing missions in one go.
+   *
+   * <p>Each mission must carry its id and the version it was read at. Missions that can't be
+   * updated, because they don't exist or were changed since they were read, are reported as
+   * conflicts and the rest are updated. If a mission is changed by someone else while the batch is
+   * being written, none of the batch is updated and the response is 409 Conflict.
+   */
+  // @PutMapping to link http PUT requests to this method
+  // @RequestBody to have the request body deserialized into a list of SettlementMissionMessages
+  @PutMapping(value = "${mvc.updateMissionsPath}",
+      consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE},
+      produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
+  public SettlementUpdateResponseMessage updateMissions(
+      @RequestBody final SettlementMissionMessages messages,
+      @RequestParam(value = "requestId", required = false) final String requestId) {
+
+    // if an external request id was provided, grab it
+    processRequestId(requestId);
+
+    MissionUpdateResult result =
+        updateMissionsInternal(settlementMissionMsgsTranslator.translate(messages));
+
+    SettlementUpdateResponseMessage.SettlementUpdateResponseMessageBuilder response =
+        SettlementUpdateResponseMessage.builder();
+    result.getUpdatedIds().forEach(id -> response.updatedMission(getMissionPath + id));
+    result.getConflicts().forEach(conflict -> response.conflict(MissionConflictMessage.builder()
+        .id(conflict.getId())
+        .reason(conflict.getReason().name())
+        .currentVersion(conflict.getCurrentVersion()).build()));
+    return response.build();
+  }
+
   /**
    * Delete a previously created mission.
    */
@@ -196,4 +301,49 @@ public class SettlementRestController extends BaseSettlementRestController {
     }
   }
 
+  /**
+   * Delete many missions at once, either by id or by depot (and optionally instrument).
+   *
+   * <p>Ids with no mission are counted rather than failing the request.
+   */
+  // params to pick this method when ids are given, and the one below when a depot is
+  @DeleteMapping(value = "${mvc.deleteMissionsPath}", params = "ids", produces = {
+      MediaType.APPLICATION_JSON_VALUE,
+      MediaType.APPLICATION_XML_VALUE})
+  public SettlementDeleteResponseMessage deleteMissions(
+      // @RequestParam to take a comma-separated list of ids from the url (ex: http://url?ids=1,2,3)
+      @RequestParam(value = "ids") final String ids,
+      @RequestParam(value = "requestId", required = false) final String requestId) {
+
+    // if an external request id was provided, grab it
+    processRequestId(requestId);
+
+    Set<Long> idLongs = Arrays.stream(ids.split(","))
+        .map(Long::parseLong)
+        .collect(Collectors.toCollection(LinkedHashSet::new));
+    int deleted = deleteMissionsInternal(idLongs);
+
+    return SettlementDeleteResponseMessage.builder()
+        .deletedMissions(deleted)
+        .notFoundMissions(idLongs.size() - deleted).build();
+  }
+
+  /**
+   * Delete every mission with a depot, and instrument if one is given.
+   */
+  @DeleteMapping(value = "${mvc.deleteMissionsPath}", params = {"depot", "!ids"}, produces = {
+      MediaType.APPLICATION_JSON_VALUE,
+      MediaType.APPLICATION_XML_VALUE})
+  public SettlementDeleteResponseMessage deleteMissionsByDepot(
+      @RequestParam(value = "depot") final String depot,
+      @RequestParam(value = "instrument", required = false) final String instrument,
+      @RequestParam(value = "requestId", required = false) final String requestId) {
+
+    // if an external request id was provided, grab it
+    processRequestId(requestId);
+
+    return SettlementDeleteResponseMessage.builder()
+        .deletedMissions(deleteMissionsByDepotInternal(depot, instrument)).build();
+  }
+
 }
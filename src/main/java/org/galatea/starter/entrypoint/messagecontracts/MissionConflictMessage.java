@@ -0,0 +1,21 @@
+package org.galatea.starter.entrypoint.messagecontracts;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@AllArgsConstructor(access = AccessLevel.PRIVATE) // For builder
+@NoArgsConstructor(access = AccessLevel.PRIVATE) // For spring and jackson
+@Builder
+@Data
+@XmlAccessorType(XmlAccessType.FIELD) // required if using lombok to avoid duplicate properties
+public class MissionConflictMessage {
+
+  protected Long id;
+  protected String reason;
+  protected Long currentVersion;
+}
@@ -0,0 +1,24 @@
+package org.galatea.starter.entrypoint.messagecontracts;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@AllArgsConstructor(access = AccessLevel.PRIVATE) // For builder
+@NoArgsConstructor(access = AccessLevel.PRIVATE) // For spring and jackson
+@Builder
+@Data
+@XmlRootElement(name = "settlementDeleteResponse")
+@XmlAccessorType(XmlAccessType.FIELD) // required if using lombok to avoid duplicate properties
+public class SettlementDeleteResponseMessage {
+
+  protected int deletedMissions;
+
+  // Ids asked for that had no mission. Always 0 when deleting by depot
+  protected int notFoundMissions;
+}
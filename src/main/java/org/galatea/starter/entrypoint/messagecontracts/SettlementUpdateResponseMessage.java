@@ -0,0 +1,30 @@
+package org.galatea.starter.entrypoint.messagecontracts;
+
+import java.util.List;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.Singular;
+
+@AllArgsConstructor(access = AccessLevel.PRIVATE) // For builder
+@NoArgsConstructor(access = AccessLevel.PRIVATE) // For spring and jackson
+@Builder
+@Data
+@XmlRootElement(name = "settlementUpdateResponse")
+@XmlAccessorType(XmlAccessType.FIELD) // required if using lombok to avoid duplicate properties
+public class SettlementUpdateResponseMessage {
+
+  @Singular
+  @XmlElement(name = "updatedMission")
+  protected List<String> updatedMissions;
+
+  @Singular
+  @XmlElement(name = "conflict")
+  protected List<MissionConflictMessage> conflicts;
+}
@@ -0,0 +1,154 @@
+package org.galatea.starter.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.galatea.starter.domain.IexHistoricalPrices;
+import org.galatea.starter.domain.IexLastTradedPrice;
+import org.springframework.web.util.UriComponentsBuilder;
+
+/**
+ * A non-blocking client for the IEX endpoints also covered by {@link IexClient} and {@link
+ * IexHistoricalClient}.
+ *
+ * <p>The Feign clients hold the calling thread for the whole of each request. Here requests are
+ * sent and responses read by the JDK's asynchronous HTTP client, so a small, fixed set of threads
+ * can have any number of requests to IEX in flight.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class IexAsyncClient {
+
+  private static final TypeReference<List<IexLastTradedPrice>> LAST_TRADED_PRICES =
+      new TypeReference<List<IexLastTradedPrice>>() {};
+
+  private static final TypeReference<List<IexHistoricalPrices>> HISTORICAL_PRICES =
+      new TypeReference<List<IexHistoricalPrices>>() {};
+
+  @NonNull
+  private final HttpClient httpClient;
+
+  @NonNull
+  private final ObjectMapper objectMapper;
+
+  /**
+   * Where the IEX endpoints used by IexClient live.
+   */
+  @NonNull
+  private final String basePath;
+
+  /**
+   * Where the IEX endpoints used by IexHistoricalClient live.
+   */
+  @NonNull
+  private final String cloudPath;
+
+  @NonNull
+  private final String apiToken;
+
+  /**
+   * How long to wait for IEX to respond to each request.
+   */
+  @NonNull
+  private final Duration requestTimeout;
+
+  /**
+   * Get the last traded price for each stock symbol passed in. See
+   * https://iextrading.com/developer/docs/#last.
+   *
+   * @param symbols stock symbols to get last traded price for.
+   * @return a future list of the last traded price for each of the symbols passed in.
+   */
+  public CompletableFuture<List<IexLastTradedPrice>> getLastTradedPriceForSymbols(
+      final List<String> symbols) {
+    URI uri = UriComponentsBuilder.fromHttpUrl(basePath)
+        .path("/tops/last")
+        .queryParam("symbols", String.join(",", symbols))
+        .build().encode().toUri();
+    return get(uri, LAST_TRADED_PRICES);
+  }
+
+  /**
+   * Get the historical prices for a stock symbol passed in. Mirrors the three
+   * IexHistoricalClient methods: the range and date are only added to the path if they're given.
+   *
+   * @param symbol the symbol to get historical prices for.
+   * @param range the range (day, month, year) to get historical prices for, or null.
+   * @param date the particular date to get historical prices for, or null.
+   * @return a future list of the historical prices for the symbol.
+   */
+  public CompletableFuture<List<IexHistoricalPrices>> getHistoricalPricesForSymbol(
+      final String symbol, final String range, final String date) {
+    // Only the values given go in the path, so a missing range isn't sent as "null"
+    Map<String, String> variables = new HashMap<>();
+    variables.put("symbol", symbol);
+    StringBuilder path = new StringBuilder("/stock/{symbol}/chart");
+    if (range != null) {
+      path.append("/{range}");
+      variables.put("range", range);
+    }
+    if (date != null) {
+      path.append("/{date}");
+      variables.put("date", date);
+    }
+    URI uri = UriComponentsBuilder.fromHttpUrl(cloudPath)
+        .path(path.toString())
+        .queryParam("token", apiToken)
+        .buildAndExpand(variables).encode().toUri();
+    return get(uri, HISTORICAL_PRICES);
+  }
+
+  /*
+   * Send a GET request and parse the JSON response, without blocking the calling thread.
+   */
+  private <T> CompletableFuture<T> get(final URI uri, final TypeReference<T> type) {
+    HttpRequest request = HttpRequest.newBuilder(uri)
+        .timeout(requestTimeout)
+        .header("Accept", "application/json")
+        .GET()
+        .build();
+    log.debug("Sending async request to IEX: {}", uri);
+    return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+        .thenApply(response -> {
+          log.debug("IEX responded to {} with status {}", uri, response.statusCode());
+          if (response.statusCode() / 100 != 2) {
+            throw new IexRequestException(uri, response.statusCode());
+          }
+          try {
+            return objectMapper.<T>readValue(response.body(), type);
+          } catch (IOException e) {
+            throw new UncheckedIOException("Unable to parse IEX response from " + uri, e);
+          }
+        });
+  }
+
+  /**
+   * Thrown when IEX responds to a request with an error status.
+   */
+  @Getter
+  public static class IexRequestException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int status;
+
+    IexRequestException(final URI uri, final int status) {
+      super("IEX responded with status " + status + " to " + uri);
+      this.status = status;
+    }
+  }
+}
@@ -1,43 +1,142 @@
 package org.galatea.starter.service;
 
+import com.google.common.collect.ImmutableList;
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import lombok.Data;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.galatea.starter.domain.IexHistoricalPriceSeries;
 import org.galatea.starter.domain.IexHistoricalPrices;
+import org.galatea.starter.domain.IexHistoricalPricesBatch;
 import org.galatea.starter.domain.IexLastTradedPrice;
 import org.galatea.starter.domain.IexSymbol;
+import org.galatea.starter.utils.concurrent.ChunkingExecutor;
+import org.galatea.starter.utils.concurrent.RequestCoalescer;
+import org.galatea.starter.utils.resilience.ResiliencePolicy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.Cache.ValueRetrievalException;
+import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
+import org.springframework.util.StringUtils;
 
 /**
  * A layer for transformation, aggregation, and business required when retrieving data from IEX.
+ *
+ * <p>Requests to IEX are made through a {@link ResiliencePolicy} for their endpoint. When IEX is
+ * failing, or the policy turns a request away, the last known good data for the request is served
+ * instead if there is any.
  */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class IexService {
 
+  /**
+   * Holds historical prices for dates that have closed, which will never change.
+   */
+  public static final String CLOSED_PRICES_CACHE = "historicalPricesClosed";
+
+  /**
+   * Holds historical prices that may include the current trading day, which can still change.
+   */
+  public static final String INTRADAY_PRICES_CACHE = "historicalPricesIntraday";
+
+  /**
+   * Holds the last intraday historical prices fetched from IEX, to fall back on when IEX fails.
+   */
+  public static final String LAST_KNOWN_GOOD_PRICES_CACHE = "historicalPricesLastKnownGood";
+
+  /**
+   * Holds the last traded price fetched from IEX for each symbol, to fall back on when IEX fails.
+   */
+  public static final String LAST_KNOWN_GOOD_LAST_TRADED_CACHE = "lastTradedPricesLastKnownGood";
+
+  // IEX trades on New York time, so that's when a trading day closes
+  private static final ZoneId MARKET_ZONE = ZoneId.of("America/New_York");
+
   @NonNull
   private IexClient iexClient;
 
   @NonNull
   private IexHistoricalClient iexHistoricalClient;
 
+  @NonNull
+  private ChunkingExecutor iexChunkingExecutor;
+
+  @NonNull
+  private IexSymbolStore iexSymbolStore;
+
+  @NonNull
+  private CacheManager cacheManager;
+
+  @NonNull
+  private ChunkingExecutor iexHistoricalExecutor;
+
+  @NonNull
+  private IexAsyncClient iexAsyncClient;
+
+  @NonNull
+  private ResiliencePolicy lastTradedPricePolicy;
+
+  @NonNull
+  private ResiliencePolicy historicalPricesPolicy;
+
+  @Value("${iex.historical-batch.timeout-millis}")
+  private long historicalBatchTimeoutMillis;
+
+  // Lets concurrent callers asking for the same symbols share one set of requests to IEX
+  private final RequestCoalescer<List<String>, List<IexLastTradedPrice>> lastTradedPriceCoalescer =
+      new RequestCoalescer<>();
+
+  // Lets concurrent async callers asking for the same uncached prices share one request to IEX
+  private final RequestCoalescer<HistoricalPricesKey, IexHistoricalPriceSeries>
+      historicalPriceCoalescer = new RequestCoalescer<>();
 
   /**
-   * Get all stock symbols from IEX.
+   * Get all stock symbols from IEX. These come from a local copy that is refreshed in the
+   * background, rather than from IEX itself.
    *
    * @return a list of all Stock Symbols from IEX.
    */
   public List<IexSymbol> getAllSymbols() {
-    return iexClient.getAllSymbols();
+    return getAllSymbolsSnapshot().getSymbols();
+  }
+
+  /**
+   * Get the local copy of all stock symbols from IEX, along with an entity tag for it.
+   *
+   * @return the current snapshot of the symbols.
+   */
+  public IexSymbolStore.Snapshot getAllSymbolsSnapshot() {
+    return iexSymbolStore.getSnapshot();
   }
 
   /**
    * Get the last traded price for each Symbol that is passed in.
    *
+   * <p>Long symbol lists are split into chunks that are requested from IEX in parallel, and the
+   * prices are returned in the order of the symbols. A request for exactly the same symbols as one
+   * already in flight waits for and shares that request's prices.
+   *
    * @param symbols the list of symbols to get a last traded price for.
    * @return a list of last traded price objects for each Symbol that is passed in.
    */
@@ -45,7 +144,35 @@ public class IexService {
     if (CollectionUtils.isEmpty(symbols)) {
       return Collections.emptyList();
     } else {
-      return iexClient.getLastTradedPriceForSymbols(symbols.toArray(new String[0]));
+      List<String> key = ImmutableList.copyOf(symbols);
+      return lastTradedPriceCoalescer.get(key, () -> Collections.unmodifiableList(
+          iexChunkingExecutor.execute(key, chunk -> lastTradedPricePolicy.call(
+              () -> rememberLastTradedPrices(
+                  iexClient.getLastTradedPriceForSymbols(chunk.toArray(new String[0]))),
+              () -> getLastKnownGoodLastTradedPrices(chunk)))));
+    }
+  }
+
+  /**
+   * Get the last traded price for each Symbol that is passed in, without blocking the calling
+   * thread. Works like {@link #getLastTradedPriceForSymbols}, but the requests to IEX are made with
+   * a non-blocking HTTP client.
+   *
+   * @param symbols the list of symbols to get a last traded price for.
+   * @return a future list of last traded price objects for each Symbol that is passed in.
+   */
+  public CompletableFuture<List<IexLastTradedPrice>> getLastTradedPriceForSymbolsAsync(
+      final List<String> symbols) {
+    if (CollectionUtils.isEmpty(symbols)) {
+      return CompletableFuture.completedFuture(Collections.emptyList());
+    } else {
+      List<String> key = ImmutableList.copyOf(symbols);
+      return lastTradedPriceCoalescer.getAsync(key, () -> iexChunkingExecutor
+          .executeAsync(key, chunk -> lastTradedPricePolicy.callAsync(
+              () -> iexAsyncClient.getLastTradedPriceForSymbols(chunk)
+                  .thenApply(this::rememberLastTradedPrices),
+              () -> getLastKnownGoodLastTradedPrices(chunk)))
+          .thenApply(Collections::unmodifiableList));
     }
   }
 
@@ -59,7 +186,7 @@ public class IexService {
   public List<IexHistoricalPrices> getHistoricalPricesForSymbols(final String symbols,
       final String range, final String date) {
 
-    return iexHistoricalClient.getHistoricalPricesForSymbols(symbols, range, date);
+    return getHistoricalPriceSeries(symbols, range, date).asList();
 
   }
 
@@ -74,7 +201,7 @@ public class IexService {
   public List<IexHistoricalPrices> getHistoricalPricesForSymbols(final String symbols,
       final String range) {
 
-    return iexHistoricalClient.getHistoricalPricesForSymbols(symbols, range);
+    return getHistoricalPriceSeries(symbols, range, null).asList();
 
   }
 
@@ -86,9 +213,239 @@ public class IexService {
    */
   public List<IexHistoricalPrices> getHistoricalPricesForSymbols(final String symbols) {
 
-    return iexHistoricalClient.getHistoricalPricesForSymbols(symbols);
+    return getHistoricalPriceSeries(symbols, null, null).asList();
 
   }
 
+  /**
+   * Get the historical prices for a Symbol as a columnar series, which takes up far less memory
+   * than a list of historical price objects.
+   *
+   * @param symbols the symbol to get historical prices for.
+   * @param range the range (day, month, year) to get historical prices for, or null or empty for
+   *     IEX's default range.
+   * @param date the particular date to get historical prices for, or null or empty for the whole
+   *     range.
+   * @return the historical prices for the Symbol that is passed in.
+   */
+  public IexHistoricalPriceSeries getHistoricalPriceSeries(final String symbols,
+      final String range, final String date) {
+    HistoricalPricesKey key = HistoricalPricesKey.of(symbols, range, date);
+    if (key.getDate() != null) {
+      return getCachedHistoricalPriceSeries(key,
+          () -> iexHistoricalClient.getHistoricalPricesForSymbols(symbols, range, date));
+    } else if (key.getRange() != null) {
+      return getCachedHistoricalPriceSeries(key,
+          () -> iexHistoricalClient.getHistoricalPricesForSymbols(symbols, range));
+    } else {
+      return getCachedHistoricalPriceSeries(key,
+          () -> iexHistoricalClient.getHistoricalPricesForSymbols(symbols));
+    }
+  }
 
+  /**
+   * Get the historical prices for a Symbol as a columnar series, without blocking the calling
+   * thread. Prices are shared with {@link #getHistoricalPriceSeries}'s cache.
+   *
+   * @param symbols the symbol to get historical prices for.
+   * @param range the range (day, month, year) to get historical prices for, or null or empty for
+   *     IEX's default range.
+   * @param date the particular date to get historical prices for, or null or empty for the whole
+   *     range.
+   * @return a future holding the historical prices for the Symbol that is passed in.
+   */
+  public CompletableFuture<IexHistoricalPriceSeries> getHistoricalPriceSeriesAsync(
+      final String symbols, final String range, final String date) {
+    HistoricalPricesKey key = HistoricalPricesKey.of(symbols, range, date);
+    Cache cache = getHistoricalPriceCache(key);
+    IexHistoricalPriceSeries cached = cache.get(key, IexHistoricalPriceSeries.class);
+    if (cached != null) {
+      return CompletableFuture.completedFuture(cached);
+    }
+
+    log.debug("Historical prices for {} not cached in {}, fetching from IEX", key, cache.getName());
+    return historicalPriceCoalescer.getAsync(key, () -> historicalPricesPolicy.callAsync(
+        () -> iexAsyncClient
+            .getHistoricalPricesForSymbol(symbols, key.getRange(), key.getDate())
+            .thenApply(prices -> {
+              IexHistoricalPriceSeries series = IexHistoricalPriceSeries.from(symbols, prices);
+              cache.put(key, series);
+              rememberHistoricalPrices(key, series);
+              return series;
+            }),
+        () -> getLastKnownGoodHistoricalPrices(key)));
+  }
+
+  /**
+   * Get the historical prices for each of the Symbols passed in, fetching them from IEX
+   * concurrently.
+   *
+   * <p>Each Symbol is given historicalBatchTimeoutMillis to be fetched. Symbols that time out or
+   * fail are reported in the batch's errors, and don't stop the prices for the other Symbols from
+   * being returned. A Symbol that times out has its request cancelled, and one that the executor
+   * has no room for fails straight away rather than being fetched on the calling thread.
+   *
+   * @param symbols the symbols to get historical prices for.
+   * @param range the range (day, month, year) to get historical prices for, or null or empty for
+   *     IEX's default range.
+   * @param date the particular date to get historical prices for, or null or empty for the whole
+   *     range.
+   * @return the historical prices, grouped by Symbol.
+   */
+  public IexHistoricalPricesBatch getHistoricalPriceSeriesForSymbols(final List<String> symbols,
+      final String range, final String date) {
+    Map<String, CompletableFuture<IexHistoricalPriceSeries>> futures = new LinkedHashMap<>();
+    for (String symbol : symbols) {
+      futures.computeIfAbsent(symbol, s -> iexHistoricalExecutor
+          .submit(s, sym -> getHistoricalPriceSeries(sym, range, date))
+          .orTimeout(historicalBatchTimeoutMillis, TimeUnit.MILLISECONDS));
+    }
+
+    IexHistoricalPricesBatch batch = new IexHistoricalPricesBatch();
+    futures.forEach((symbol, future) -> {
+      try {
+        batch.getPrices().put(symbol, future.join());
+      } catch (CompletionException e) {
+        String reason;
+        if (e.getCause() instanceof TimeoutException) {
+          reason = "Timed out after " + historicalBatchTimeoutMillis + "ms";
+        } else if (e.getCause() instanceof RejectedExecutionException) {
+          reason = "Too many historical price requests in progress";
+        } else {
+          reason = String.valueOf(e.getCause());
+        }
+        log.warn("Unable to get historical prices for {}: {}", symbol, reason);
+        batch.getErrors().put(symbol, reason);
+      }
+    });
+    log.info("Got historical prices for {} symbol(s), {} failed", batch.getPrices().size(),
+        batch.getErrors().size());
+    return batch;
+  }
+
+  /*
+   * Get historical prices from the cache, only going to IEX for them if they're not there.
+   *
+   * Concurrent requests for the same prices wait for the first one to load them rather than all
+   * going to IEX. If IEX fails, the last known good prices are served but not cached.
+   */
+  private IexHistoricalPriceSeries getCachedHistoricalPriceSeries(final HistoricalPricesKey key,
+      final Supplier<List<IexHistoricalPrices>> loader) {
+    Cache cache = getHistoricalPriceCache(key);
+    try {
+      return cache.get(key, () -> {
+        log.debug("Historical prices for {} not cached in {}, fetching from IEX", key,
+            cache.getName());
+        // Cache the prices as a series, which is far smaller than the objects IEX gave us
+        IexHistoricalPriceSeries series = IexHistoricalPriceSeries.from(key.getSymbols(),
+            historicalPricesPolicy.call(loader));
+        rememberHistoricalPrices(key, series);
+        return series;
+      });
+    } catch (ValueRetrievalException e) {
+      // Surface whatever went wrong talking to IEX rather than the cache's wrapper around it
+      if (e.getCause() instanceof RuntimeException) {
+        return historicalPricesPolicy.recover((RuntimeException) e.getCause(),
+            () -> getLastKnownGoodHistoricalPrices(key));
+      }
+      throw e;
+    }
+  }
+
+  /*
+   * Keep intraday prices to fall back on. Prices for closed dates are already cached for far
+   * longer than they would be kept here.
+   */
+  private void rememberHistoricalPrices(final HistoricalPricesKey key,
+      final IexHistoricalPriceSeries series) {
+    if (!isClosed(key.getDate())) {
+      cacheManager.getCache(LAST_KNOWN_GOOD_PRICES_CACHE).put(key, series);
+    }
+  }
+
+  private IexHistoricalPriceSeries getLastKnownGoodHistoricalPrices(
+      final HistoricalPricesKey key) {
+    return cacheManager.getCache(LAST_KNOWN_GOOD_PRICES_CACHE)
+        .get(key, IexHistoricalPriceSeries.class);
+  }
+
+  private List<IexLastTradedPrice> rememberLastTradedPrices(final List<IexLastTradedPrice> prices) {
+    Cache cache = cacheManager.getCache(LAST_KNOWN_GOOD_LAST_TRADED_CACHE);
+    for (IexLastTradedPrice price : prices) {
+      if (price.getSymbol() != null) {
+        cache.put(price.getSymbol().toUpperCase(Locale.ROOT), price);
+      }
+    }
+    return prices;
+  }
+
+  /*
+   * Returns the last known good price for every one of the symbols, or null if any of them
+   * doesn't have one.
+   */
+  private List<IexLastTradedPrice> getLastKnownGoodLastTradedPrices(final List<String> symbols) {
+    Cache cache = cacheManager.getCache(LAST_KNOWN_GOOD_LAST_TRADED_CACHE);
+    List<IexLastTradedPrice> prices = new ArrayList<>(symbols.size());
+    for (String symbol : symbols) {
+      IexLastTradedPrice price = cache.get(symbol.toUpperCase(Locale.ROOT),
+          IexLastTradedPrice.class);
+      if (price == null) {
+        return null;
+      }
+      prices.add(price);
+    }
+    return prices;
+  }
+
+  /*
+   * Prices for a date that has closed are cached for much longer than anything that may include
+   * today.
+   */
+  private Cache getHistoricalPriceCache(final HistoricalPricesKey key) {
+    return cacheManager.getCache(
+        isClosed(key.getDate()) ? CLOSED_PRICES_CACHE : INTRADAY_PRICES_CACHE);
+  }
+
+  /*
+   * Returns true if the given IEX date (yyyyMMdd) is before the current trading day.
+   */
+  static boolean isClosed(final String date) {
+    if (date == null || date.isEmpty()) {
+      return false;
+    }
+    try {
+      return LocalDate.parse(date, DateTimeFormatter.BASIC_ISO_DATE)
+          .isBefore(LocalDate.now(MARKET_ZONE));
+    } catch (DateTimeParseException e) {
+      log.debug("Unable to parse date {}, treating its prices as intraday", date);
+      return false;
+    }
+  }
+
+  /*
+   * Identifies a set of historical prices. Serializable so that cached prices can overflow to disk.
+   */
+  @Data
+  static final class HistoricalPricesKey implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String symbols;
+    private final String range;
+    private final String date;
+
+    /*
+     * Create the key for a request. A range is only part of the key if the date or range is given,
+     * and likewise for a date, which mirrors which IEX endpoint is used for the request.
+     */
+    static HistoricalPricesKey of(final String symbols, final String range, final String date) {
+      if (!StringUtils.isEmpty(date)) {
+        return new HistoricalPricesKey(symbols, range, date);
+      } else if (!StringUtils.isEmpty(range)) {
+        return new HistoricalPricesKey(symbols, range, null);
+      } else {
+        return new HistoricalPricesKey(symbols, null, null);
+      }
+    }
+  }
 }
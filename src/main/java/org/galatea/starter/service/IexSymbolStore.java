@@ -0,0 +1,121 @@
+package org.galatea.starter.service;
+
+import com.google.common.collect.ImmutableList;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+import org.galatea.starter.domain.IexSymbol;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+/**
+ * An in-process copy of the symbols supported by IEX. IEX returns thousands of symbols and they
+ * rarely change, so rather than asking IEX for them on every request we load them once at startup
+ * and refresh them in the background.
+ *
+ * <p>Readers are handed an immutable snapshot, so reads never block or see a half-finished
+ * refresh. If a refresh fails, the previous snapshot is kept.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class IexSymbolStore {
+
+  @NonNull
+  private IexClient iexClient;
+
+  private volatile Snapshot snapshot;
+
+  /**
+   * Get the current snapshot of the IEX symbols, loading them first if that hasn't been done yet.
+   */
+  public Snapshot getSnapshot() {
+    Snapshot current = snapshot;
+    if (current == null) {
+      current = loadIfMissing();
+    }
+    return current;
+  }
+
+  /**
+   * Load the symbols when the application starts. A failure is logged rather than stopping the
+   * application from starting; the symbols will be loaded again when they are first asked for.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void preload() {
+    try {
+      refresh();
+    } catch (RuntimeException e) {
+      log.warn("Unable to load IEX symbols at startup", e);
+    }
+  }
+
+  /**
+   * Reload the symbols from IEX in the background. If IEX can't be reached, the symbols already
+   * loaded continue to be served.
+   */
+  @Scheduled(initialDelayString = "${iex.symbols.refresh-millis}",
+      fixedDelayString = "${iex.symbols.refresh-millis}")
+  public void scheduledRefresh() {
+    try {
+      refresh();
+    } catch (RuntimeException e) {
+      log.warn("Unable to refresh IEX symbols, keeping the snapshot loaded at {}",
+          snapshot == null ? null : snapshot.getLoadedAt(), e);
+    }
+  }
+
+  /**
+   * Load the symbols from IEX and replace the current snapshot with them.
+   *
+   * @return the new snapshot
+   */
+  public Snapshot refresh() {
+    Snapshot loaded = new Snapshot(iexClient.getAllSymbols(), Instant.now());
+    Snapshot previous = snapshot;
+    snapshot = loaded;
+    log.info("Loaded {} IEX symbols (etag {}, previously {})", loaded.getSymbols().size(),
+        loaded.getEtag(), previous == null ? null : previous.getEtag());
+    return loaded;
+  }
+
+  /*
+   * Load the symbols on first use. Synchronized so that a burst of early requests makes a single
+   * call to IEX rather than one each.
+   */
+  private synchronized Snapshot loadIfMissing() {
+    return snapshot == null ? refresh() : snapshot;
+  }
+
+  /**
+   * An immutable copy of the IEX symbols, along with an entity tag identifying its content.
+   */
+  @Getter
+  @ToString(exclude = "symbols")
+  public static final class Snapshot {
+
+    private final List<IexSymbol> symbols;
+
+    /**
+     * Changes whenever the symbols do, so that clients can tell whether their copy is stale.
+     */
+    private final String etag;
+
+    private final Instant loadedAt;
+
+    Snapshot(final List<IexSymbol> symbols, final Instant loadedAt) {
+      this.symbols = ImmutableList.copyOf(symbols);
+      this.etag = DigestUtils.md5DigestAsHex(
+          this.symbols.toString().getBytes(StandardCharsets.UTF_8));
+      this.loadedAt = loadedAt;
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package org.galatea.starter.service;
+
+import java.util.List;
+import lombok.Value;
+
+/**
+ * The outcome of updating a batch of missions: the ids of the missions that were updated, and why
+ * each of the others wasn't.
+ */
+@Value
+public class MissionUpdateResult {
+
+  List<Long> updatedIds;
+
+  List<Conflict> conflicts;
+
+  /**
+   * A mission in the batch that wasn't updated.
+   */
+  @Value
+  public static class Conflict {
+
+    /**
+     * The id the update was for, or null if it didn't have one.
+     */
+    Long id;
+
+    Reason reason;
+
+    /**
+     * The version of the mission in the database, if there is one.
+     */
+    Long currentVersion;
+  }
+
+  /**
+   * Why a mission wasn't updated.
+   */
+  public enum Reason {
+    /**
+     * The update didn't say which mission it was for.
+     */
+    MISSING_ID,
+    /**
+     * The same mission was updated earlier in the batch.
+     */
+    DUPLICATE_ID,
+    /**
+     * There's no mission with the id.
+     */
+    NOT_FOUND,
+    /**
+     * The update was made to a different version of the mission than the one in the database.
+     */
+    VERSION_MISMATCH
+  }
+}
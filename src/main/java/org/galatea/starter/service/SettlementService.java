@@ -1,38 +1,84 @@
 package org.galatea.starter.service;
 
 import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
+import javax.persistence.EntityManager;
 import javax.validation.Valid;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import net.sf.aspect4log.Log;
 import org.galatea.starter.domain.SettlementMission;
 import org.galatea.starter.domain.TradeAgreement;
 import org.galatea.starter.domain.rpsy.ISettlementMissionRpsy;
 import org.galatea.starter.entrypoint.exception.EntityNotFoundException;
+import org.galatea.starter.service.MissionUpdateResult.Reason;
+import org.galatea.starter.utils.cache.JitteredCacheWriter;
+import org.galatea.starter.utils.concurrent.RequestCoalescer;
+import org.galatea.starter.utils.logging.LogFormat;
+import org.galatea.starter.utils.logging.Logged;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.validation.annotation.Validated;
 
 @RequiredArgsConstructor
 @Slf4j
-@Log
+@Logged
 @Validated
 @Service
 public class SettlementService {
 
+  // How much of a list of missions or ids gets logged
+  private static final int LOGGED_ELEMENTS = 10;
+  private static final int LOGGED_LENGTH = 500;
+
+  // Most ids put in one delete statement's IN list. Some databases cap how long the list can be
+  private static final int DELETE_CHUNK_SIZE = 500;
+
   @NonNull
   ISettlementMissionRpsy missionrpsy;
 
   @NonNull
   IAgreementTransformer agreementTransformer;
 
+  @NonNull
+  EntityManager entityManager;
+
+  @NonNull
+  CacheManager cacheManager;
+
+  @NonNull
+  JitteredCacheWriter missionCacheWriter;
+
+  // Whether missions are put in the cache as they're saved, rather than only as they're read
+  @Value("${missions-cache.write-through}")
+  private boolean writeThrough;
+
+  // Lets concurrent callers missing the same missions in the cache share one read of them
+  private final RequestCoalescer<List<Long>, List<SettlementMission>> missionLoadCoalescer =
+      new RequestCoalescer<>();
+
   /**
    * Create missions based on the agreements provided.
    *
@@ -44,13 +90,17 @@ public class SettlementService {
     // Map each agreement to a mission, collect to a list, and then same in bulk
     Iterable<SettlementMission> savedMissions = missionrpsy.saveAll(agreements.stream()
         .map(agr -> agreementTransformer.transform(agr)).collect(Collectors.toList()));
-    log.debug("The following missions were saved: {}", savedMissions);
+    if (log.isDebugEnabled()) {
+      log.debug("The following missions were saved: {}",
+          LogFormat.abbreviate(savedMissions, LOGGED_ELEMENTS, LOGGED_LENGTH));
+    }
 
     // We have to do all of this StreamSupport crap since the repository returns an iterable instead
     // of a normal collection
     Set<Long> idSet = StreamSupport.stream(savedMissions.spliterator(), false)
         .map(SettlementMission::getId).collect(Collectors.toSet());
     log.info("Returning {} mission id(s)", idSet.size());
+    writeThrough(savedMissions);
 
     return idSet;
   }
@@ -67,21 +117,59 @@ public class SettlementService {
   }
 
   /**
-   * Retrieve multiple previously-generated settlement missions from the database.
+   * Retrieve multiple previously-generated settlement missions, from the missions cache where
+   * they're in it and from the database where they aren't.
+   *
+   * <p>Only the ids missing from the cache are read from the database, in one query, and the
+   * missions read are put in the cache for next time. Callers missing the same ids at the same
+   * time share a single read. Missions are returned in the order their ids were given, once each.
    *
    * @param ids a comma-separated list of IDs of the missions to retrieve
+   * @throws EntityNotFoundException if any of the ids has no mission
    */
   public List<SettlementMission> findMissions(final List<Long> ids) {
-    log.info("Retrieving settlement missions with ids: {}", ids);
+    if (log.isInfoEnabled()) {
+      log.info("Retrieving settlement missions with ids: {}",
+          LogFormat.abbreviate(ids, LOGGED_ELEMENTS, LOGGED_LENGTH));
+    }
 
-    List<SettlementMission> retrievedMissions = Lists.newArrayList(missionrpsy.findAllById(ids));
+    // Each id maps to its mission, or to null until it's found
+    Cache cache = cacheManager.getCache(ISettlementMissionRpsy.MISSIONS_CACHE);
+    Map<Long, SettlementMission> missions = new LinkedHashMap<>();
+    List<Long> cacheMisses = new ArrayList<>();
+    for (Long id : ids) {
+      if (!missions.containsKey(id)) {
+        SettlementMission mission = cache.get(id, SettlementMission.class);
+        missions.put(id, mission);
+        if (mission == null) {
+          cacheMisses.add(id);
+        }
+      }
+    }
+
+    if (!cacheMisses.isEmpty()) {
+      List<SettlementMission> loadedMissions = missionLoadCoalescer.get(cacheMisses,
+          () -> Lists.newArrayList(missionrpsy.findAllById(cacheMisses)));
+      for (SettlementMission mission : loadedMissions) {
+        missions.put(mission.getId(), mission);
+        // Don't overwrite a mission put there since it was read
+        missionCacheWriter.putIfAbsent(cache, mission.getId(), mission);
+      }
+      log.debug("Read {} of {} mission(s) from the database", cacheMisses.size(),
+          missions.size());
+    }
 
     // CrudRepository.findAll(Iterable ids) succeeds even if some provided IDs aren't found, so
     // if we want to alert on any not-found IDs we have to manually check
-    Set<Long> retrievedMissionIds = retrievedMissions.stream()
-        .map(SettlementMission::getId)
-        .collect(Collectors.toSet());
-    Sets.SetView<Long> missingMissions = Sets.difference(new HashSet<>(ids), retrievedMissionIds);
+    List<SettlementMission> retrievedMissions = new ArrayList<>(missions.size());
+    List<Long> missingMissions = new ArrayList<>();
+    missions.forEach((id, mission) -> {
+      if (mission == null) {
+        missingMissions.add(id);
+      } else {
+        retrievedMissions.add(mission);
+      }
+    });
     if (!missingMissions.isEmpty()) {
       throw new EntityNotFoundException(SettlementMission.class, missingMissions);
     }
@@ -89,6 +177,35 @@ public class SettlementService {
     return retrievedMissions;
   }
 
+  /**
+   * Stream settlement missions from the database in id order, optionally filtered by depot.
+   *
+   * <p>Missions are read through a database cursor and detached as they are handed out, so memory
+   * use doesn't grow with the number of missions read. The consumer is called inside the read
+   * transaction and must finish with the missions before it returns.
+   *
+   * @param depot only stream missions with this depot, or every mission if null
+   * @param afterId only stream missions with an id greater than this one
+   * @param limit the maximum number of missions to stream, or null for no limit
+   * @param consumer receives the missions
+   */
+  @Transactional(readOnly = true)
+  public void streamMissions(final String depot, final long afterId, final Integer limit,
+      final IMissionConsumer consumer) throws IOException {
+    log.info("Streaming settlement missions with depot {} after id {} (limit {})", depot, afterId,
+        limit);
+
+    Pageable page = limit == null ? Pageable.unpaged() : PageRequest.of(0, limit);
+    try (Stream<SettlementMission> missions = depot == null
+        ? missionrpsy.streamByIdGreaterThan(afterId, page)
+        : missionrpsy.streamByDepotAndIdGreaterThan(depot, afterId, page)) {
+      // Detach each mission once it's read, otherwise the persistence context would end up
+      // holding every mission in the stream
+      Stream<SettlementMission> detached = missions.peek(entityManager::detach);
+      consumer.accept(detached::iterator);
+    }
+  }
+
   /**
    * Update the mission with the given ID.
    *
@@ -100,9 +217,72 @@ public class SettlementService {
     mission.setId(id);
     SettlementMission savedMission = missionrpsy.save(mission);
     log.info("The following mission was updated: {}", savedMission);
+    writeThrough(Collections.singletonList(savedMission));
     return Optional.ofNullable(savedMission);
   }
 
+  /**
+   * Update a batch of missions in one transaction.
+   *
+   * <p>The missions being updated are read in a single query, and each update is checked against
+   * what's there: it has to be for a mission that exists, and be made to the version of it that's
+   * in the database. Updates that aren't are reported as conflicts and skipped; the others are
+   * applied. The database is only written to when the transaction commits, with the updates sent
+   * in JDBC batches, and each one still checks the version it read, so a mission changed by
+   * someone else in the meantime fails the whole batch with an optimistic locking failure.
+   *
+   * @param missions the missions to update, each with its id and the version it was read at
+   * @return the ids of the missions updated, and the updates that conflicted
+   */
+  @Transactional
+  public MissionUpdateResult updateMissions(@Valid final List<SettlementMission> missions) {
+    Map<Long, SettlementMission> currentMissions = new HashMap<>();
+    missionrpsy.findAllById(missions.stream()
+        .map(SettlementMission::getId)
+        .filter(Objects::nonNull)
+        .collect(Collectors.toSet()))
+        .forEach(mission -> currentMissions.put(mission.getId(), mission));
+
+    List<SettlementMission> updatedMissions = new ArrayList<>(missions.size());
+    List<Long> updatedIds = new ArrayList<>(missions.size());
+    List<MissionUpdateResult.Conflict> conflicts = new ArrayList<>();
+    Set<Long> seenIds = new HashSet<>();
+    for (SettlementMission mission : missions) {
+      Long id = mission.getId();
+      SettlementMission current = id == null ? null : currentMissions.get(id);
+      Reason conflict = null;
+      if (id == null) {
+        conflict = Reason.MISSING_ID;
+      } else if (!seenIds.add(id)) {
+        conflict = Reason.DUPLICATE_ID;
+      } else if (current == null) {
+        conflict = Reason.NOT_FOUND;
+      } else if (!Objects.equals(current.getVersion(), mission.getVersion())) {
+        conflict = Reason.VERSION_MISMATCH;
+      }
+
+      if (conflict == null) {
+        // The mission was read above, so saving it merges into the copy already in the
+        // persistence context rather than reading it again
+        updatedMissions.add(missionrpsy.save(mission));
+        updatedIds.add(id);
+      } else {
+        conflicts.add(new MissionUpdateResult.Conflict(id, conflict,
+            current == null ? null : current.getVersion()));
+      }
+    }
+
+    // By the time the transaction commits, the updates have been flushed and their versions
+    // bumped, so the missions cached are the ones in the database
+    writeThrough(updatedMissions);
+    log.info("Updated {} mission(s), {} conflict(s)", updatedIds.size(), conflicts.size());
+    if (!conflicts.isEmpty() && log.isDebugEnabled()) {
+      log.debug("Conflicting mission updates: {}",
+          LogFormat.abbreviate(conflicts, LOGGED_ELEMENTS, LOGGED_LENGTH));
+    }
+    return new MissionUpdateResult(updatedIds, conflicts);
+  }
+
   /**
    * Return true if a mission with the given ID exists.
    *
@@ -123,4 +303,101 @@ public class SettlementService {
     missionrpsy.deleteById(id);
     log.info("Mission with id '{}' was deleted", id);
   }
+
+  /**
+   * Delete the missions with the given ids, without reading them first.
+   *
+   * <p>The missions are deleted with one statement per {@value #DELETE_CHUNK_SIZE} ids, in one
+   * transaction, and are removed from the cache once it commits. Ids with no mission are ignored.
+   *
+   * <p>A findMissions call that read a mission from the database before the commit can still put
+   * it back in the cache after the eviction, where it stays until it expires.
+   *
+   * @param ids identifiers of the missions to delete
+   * @return the number of missions deleted
+   */
+  @Transactional
+  public int deleteMissions(final Collection<Long> ids) {
+    List<Long> distinctIds = new ArrayList<>(new LinkedHashSet<>(ids));
+    int deleted = 0;
+    for (List<Long> chunk : Lists.partition(distinctIds, DELETE_CHUNK_SIZE)) {
+      deleted += missionrpsy.deleteByIdIn(chunk);
+    }
+
+    afterCommit(() -> {
+      Cache cache = cacheManager.getCache(ISettlementMissionRpsy.MISSIONS_CACHE);
+      distinctIds.forEach(cache::evict);
+    });
+    log.info("Deleted {} of {} mission(s) by id", deleted, distinctIds.size());
+    return deleted;
+  }
+
+  /**
+   * Delete every mission with the given depot, and instrument if there is one, in a single
+   * statement.
+   *
+   * <p>Which missions were deleted isn't known, so the whole missions cache is cleared once the
+   * transaction commits. As with {@link #deleteMissions}, a concurrent read can put a deleted
+   * mission back in the cache until it expires.
+   *
+   * @param depot the depot of the missions to delete
+   * @param instrument the instrument of the missions to delete, or null for any instrument
+   * @return the number of missions deleted
+   */
+  @Transactional
+  public int deleteMissionsByDepot(@NonNull final String depot, final String instrument) {
+    int deleted = instrument == null
+        ? missionrpsy.deleteByDepot(depot)
+        : missionrpsy.deleteByDepotAndInstrument(depot, instrument);
+
+    afterCommit(() -> cacheManager.getCache(ISettlementMissionRpsy.MISSIONS_CACHE).clear());
+    log.info("Deleted {} mission(s) with depot {} and instrument {}", deleted, depot, instrument);
+    return deleted;
+  }
+
+  /*
+   * In write-through mode, put saved missions in the cache, replacing what's there, once they've
+   * been committed. Otherwise leave saving to evict them.
+   */
+  private void writeThrough(final Iterable<SettlementMission> savedMissions) {
+    if (writeThrough) {
+      afterCommit(() -> {
+        Cache cache = cacheManager.getCache(ISettlementMissionRpsy.MISSIONS_CACHE);
+        savedMissions.forEach(mission ->
+            missionCacheWriter.put(cache, mission.getId(), mission));
+      });
+    }
+  }
+
+  /*
+   * Run the action once the current transaction commits, so that the cache never holds what a
+   * transaction wrote but then rolled back. This doesn't stop a read that started before the
+   * commit putting back a mission the transaction deleted or replaced. Without a transaction it's
+   * run now.
+   */
+  private static void afterCommit(final Runnable action) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      action.run();
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronizationAdapter() {
+          @Override
+          public void afterCommit() {
+            action.run();
+          }
+        });
+  }
+
+  /**
+   * Receives the missions read by {@link #streamMissions}.
+   */
+  @FunctionalInterface
+  public interface IMissionConsumer {
+
+    /**
+     * Handle the missions. They can only be iterated once.
+     */
+    void accept(Iterable<SettlementMission> missions) throws IOException;
+  }
 }
@@ -2,29 +2,181 @@ package org.galatea.starter.utils;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 import lombok.EqualsAndHashCode;
-import lombok.RequiredArgsConstructor;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
+import org.galatea.starter.utils.concurrent.BoundedRingBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.boot.actuate.trace.http.HttpTrace;
 import org.springframework.boot.actuate.trace.http.InMemoryHttpTraceRepository;
 
-@RequiredArgsConstructor
+/**
+ * Keeps the most recent traces in memory for actuator, and writes every trace out as JSON to the
+ * {@link #TRACE_LOGGER} log, which the logging config sends to its own rolling file.
+ *
+ * <p>Traces are written in the background, so the request threads that add them don't pay for
+ * serializing and writing them. Adding a trace just puts it on a lock-free, bounded queue. A single
+ * writer thread drains the queue in batches and writes each batch as one log event, one trace per
+ * line. If the writer falls so far behind that the queue fills up, traces are dropped (and
+ * counted) rather than holding up requests.
+ *
+ * <p>Published, written, dropped and failed traces, and the depth of the queue, are published as
+ * http.trace.* metrics.
+ */
 @ToString(callSuper = true)
 @EqualsAndHashCode(callSuper = true)
 @Slf4j
-public class FuseHttpTraceRepository extends InMemoryHttpTraceRepository {
+public class FuseHttpTraceRepository extends InMemoryHttpTraceRepository implements MeterBinder,
+    AutoCloseable {
+
+  /**
+   * The log that traces are written to.
+   */
+  public static final String TRACE_LOGGER = "org.galatea.starter.trace";
+
+  private static final Logger TRACES = LoggerFactory.getLogger(TRACE_LOGGER);
 
   private final ObjectMapper objectMapper;
 
+  private final BoundedRingBuffer<HttpTrace> buffer;
+
+  private final int batchSize;
+
+  private final long idleNanos;
+
+  private final LongAdder published = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+  private final LongAdder written = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+
+  private volatile boolean running;
+
+  private Thread writer;
+
+  /**
+   * Create a repository. Nothing is written until it's started.
+   *
+   * @param objectMapper serializes the traces
+   * @param capacity the most traces that can be waiting to be written
+   * @param batchSize the most traces written in one go
+   * @param idleMillis how long the writer waits before looking for traces again when it's run out
+   */
+  public FuseHttpTraceRepository(final ObjectMapper objectMapper, final int capacity,
+      final int batchSize, final long idleMillis) {
+    this.objectMapper = objectMapper;
+    this.buffer = new BoundedRingBuffer<>(capacity);
+    this.batchSize = batchSize;
+    this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+  }
+
   @Override
   public void add(final HttpTrace trace) {
-    // HttpTrace has no toString, nor do its inner classes...
-    try {
-      log.info("Adding trace info: {}", objectMapper.writeValueAsString(trace));
-    } catch (JsonProcessingException e) {
-      log.warn("Error logging trace info: ", e);
-    }
     super.add(trace);
+    if (buffer.offer(trace)) {
+      published.increment();
+    } else {
+      dropped.increment();
+    }
+  }
+
+  /**
+   * Start writing traces in the background.
+   */
+  public synchronized void start() {
+    if (writer == null) {
+      running = true;
+      writer = new Thread(this::writeTraces, "http-trace-writer");
+      writer.setDaemon(true);
+      writer.start();
+    }
+  }
+
+  /**
+   * Stop writing traces, once the ones already queued have been written.
+   */
+  @Override
+  public synchronized void close() throws InterruptedException {
+    if (writer != null) {
+      running = false;
+      LockSupport.unpark(writer);
+      writer.join(TimeUnit.SECONDS.toMillis(5));
+      writer = null;
+    }
+  }
+
+  /**
+   * Returns the number of traces that haven't been written yet.
+   */
+  public int getPending() {
+    return buffer.size();
+  }
+
+  @Override
+  public void bindTo(final MeterRegistry registry) {
+    FunctionCounter.builder("http.trace.published", published, LongAdder::sum)
+        .description("Traces queued to be written")
+        .register(registry);
+    FunctionCounter.builder("http.trace.dropped", dropped, LongAdder::sum)
+        .description("Traces dropped because the queue was full")
+        .register(registry);
+    FunctionCounter.builder("http.trace.written", written, LongAdder::sum)
+        .description("Traces written to the trace log")
+        .register(registry);
+    FunctionCounter.builder("http.trace.failed", failed, LongAdder::sum)
+        .description("Traces that couldn't be serialized")
+        .register(registry);
+    Gauge.builder("http.trace.pending", buffer, BoundedRingBuffer::size)
+        .description("Traces waiting to be written, out of " + buffer.capacity())
+        .register(registry);
+  }
+
+  /*
+   * Runs on the writer thread until the repository is closed and the queue is empty.
+   */
+  private void writeTraces() {
+    List<HttpTrace> batch = new ArrayList<>(batchSize);
+    while (running || buffer.size() > 0) {
+      if (buffer.drainTo(batch, batchSize) == 0) {
+        LockSupport.parkNanos(this, idleNanos);
+        continue;
+      }
+      try {
+        write(batch);
+      } catch (RuntimeException e) {
+        log.warn("Unable to write {} traces", batch.size(), e);
+        failed.add(batch.size());
+      }
+      batch.clear();
+    }
+  }
+
+  private void write(final List<HttpTrace> batch) {
+    StringBuilder lines = new StringBuilder(batch.size() * 512);
+    int count = 0;
+    for (HttpTrace trace : batch) {
+      try {
+        // HttpTrace has no toString, nor do its inner classes...
+        String json = objectMapper.writeValueAsString(trace);
+        lines.append(count == 0 ? "" : System.lineSeparator()).append(json);
+        count++;
+      } catch (JsonProcessingException e) {
+        log.warn("Error serializing trace info: ", e);
+        failed.increment();
+      }
+    }
+    if (count > 0) {
+      TRACES.info(lines.toString());
+      written.add(count);
+    }
   }
 }
@@ -0,0 +1,51 @@
+package org.galatea.starter.utils.cache;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.statistics.StatisticsGateway;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+/**
+ * Publishes the fraction of reads each cache has answered since it started. As a bean, its gauges
+ * are picked up by actuator and show up under /actuator/metrics/cache.hit.ratio, tagged with the
+ * cache's name. For the ratio over a recent window, use the rates of the cache.gets hits and
+ * misses that Spring Boot publishes.
+ *
+ * <p>Only Ehcache caches keep the counts this needs; any other cache is skipped. Caches are looked
+ * up once, when the gauges are registered.
+ */
+@RequiredArgsConstructor
+public class CacheHitRatioMetrics implements MeterBinder {
+
+  @NonNull
+  private final CacheManager cacheManager;
+
+  @Override
+  public void bindTo(final MeterRegistry registry) {
+    for (String name : cacheManager.getCacheNames()) {
+      Cache cache = cacheManager.getCache(name);
+      if (cache != null && cache.getNativeCache() instanceof Ehcache) {
+        Gauge.builder("cache.hit.ratio", (Ehcache) cache.getNativeCache(),
+            ehcache -> hitRatio(ehcache.getStatistics()))
+            .description("Fraction of reads answered by the cache")
+            .tags(Tags.of("cache", name))
+            .register(registry);
+      }
+    }
+  }
+
+  /*
+   * Returns NaN until the cache has been read from, as there's no ratio yet.
+   */
+  private static double hitRatio(final StatisticsGateway statistics) {
+    long hits = statistics.cacheHitCount();
+    long reads = hits + statistics.cacheMissCount();
+    return reads == 0 ? Double.NaN : (double) hits / reads;
+  }
+}
@@ -0,0 +1,73 @@
+package org.galatea.starter.utils.cache;
+
+import java.util.concurrent.ThreadLocalRandom;
+import lombok.Getter;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import org.springframework.cache.Cache;
+
+/**
+ * Puts values in a cache with their time to live cut short by a random fraction, up to the
+ * jitter. Entries written at the same time, such as a batch of missions that were just saved,
+ * then expire over a spread of time rather than all at once, and so aren't all read back from
+ * the database at once either.
+ *
+ * <p>Only Ehcache caches support a time to live per entry. Values are put in any other cache as
+ * they are.
+ */
+public class JitteredCacheWriter {
+
+  /**
+   * The largest fraction of an entry's time to live that can be cut off.
+   */
+  @Getter
+  private final double jitter;
+
+  /**
+   * Create a writer.
+   *
+   * @param jitter the largest fraction, from 0 to 1, of an entry's time to live to cut off
+   */
+  public JitteredCacheWriter(final double jitter) {
+    if (jitter < 0 || jitter > 1) {
+      throw new IllegalArgumentException("Jitter must be between 0 and 1, got " + jitter);
+    }
+    this.jitter = jitter;
+  }
+
+  /**
+   * Put a value in the cache, replacing whatever is there.
+   */
+  public void put(final Cache cache, final Object key, final Object value) {
+    Object nativeCache = cache.getNativeCache();
+    if (jitter > 0 && nativeCache instanceof Ehcache) {
+      Ehcache ehcache = (Ehcache) nativeCache;
+      ehcache.put(element(ehcache, key, value));
+    } else {
+      cache.put(key, value);
+    }
+  }
+
+  /**
+   * Put a value in the cache unless there's one there already.
+   */
+  public void putIfAbsent(final Cache cache, final Object key, final Object value) {
+    Object nativeCache = cache.getNativeCache();
+    if (jitter > 0 && nativeCache instanceof Ehcache) {
+      Ehcache ehcache = (Ehcache) nativeCache;
+      ehcache.putIfAbsent(element(ehcache, key, value));
+    } else {
+      cache.putIfAbsent(key, value);
+    }
+  }
+
+  private Element element(final Ehcache ehcache, final Object key, final Object value) {
+    Element element = new Element(key, value);
+    long timeToLive = ehcache.getCacheConfiguration().getTimeToLiveSeconds();
+    if (timeToLive > 0) {
+      double cut = jitter * ThreadLocalRandom.current().nextDouble();
+      element.setTimeToLive((int) Math.max(1, Math.round(timeToLive * (1 - cut))));
+    }
+    return element;
+  }
+}
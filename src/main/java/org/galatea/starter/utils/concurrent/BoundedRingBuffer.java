@@ -0,0 +1,133 @@
+package org.galatea.starter.utils.concurrent;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed-size, lock-free queue for handing work from many threads to a background consumer.
+ *
+ * <p>Adding to the queue never blocks: when it's full, {@link #offer} returns false straight away
+ * and it's up to the caller to decide what to do with the item. Each slot in the ring carries a
+ * sequence number saying whether it's ready to be written or read, so producers only contend on a
+ * single compare-and-set of the tail, and never with the consumer (see Dmitry Vyukov's bounded
+ * MPMC queue).
+ *
+ * @param <E> the type of the items in the queue
+ */
+public class BoundedRingBuffer<E> {
+
+  private final int mask;
+  private final AtomicReferenceArray<E> items;
+  private final AtomicLongArray sequences;
+  private final AtomicLong tail = new AtomicLong();
+  private final AtomicLong head = new AtomicLong();
+
+  /**
+   * Create an empty queue.
+   *
+   * @param capacity the most items the queue can hold. Rounded up to a power of two, and at least
+   *     2.
+   */
+  public BoundedRingBuffer(final int capacity) {
+    if (capacity < 1 || capacity > 1 << 30) {
+      throw new IllegalArgumentException("Capacity must be between 1 and 2^30, got " + capacity);
+    }
+    // A slot's sequence can't tell an empty slot from a full one with fewer than two slots
+    int size = Math.max(Integer.highestOneBit(capacity - 1) << 1, 2);
+    this.mask = size - 1;
+    this.items = new AtomicReferenceArray<>(size);
+    this.sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      sequences.set(i, i);
+    }
+  }
+
+  /**
+   * Add an item to the queue, unless it's full.
+   *
+   * @return true if the item was added, or false if the queue was full
+   */
+  public boolean offer(final E item) {
+    if (item == null) {
+      throw new NullPointerException("Can't add null to the queue");
+    }
+    long position = tail.get();
+    while (true) {
+      int index = (int) (position & mask);
+      long ready = sequences.get(index) - position;
+      if (ready == 0) {
+        if (tail.compareAndSet(position, position + 1)) {
+          items.set(index, item);
+          // Publish the item to the consumer
+          sequences.set(index, position + 1);
+          return true;
+        }
+        position = tail.get();
+      } else if (ready < 0) {
+        // The slot still holds an item from the last time round the ring
+        return false;
+      } else {
+        // Another producer took the slot first
+        position = tail.get();
+      }
+    }
+  }
+
+  /**
+   * Take the item at the head of the queue.
+   *
+   * @return the item, or null if the queue is empty
+   */
+  public E poll() {
+    long position = head.get();
+    while (true) {
+      int index = (int) (position & mask);
+      long ready = sequences.get(index) - (position + 1);
+      if (ready == 0) {
+        if (head.compareAndSet(position, position + 1)) {
+          E item = items.getAndSet(index, null);
+          // Free the slot for the next time round the ring
+          sequences.set(index, position + mask + 1);
+          return item;
+        }
+        position = head.get();
+      } else if (ready < 0) {
+        return null;
+      } else {
+        position = head.get();
+      }
+    }
+  }
+
+  /**
+   * Move up to maxItems items from the head of the queue into the given collection.
+   *
+   * @return the number of items moved
+   */
+  public int drainTo(final Collection<? super E> collection, final int maxItems) {
+    int drained = 0;
+    E item;
+    while (drained < maxItems && (item = poll()) != null) {
+      collection.add(item);
+      drained++;
+    }
+    return drained;
+  }
+
+  /**
+   * Returns roughly how many items are in the queue. Only exact if nothing is being added or taken
+   * at the time.
+   */
+  public int size() {
+    return (int) Math.max(0, Math.min(tail.get() - head.get(), capacity()));
+  }
+
+  /**
+   * Returns the most items the queue can hold.
+   */
+  public int capacity() {
+    return mask + 1;
+  }
+}
@@ -0,0 +1,246 @@
+package org.galatea.starter.utils.concurrent;
+
+import com.google.common.collect.Lists;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import lombok.NonNull;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Splits a list of inputs into fixed-size chunks, handles each chunk concurrently on the given
+ * executor and stitches the results back together in chunk order.
+ *
+ * <p>Useful for calls to remote services that take a list of keys, where one call with every key
+ * would make for an overly long request or a single slow response that holds up everything.
+ *
+ * <p>Closing the ChunkingExecutor shuts down its executor, if it is an ExecutorService.
+ */
+@Slf4j
+@ToString
+public class ChunkingExecutor implements AutoCloseable {
+
+  private final Executor executor;
+
+  /**
+   * The most inputs handed to a single call.
+   */
+  private final int chunkSize;
+
+  /**
+   * Permits for calls started by executeAsync, which don't hold on to one of the executor's
+   * threads while they're in flight.
+   */
+  private final Semaphore asyncCallPermits;
+
+  /**
+   * Calls started by executeAsync that are waiting for a permit.
+   */
+  @ToString.Exclude
+  private final Queue<Runnable> waitingAsyncCalls = new ConcurrentLinkedQueue<>();
+
+  /**
+   * Create a ChunkingExecutor.
+   *
+   * @param executor runs the calls made by execute and submit
+   * @param chunkSize the most inputs handed to a single call
+   * @param maxAsyncCalls the most calls started by executeAsync that can be in flight at once,
+   *     across every caller. Normally the number of threads the executor has, so that async calls
+   *     are capped the same as blocking ones.
+   */
+  public ChunkingExecutor(@NonNull final Executor executor, final int chunkSize,
+      final int maxAsyncCalls) {
+    this.executor = executor;
+    this.chunkSize = chunkSize;
+    this.asyncCallPermits = new Semaphore(maxAsyncCalls);
+  }
+
+  /**
+   * Call the given function once per chunk of the inputs and merge the results.
+   *
+   * <p>A single chunk is handled on the calling thread. If any call fails, the first failure (in
+   * chunk order) is rethrown once every chunk has finished.
+   *
+   * @param inputs the inputs to split into chunks
+   * @param call handles one chunk of inputs
+   * @param <T> the type of the inputs
+   * @param <R> the type of the results
+   * @return the results of every call, in the order of the chunks they came from
+   */
+  public <T, R> List<R> execute(final List<T> inputs, final Function<List<T>, List<R>> call) {
+    List<List<T>> chunks = Lists.partition(inputs, chunkSize);
+    if (chunks.size() <= 1) {
+      return chunks.isEmpty() ? new ArrayList<>() : call.apply(chunks.get(0));
+    }
+
+    log.debug("Splitting {} inputs into {} chunks", inputs.size(), chunks.size());
+    List<CompletableFuture<List<R>>> futures = chunks.stream()
+        .map(chunk -> CompletableFuture.supplyAsync(() -> call.apply(chunk), executor))
+        .collect(Collectors.toList());
+
+    try {
+      CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+    } catch (CompletionException e) {
+      // Fall through, so that the failure from the earliest chunk is the one rethrown
+      log.debug("At least one chunk failed", e);
+    }
+
+    List<R> results = new ArrayList<>(inputs.size());
+    for (CompletableFuture<List<R>> future : futures) {
+      results.addAll(join(future));
+    }
+    return results;
+  }
+
+  /**
+   * Like {@link #execute}, but for calls that are already asynchronous. The executor isn't used.
+   * Instead each chunk's call is started on the calling thread if fewer than maxAsyncCalls are in
+   * flight, or otherwise on the thread that completes an earlier call, once it has.
+   *
+   * @param inputs the inputs to split into chunks
+   * @param call starts the call for one chunk of inputs
+   * @param <T> the type of the inputs
+   * @param <R> the type of the results
+   * @return a future that completes with the results of every call, in the order of the chunks
+   *     they came from, or with the first failure (in chunk order) once every chunk has finished
+   */
+  public <T, R> CompletableFuture<List<R>> executeAsync(final List<T> inputs,
+      final Function<List<T>, CompletableFuture<List<R>>> call) {
+    List<CompletableFuture<List<R>>> futures = Lists.partition(inputs, chunkSize).stream()
+        .map(chunk -> startAsyncCall(() -> call.apply(chunk)))
+        .collect(Collectors.toList());
+
+    return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+        .handle((ignored, failure) -> {
+          List<R> results = new ArrayList<>(inputs.size());
+          for (CompletableFuture<List<R>> future : futures) {
+            results.addAll(join(future));
+          }
+          return results;
+        });
+  }
+
+  /**
+   * Handle a single input on the executor, without any chunking. Useful when each input needs its
+   * own call, but the calls should still share the executor's limit on concurrency.
+   *
+   * <p>If the future fails before the call has finished, for example because it timed out, the
+   * call is cancelled: it won't start if it's still queued, and is interrupted if it's running.
+   *
+   * @param input the input to handle
+   * @param call handles the input
+   * @param <T> the type of the input
+   * @param <R> the type of the result
+   * @return a future that completes with the result of the call, or fails with a
+   *     RejectedExecutionException if the executor won't take it
+   */
+  public <T, R> CompletableFuture<R> submit(final T input, final Function<T, R> call) {
+    CompletableFuture<R> result = new CompletableFuture<>();
+    FutureTask<R> task = new FutureTask<R>(() -> call.apply(input)) {
+      @Override
+      protected void done() {
+        try {
+          result.complete(get());
+        } catch (ExecutionException e) {
+          result.completeExceptionally(e.getCause());
+        } catch (CancellationException | InterruptedException e) {
+          result.completeExceptionally(e);
+        }
+      }
+    };
+    result.whenComplete((ignored, failure) -> {
+      if (failure != null) {
+        task.cancel(true);
+      }
+    });
+
+    try {
+      executor.execute(task);
+    } catch (RejectedExecutionException e) {
+      result.completeExceptionally(e);
+    }
+    return result;
+  }
+
+  /**
+   * Shut down the executor, letting any chunks already submitted finish.
+   */
+  @Override
+  public void close() {
+    if (executor instanceof ExecutorService) {
+      ((ExecutorService) executor).shutdown();
+    }
+  }
+
+  /*
+   * Queue up the call, and start as many queued calls as there are permits for. Each call gives
+   * its permit back, and starts the next, when it completes.
+   */
+  private <R> CompletableFuture<R> startAsyncCall(final Supplier<CompletableFuture<R>> call) {
+    CompletableFuture<R> result = new CompletableFuture<>();
+    waitingAsyncCalls.add(() -> {
+      CompletableFuture<R> started;
+      try {
+        started = call.get();
+      } catch (RuntimeException e) {
+        started = CompletableFuture.failedFuture(e);
+      }
+      started.whenComplete((value, failure) -> {
+        asyncCallPermits.release();
+        startWaitingAsyncCalls();
+        if (failure == null) {
+          result.complete(value);
+        } else {
+          result.completeExceptionally(failure);
+        }
+      });
+    });
+    startWaitingAsyncCalls();
+    return result;
+  }
+
+  private void startWaitingAsyncCalls() {
+    // A call queued while another thread releases its permit is started by whichever of the two
+    // gets here second
+    while (!waitingAsyncCalls.isEmpty() && asyncCallPermits.tryAcquire()) {
+      Runnable call = waitingAsyncCalls.poll();
+      if (call == null) {
+        asyncCallPermits.release();
+      } else {
+        call.run();
+      }
+    }
+  }
+
+  /*
+   * Wait for the given future, rethrowing whatever it failed with rather than wrapping it up in a
+   * CompletionException.
+   */
+  static <V> V join(final CompletableFuture<V> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw e;
+    }
+  }
+}
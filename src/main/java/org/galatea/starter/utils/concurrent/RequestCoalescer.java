@@ -0,0 +1,94 @@
+package org.galatea.starter.utils.concurrent;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Collapses identical requests that are in flight at the same time into a single call. The first
+ * caller for a key makes the call, and anyone asking for the same key before it completes waits
+ * for, and shares, its result (or failure).
+ *
+ * <p>Nothing is cached: once a call completes, the next request for its key makes a fresh call.
+ * Shared results are handed to several callers, so they shouldn't be modified.
+ *
+ * @param <K> the type of the keys identifying a request. Must have sensible equals and hashCode.
+ * @param <V> the type of the results
+ */
+@Slf4j
+public class RequestCoalescer<K, V> {
+
+  private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+  /**
+   * Get the result for the given key, calling the loader unless a call for the same key is already
+   * in flight.
+   *
+   * @param key identifies the request
+   * @param loader makes the call. Runs on the calling thread.
+   * @return the result of the call
+   */
+  public V get(final K key, final Supplier<V> loader) {
+    CompletableFuture<V> mine = new CompletableFuture<>();
+    CompletableFuture<V> existing = inFlight.putIfAbsent(key, mine);
+    if (existing != null) {
+      log.debug("Joining in-flight request for {}", key);
+      return ChunkingExecutor.join(existing);
+    }
+
+    try {
+      V result = loader.get();
+      mine.complete(result);
+      return result;
+    } catch (RuntimeException | Error e) {
+      mine.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(key, mine);
+    }
+  }
+
+  /**
+   * Get the result for the given key without blocking, calling the loader unless a call for the
+   * same key is already in flight. Calls made with {@link #get} and with this method are coalesced
+   * with each other.
+   *
+   * @param key identifies the request
+   * @param loader starts the call. Should return quickly, leaving the work to the future.
+   * @return a future that completes with the result of the call
+   */
+  public CompletableFuture<V> getAsync(final K key,
+      final Supplier<CompletableFuture<V>> loader) {
+    CompletableFuture<V> mine = new CompletableFuture<>();
+    CompletableFuture<V> existing = inFlight.putIfAbsent(key, mine);
+    if (existing != null) {
+      log.debug("Joining in-flight request for {}", key);
+      // Hand out a copy, so that one caller cancelling its future doesn't affect the others
+      return existing.copy();
+    }
+
+    try {
+      loader.get().whenComplete((result, failure) -> {
+        inFlight.remove(key, mine);
+        if (failure == null) {
+          mine.complete(result);
+        } else {
+          mine.completeExceptionally(failure);
+        }
+      });
+    } catch (RuntimeException | Error e) {
+      inFlight.remove(key, mine);
+      mine.completeExceptionally(e);
+    }
+    return mine.copy();
+  }
+
+  /**
+   * Returns the number of calls currently in flight.
+   */
+  public int inFlightCount() {
+    return inFlight.size();
+  }
+}
@@ -0,0 +1,45 @@
+package org.galatea.starter.utils.http;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.util.function.ToDoubleFunction;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+
+/**
+ * Publishes how much of an HTTP connection pool is in use. As a bean, its gauges are picked up by
+ * actuator and show up under /actuator/metrics/http.client.pool.*, tagged with the pool's name.
+ */
+@RequiredArgsConstructor
+public class ConnectionPoolMetrics implements MeterBinder {
+
+  @NonNull
+  private final PoolingHttpClientConnectionManager connectionManager;
+
+  /**
+   * Tells apart the pools of different clients.
+   */
+  @NonNull
+  private final String poolName;
+
+  @Override
+  public void bindTo(final MeterRegistry registry) {
+    gauge(registry, "leased", "Connections in use", PoolStats::getLeased);
+    gauge(registry, "available", "Idle connections kept alive for reuse", PoolStats::getAvailable);
+    gauge(registry, "pending", "Requests waiting for a connection", PoolStats::getPending);
+    gauge(registry, "max", "Most connections the pool will open", PoolStats::getMax);
+  }
+
+  private void gauge(final MeterRegistry registry, final String name, final String description,
+      final ToDoubleFunction<PoolStats> stat) {
+    Gauge.builder("http.client.pool." + name, connectionManager,
+        manager -> stat.applyAsDouble(manager.getTotalStats()))
+        .description(description)
+        .tags(Tags.of("pool", poolName))
+        .register(registry);
+  }
+}
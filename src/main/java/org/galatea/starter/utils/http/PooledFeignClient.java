@@ -0,0 +1,118 @@
+package org.galatea.starter.utils.http;
+
+import feign.Client;
+import feign.Request;
+import feign.Response;
+import feign.Util;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * A Feign {@link Client} that sends its requests through an Apache {@link HttpClient}, so that
+ * Feign clients can share a pool of kept-alive connections rather than opening a new
+ * HttpURLConnection for every request.
+ *
+ * <p>The connect and read timeouts Feign passes in with each request are applied to that request.
+ * The response body is streamed straight from the connection, which goes back to the pool once
+ * Feign has read and closed it.
+ */
+@RequiredArgsConstructor
+public class PooledFeignClient implements Client {
+
+  @NonNull
+  private final HttpClient httpClient;
+
+  @Override
+  public Response execute(final Request request, final Request.Options options)
+      throws IOException {
+    HttpResponse httpResponse = httpClient.execute(toHttpRequest(request, options).build());
+    return Response.builder()
+        .status(httpResponse.getStatusLine().getStatusCode())
+        .reason(httpResponse.getStatusLine().getReasonPhrase())
+        .headers(toHeaders(httpResponse))
+        .body(toBody(httpResponse.getEntity()))
+        .request(request)
+        .build();
+  }
+
+  private static RequestBuilder toHttpRequest(final Request request,
+      final Request.Options options) {
+    RequestBuilder builder = RequestBuilder.create(request.method())
+        .setUri(request.url())
+        .setConfig(RequestConfig.custom()
+            .setConnectTimeout(options.connectTimeoutMillis())
+            .setSocketTimeout(options.readTimeoutMillis())
+            .build());
+    for (Map.Entry<String, Collection<String>> header : request.headers().entrySet()) {
+      // The length is set from the entity, and a second Content-Length header is rejected
+      if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(header.getKey())) {
+        continue;
+      }
+      for (String value : header.getValue()) {
+        builder.addHeader(header.getKey(), value);
+      }
+    }
+    if (request.body() != null) {
+      builder.setEntity(new ByteArrayEntity(request.body()));
+    }
+    return builder;
+  }
+
+  private static Map<String, Collection<String>> toHeaders(final HttpResponse httpResponse) {
+    Map<String, Collection<String>> headers = new LinkedHashMap<>();
+    for (Header header : httpResponse.getAllHeaders()) {
+      headers.computeIfAbsent(header.getName(), name -> new ArrayList<>()).add(header.getValue());
+    }
+    return headers;
+  }
+
+  private static Response.Body toBody(final HttpEntity entity) {
+    if (entity == null) {
+      return null;
+    }
+    long length = entity.getContentLength();
+    return new Response.Body() {
+      @Override
+      public Integer length() {
+        return length >= 0 && length <= Integer.MAX_VALUE ? (int) length : null;
+      }
+
+      @Override
+      public boolean isRepeatable() {
+        return false;
+      }
+
+      @Override
+      public InputStream asInputStream() throws IOException {
+        return entity.getContent();
+      }
+
+      @Override
+      public Reader asReader() throws IOException {
+        return new InputStreamReader(asInputStream(), Util.UTF_8);
+      }
+
+      @Override
+      public void close() throws IOException {
+        EntityUtils.consume(entity);
+      }
+    };
+  }
+}
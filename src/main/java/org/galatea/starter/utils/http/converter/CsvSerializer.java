@@ -1,14 +1,28 @@
 package org.galatea.starter.utils.http.converter;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
 import com.fasterxml.jackson.dataformat.csv.CsvMapper;
 import com.fasterxml.jackson.dataformat.csv.CsvSchema;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 public class CsvSerializer {
 
+  // Note that Jackson CSV doesn't work on objects with fields that hold complex objects
+  // See https://github.com/FasterXML/jackson-dataformat-csv/issues/9
+  // CsvMapper and ObjectWriter are thread-safe once configured, so one of each can be shared
+  private static final CsvMapper MAPPER = createMapper();
+
+  // One writer (and so one schema) per row class
+  private static final Map<Class<?>, ObjectWriter> WRITERS = new ConcurrentHashMap<>();
+
   private CsvSerializer() {}
 
   /**
@@ -23,19 +37,53 @@ public class CsvSerializer {
    * @param rows the collection of objects that should be serialized into the CSV document
    * @param clazz the class that is the type of the row data
    * @param <T> the type of the row data
-   * @return an xlsx spreadsheet as a byte array
+   * @return a CSV document as a string
    */
   public static <T> String serializeToCsv(final Iterable<T> rows, final Class<T> clazz)
       throws IOException {
-    // Note that Jackson CSV doesn't work on objects with fields that hold complex objects
-    // See https://github.com/FasterXML/jackson-dataformat-csv/issues/9
+    return getWriter(clazz).writeValueAsString(rows);
+    // See CsvWriterTest for examples of Jackson CSV behavior
+  }
+
+  /**
+   * Serialize the given objects to a CSV document, writing each row to the given stream as soon as
+   * it is serialized.
+   *
+   * <p>Produces the same document as {@link #serializeToCsv(Iterable, Class)}, encoded as UTF-8,
+   * without ever holding the whole document in memory.
+   *
+   * @param rows the collection of objects that should be serialized into the CSV document
+   * @param clazz the class that is the type of the row data
+   * @param out the stream the CSV document is written to. It is not closed by this method.
+   * @param <T> the type of the row data
+   */
+  public static <T> void serializeToCsv(final Iterable<T> rows, final Class<T> clazz,
+      final OutputStream out) throws IOException {
+    try (SequenceWriter rowWriter = getWriter(clazz).writeValues(out)) {
+      for (T row : rows) {
+        rowWriter.write(row);
+      }
+    }
+  }
+
+  private static CsvMapper createMapper() {
     CsvMapper mapper = new CsvMapper();
     mapper.disable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY);
-    // Jackson CSV uses the property names for the header row by default. To have a custom header
-    // for one or more columns, see
-    // https://stackoverflow.com/questions/40221223/jackson-dataformat-csv-are-custom-column-names-possible
-    CsvSchema schema = mapper.schemaFor(clazz).withHeader();
-    return mapper.writer(schema).writeValueAsString(rows);
-    // See CsvWriterTest for examples of Jackson CSV behavior
+    // Leave it to the caller to close the stream they gave us
+    mapper.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+    return mapper;
+  }
+
+  /*
+   * Get the writer for the given row class, building its schema on first use.
+   */
+  private static ObjectWriter getWriter(final Class<?> clazz) {
+    return WRITERS.computeIfAbsent(clazz, c -> {
+      // Jackson CSV uses the property names for the header row by default. To have a custom header
+      // for one or more columns, see
+      // https://stackoverflow.com/questions/40221223/jackson-dataformat-csv-are-custom-column-names-possible
+      CsvSchema schema = MAPPER.schemaFor(c).withHeader();
+      return MAPPER.writer(schema);
+    });
   }
 }
@@ -2,7 +2,6 @@ package org.galatea.starter.utils.http.converter;
 
 import java.io.IOException;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.Charsets;
 import org.galatea.starter.MvcConfig;
 import org.galatea.starter.domain.SettlementMission;
 import org.galatea.starter.entrypoint.messagecontracts.SettlementMissionList;
@@ -53,9 +52,9 @@ public class SettlementMissionCsvConverter
   protected void writeInternal(final SettlementMissionList settlementMissionList,
       final HttpOutputMessage outputMessage) throws IOException {
     log.info("Converting SettlementMissionList to CSV for HTTP response");
-    outputMessage.getBody().write(CsvSerializer.serializeToCsv(
-        settlementMissionList.getSettlementMissions(), SettlementMission.class)
-        .getBytes(Charsets.UTF_8));
+    // Stream the rows straight into the response rather than building the whole document first
+    CsvSerializer.serializeToCsv(settlementMissionList.getSettlementMissions(),
+        SettlementMission.class, outputMessage.getBody());
     log.info("Converted SettlementMissionList to CSV");
   }
 
@@ -20,11 +20,25 @@ import org.springframework.http.converter.AbstractHttpMessageConverter;
 public class SettlementMissionXlsxConverter
     extends AbstractHttpMessageConverter<SettlementMissionList> {
 
+  private final int rowAccessWindowSize;
+
   /**
-   * Construct a SettlementMissionXlsxConverter that supports an Excel MediaType.
+   * Construct a SettlementMissionXlsxConverter that supports an Excel MediaType and streams the
+   * spreadsheet using the default row window.
    */
   public SettlementMissionXlsxConverter() {
+    this(XlsxSerializer.DEFAULT_ROW_ACCESS_WINDOW);
+  }
+
+  /**
+   * Construct a SettlementMissionXlsxConverter that supports an Excel MediaType.
+   *
+   * @param rowAccessWindowSize the number of rows held in memory while the spreadsheet is being
+   *     written, or -1 to hold every row
+   */
+  public SettlementMissionXlsxConverter(final int rowAccessWindowSize) {
     super(MvcConfig.APPLICATION_EXCEL);
+    this.rowAccessWindowSize = rowAccessWindowSize;
   }
 
   @Override
@@ -44,8 +58,9 @@ public class SettlementMissionXlsxConverter
   protected void writeInternal(final SettlementMissionList settlementMissionList,
       final HttpOutputMessage outputMessage) throws IOException {
     log.info("Converting SettlementMissionList to XLSX for HTTP response");
-    outputMessage.getBody().write(XlsxSerializer.serializeToXlsx(
-        settlementMissionList.getSettlementMissions(), SettlementMission.class));
+    // Stream the spreadsheet into the response rather than building it up as a byte[] first
+    XlsxSerializer.serializeToXlsx(settlementMissionList.getSettlementMissions(),
+        SettlementMission.class, outputMessage.getBody(), rowAccessWindowSize);
     log.info("Converted SettlementMissionList to XLSX");
   }
 
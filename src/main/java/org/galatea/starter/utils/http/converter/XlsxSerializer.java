@@ -4,25 +4,46 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.reflect.FieldUtils;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 @Slf4j
 // See XlsxSerializerTest for example output
 public class XlsxSerializer {
 
+  /**
+   * Number of rows kept in memory by the streaming serializer before older rows are flushed to a
+   * temporary file.
+   */
+  public static final int DEFAULT_ROW_ACCESS_WINDOW = 100;
+
+  /*
+   * Column layout for each row class we've serialized so far. Working out the columns means walking
+   * the class hierarchy and reading annotations, so we only want to do that once per class.
+   */
+  private static final Map<Class<?>, List<Column>> COLUMNS = new ConcurrentHashMap<>();
+
   private XlsxSerializer() {}
 
   /**
@@ -41,14 +62,79 @@ public class XlsxSerializer {
     // XSSF is used for xlsx-format spreadsheets, HSSF is used for xls-format
     // SXSSF is the streaming version of XSSF, and is useful for working with large spreadsheets
     try (Workbook wb = new XSSFWorkbook()) {
-      Sheet sheet = wb.createSheet(clazz.getSimpleName());
-      List<Field> fieldsToSerialize = getFieldsToSerialize(clazz);
-      populateHeaderRow(sheet, getHeaderValues(fieldsToSerialize));
-      populateDataRows(sheet, fieldsToSerialize, rows);
+      populateWorkbook(wb, rows, clazz);
       return writeSpreadsheetToBytes(wb);
     }
   }
 
+  /**
+   * Serialize the given objects to an XLSX spreadsheet, writing the spreadsheet straight to the
+   * given stream.
+   *
+   * <p>Unlike {@link #serializeToXlsx(Iterable, Class)}, only the last rowAccessWindowSize rows are
+   * held in memory at any one time. Rows that fall out of that window are flushed to a temporary
+   * file, so the heap used does not grow with the number of rows being exported.
+   *
+   * @param rows the row data that the spreadsheet should hold
+   * @param clazz the class that is the type of the row data
+   * @param out the stream the spreadsheet is written to. It is not closed by this method.
+   * @param rowAccessWindowSize the number of rows to keep in memory, or -1 to keep every row
+   * @param <T> the type of the row data
+   */
+  public static <T> void serializeToXlsx(final Iterable<T> rows, final Class<T> clazz,
+      final OutputStream out, final int rowAccessWindowSize) throws IOException {
+    SXSSFWorkbook wb = new SXSSFWorkbook(rowAccessWindowSize);
+    // The flushed rows can be large, so gzip the temp files rather than filling up the disk
+    wb.setCompressTempFiles(true);
+    try {
+      populateWorkbook(wb, rows, clazz);
+      wb.write(out);
+    } finally {
+      // Closing an SXSSFWorkbook does not remove its temp files, so dispose of them explicitly
+      wb.dispose();
+      wb.close();
+    }
+  }
+
+  /*
+   * Create a sheet in the given workbook holding a header row and one data row per object.
+   */
+  private static <T> void populateWorkbook(final Workbook wb, final Iterable<T> rows,
+      final Class<T> clazz) {
+    Sheet sheet = wb.createSheet(clazz.getSimpleName());
+    List<Column> columns = getColumns(clazz);
+    populateHeaderRow(sheet, columns);
+    populateDataRows(sheet, columns, rows);
+  }
+
+  /*
+   * Get the columns that rows of the given class are serialized to, building them on first use.
+   */
+  static List<Column> getColumns(final Class<?> clazz) {
+    return COLUMNS.computeIfAbsent(clazz, XlsxSerializer::buildColumns);
+  }
+
+  private static List<Column> buildColumns(final Class<?> clazz) {
+    List<Field> fields = getFieldsToSerialize(clazz);
+    List<String> headers = getHeaderValues(fields);
+    List<Column> columns = new ArrayList<>(fields.size());
+    for (int i = 0; i < fields.size(); i++) {
+      columns.add(new Column(headers.get(i), getterFor(fields.get(i))));
+    }
+    return Collections.unmodifiableList(columns);
+  }
+
+  /*
+   * Get a method handle that reads the given field from an object. The handle is adapted to take
+   * and return Object so that it can be invoked without knowing the field's type at compile time.
+   */
+  @SneakyThrows(IllegalAccessException.class)
+  private static MethodHandle getterFor(final Field field) {
+    field.setAccessible(true);
+    return MethodHandles.lookup().unreflectGetter(field)
+        .asType(MethodType.methodType(Object.class, Object.class));
+  }
+
   /*
    * Get a list of all fields in the given class, including inherited and private fields, but
    * excluding any @JsonIgnore'd fields.
@@ -110,29 +196,28 @@ public class XlsxSerializer {
   }
 
   /*
-   * Populate the first row of the given sheet using the given list of header values.
+   * Populate the first row of the given sheet using the headers of the given columns.
    */
-  private static void populateHeaderRow(final Sheet sheet, final List<String> headers) {
+  private static void populateHeaderRow(final Sheet sheet, final List<Column> columns) {
     Row headerRow = sheet.createRow(0);
-    for (int col = 0; col < headers.size(); col++) {
+    for (int col = 0; col < columns.size(); col++) {
       Cell headerCell = headerRow.createCell(col);
-      headerCell.setCellValue(headers.get(col));
+      headerCell.setCellValue(columns.get(col).getHeader());
     }
   }
 
   /*
    * Populate the rows of the given sheet using the given row data.
    */
-  @SneakyThrows(IllegalAccessException.class)
-  private static <T> void populateDataRows(final Sheet sheet, final List<Field> fieldsToSerialize,
+  private static <T> void populateDataRows(final Sheet sheet, final List<Column> columns,
       final Iterable<T> rows) {
     int rowIndex = 1; // header is row 0
     for (T row : rows) {
       Row dataRow = sheet.createRow(rowIndex);
       rowIndex++;
-      for (int col = 0; col < fieldsToSerialize.size(); col++) {
+      for (int col = 0; col < columns.size(); col++) {
         Cell dataCell = dataRow.createCell(col);
-        Object cellObject = FieldUtils.readField(fieldsToSerialize.get(col), row, true);
+        Object cellObject = columns.get(col).read(row);
         dataCell.setCellValue(stringify(cellObject));
       }
     }
@@ -170,4 +255,26 @@ public class XlsxSerializer {
       throw e;
     }
   }
+
+  /*
+   * A single spreadsheet column: its header and how to read its value from a row object.
+   */
+  @RequiredArgsConstructor
+  static final class Column {
+
+    @NonNull
+    private final String header;
+
+    @NonNull
+    private final MethodHandle getter;
+
+    String getHeader() {
+      return header;
+    }
+
+    @SneakyThrows
+    Object read(final Object row) {
+      return (Object) getter.invokeExact(row);
+    }
+  }
 }
@@ -1,8 +1,10 @@
 package org.galatea.starter.utils.jms;
 
+import java.util.Optional;
 import java.util.function.BiConsumer;
 import javax.jms.JMSException;
 import javax.jms.Message;
+import javax.jms.MessageConsumer;
 import javax.jms.Session;
 import lombok.EqualsAndHashCode;
 import lombok.NonNull;
@@ -18,9 +20,29 @@ import org.springframework.jms.listener.DefaultMessageListenerContainer;
 @EqualsAndHashCode(callSuper = true)
 public class FuseMessageListenerContainer extends DefaultMessageListenerContainer {
 
+  // The consumer that delivered the message currently being handled on this thread
+  private static final ThreadLocal<MessageConsumer> CURRENT_CONSUMER = new ThreadLocal<>();
+
   @NonNull
   protected BiConsumer<Message, Exception> failedMessageConsumer;
 
+  /**
+   * Get the consumer that delivered the message currently being handled on this thread, if the
+   * message came from a FuseMessageListenerContainer.
+   *
+   * <p>Further messages received from this consumer while the listener runs belong to the same
+   * session as the delivered message, so they are acknowledged (or rolled back) along with it.
+   */
+  public static Optional<MessageConsumer> currentConsumer() {
+    return Optional.ofNullable(CURRENT_CONSUMER.get());
+  }
+
+  @Override
+  protected Message receiveMessage(final MessageConsumer consumer) throws JMSException {
+    CURRENT_CONSUMER.set(consumer);
+    return super.receiveMessage(consumer);
+  }
+
   @Override
   @SneakyThrows
   protected void invokeListener(final Session session, final Message message) {
@@ -35,6 +57,8 @@ public class FuseMessageListenerContainer extends DefaultMessageListenerContaine
       super.invokeListener(session, message);
     } catch (JMSException e) {
       failedMessageConsumer.accept(message, e);
+    } finally {
+      CURRENT_CONSUMER.remove();
     }
   }
 }
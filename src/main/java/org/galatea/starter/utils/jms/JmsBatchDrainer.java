@@ -0,0 +1,77 @@
+package org.galatea.starter.utils.jms;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Lets a JMS listener handle messages in batches. Once the listener has been handed a message, it
+ * can call {@link #drain()} to pull the messages queued up behind it off the same consumer.
+ *
+ * <p>The drained messages are received within the listener container's session, so when the
+ * session is transacted the whole batch is acknowledged when the listener returns, or rolled back
+ * if it throws.
+ */
+@RequiredArgsConstructor
+@Slf4j
+@ToString
+@EqualsAndHashCode
+public class JmsBatchDrainer {
+
+  /**
+   * The most messages in a batch, including the one the listener was handed. 1 turns batching off.
+   */
+  protected final int maxBatchSize;
+
+  /**
+   * The longest time to wait for the batch to fill up.
+   */
+  protected final long maxWaitMillis;
+
+  /**
+   * Returns true if listeners will be handed more than one message at a time.
+   */
+  public boolean isBatching() {
+    return maxBatchSize > 1;
+  }
+
+  /**
+   * Receive the messages waiting behind the one currently being handled, stopping once the batch
+   * is full or, after maxWaitMillis, once no more messages are immediately available. Must be
+   * called from the thread running the listener.
+   *
+   * @return the additional messages, not including the one the listener was handed
+   */
+  public List<Message> drain() throws JMSException {
+    Optional<MessageConsumer> consumer = FuseMessageListenerContainer.currentConsumer();
+    if (!isBatching() || !consumer.isPresent()) {
+      return Collections.emptyList();
+    }
+
+    List<Message> messages = new ArrayList<>();
+    long deadline = System.currentTimeMillis() + maxWaitMillis;
+    while (messages.size() < maxBatchSize - 1) {
+      long remainingMillis = deadline - System.currentTimeMillis();
+      // Once the wait is over, only take messages that are already waiting. Note that receive(0)
+      // would block forever rather than return straight away.
+      Message message = remainingMillis > 0
+          ? consumer.get().receive(remainingMillis)
+          : consumer.get().receiveNoWait();
+      if (message == null) {
+        break;
+      }
+      messages.add(message);
+    }
+
+    log.debug("Drained {} more message(s) for the batch", messages.size());
+    return messages;
+  }
+}
@@ -0,0 +1,122 @@
+package org.galatea.starter.utils.logging;
+
+import java.lang.reflect.Array;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpEntity;
+
+/**
+ * Formats values for logging without letting one big value swamp the log. Collections, maps and
+ * arrays are cut down to their first few elements, and everything is cut down to so many
+ * characters.
+ *
+ * <p>Only the elements that are logged are rendered. Anything else is rendered with its own
+ * toString before being cut down, so an object that holds a large collection is still rendered in
+ * full first.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public class LogFormat {
+
+  /**
+   * Format a value for logging.
+   *
+   * @param value the value to format. May be null. Iterables other than collections are iterated
+   *     through, so shouldn't be ones that can only be iterated once.
+   * @param maxElements the most elements of a collection, map or array to format
+   * @param maxLength the most characters to return
+   */
+  public static String abbreviate(final Object value, final int maxElements,
+      final int maxLength) {
+    StringBuilder builder = new StringBuilder();
+    append(builder, value, maxElements, maxLength);
+    return truncate(builder, maxLength);
+  }
+
+  private static void append(final StringBuilder builder, final Object value,
+      final int maxElements, final int maxLength) {
+    if (value instanceof Collection) {
+      Collection<?> collection = (Collection<?>) value;
+      appendElements(builder, collection.iterator(), collection.size(), maxElements, maxLength);
+    } else if (value instanceof Iterable && !(value instanceof Path)) {
+      // Repositories hand back Iterables. Counting what's left is cheap next to formatting it
+      Iterator<?> elements = ((Iterable<?>) value).iterator();
+      appendElements(builder, elements, -1, maxElements, maxLength);
+    } else if (value instanceof Map) {
+      Map<?, ?> map = (Map<?, ?>) value;
+      appendElements(builder, map.entrySet().iterator(), map.size(), maxElements, maxLength);
+    } else if (value != null && value.getClass().isArray()) {
+      int length = Array.getLength(value);
+      builder.append('[');
+      for (int i = 0; i < Math.min(length, maxElements); i++) {
+        if (i > 0) {
+          builder.append(", ");
+        }
+        append(builder, Array.get(value, i), maxElements, maxLength);
+      }
+      appendRemainder(builder, length, maxElements);
+    } else if (value instanceof Optional) {
+      Optional<?> optional = (Optional<?>) value;
+      builder.append("Optional[");
+      append(builder, optional.orElse(null), maxElements, maxLength);
+      builder.append(']');
+    } else if (value instanceof HttpEntity) {
+      // Mostly ResponseEntity, whose body is usually what's big
+      builder.append(value.getClass().getSimpleName()).append('[');
+      append(builder, ((HttpEntity<?>) value).getBody(), maxElements, maxLength);
+      builder.append(']');
+    } else {
+      builder.append(truncate(new StringBuilder(String.valueOf(value)), maxLength));
+    }
+  }
+
+  /*
+   * Append the first maxElements elements. A size of -1 means it isn't known, so the rest of the
+   * elements are counted.
+   */
+  private static void appendElements(final StringBuilder builder, final Iterator<?> elements,
+      final int size, final int maxElements, final int maxLength) {
+    builder.append('[');
+    int appended = 0;
+    for (; appended < maxElements && elements.hasNext(); appended++) {
+      if (appended > 0) {
+        builder.append(", ");
+      }
+      Object element = elements.next();
+      if (element instanceof Map.Entry) {
+        Map.Entry<?, ?> entry = (Map.Entry<?, ?>) element;
+        append(builder, entry.getKey(), maxElements, maxLength);
+        builder.append('=');
+        append(builder, entry.getValue(), maxElements, maxLength);
+      } else {
+        append(builder, element, maxElements, maxLength);
+      }
+    }
+    int total = size;
+    if (total < 0) {
+      for (total = appended; elements.hasNext(); total++) {
+        elements.next();
+      }
+    }
+    appendRemainder(builder, total, maxElements);
+  }
+
+  private static void appendRemainder(final StringBuilder builder, final int size,
+      final int maxElements) {
+    if (size > maxElements) {
+      builder.append(", ... ").append(size - maxElements).append(" more");
+    }
+    builder.append(']');
+  }
+
+  private static String truncate(final StringBuilder builder, final int maxLength) {
+    if (builder.length() <= maxLength) {
+      return builder.toString();
+    }
+    return builder.substring(0, maxLength) + "...";
+  }
+}
@@ -0,0 +1,50 @@
+package org.galatea.starter.utils.logging;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.TYPE;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import org.slf4j.event.Level;
+
+/**
+ * Logs calls to the public methods of a Spring bean: their arguments on the way in, and what they
+ * returned (or threw) on the way out. See {@link LoggedAspect}.
+ *
+ * <p>Calls are logged to the logger of the class the method is declared in, so call logging for a
+ * class can be turned on and off at runtime by changing that logger's level, e.g. through the
+ * loggers actuator endpoint over JMX. Nothing is formatted unless the level is enabled.
+ *
+ * <p>Put it on a class to log every public method, or on a method to override the class's settings
+ * for that method.
+ */
+@Documented
+@Inherited
+@Target({TYPE, METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Logged {
+
+  /**
+   * Returns the level calls are logged at on the way in.
+   */
+  Level enterLevel() default Level.DEBUG;
+
+  /**
+   * Returns the level calls are logged at on the way out.
+   */
+  Level exitLevel() default Level.DEBUG;
+
+  /**
+   * Returns the most elements of a collection, map or array argument or return value that are
+   * logged. The rest are only counted.
+   */
+  int maxElements() default 10;
+
+  /**
+   * Returns the most characters logged for each argument or return value.
+   */
+  int maxLength() default 500;
+}
@@ -0,0 +1,133 @@
+package org.galatea.starter.utils.logging;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.event.Level;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+
+/**
+ * Logs calls to beans annotated with {@link Logged}.
+ *
+ * <p>Everything that can be is worked out once per method and cached: the logger, the levels and
+ * the limits. Each call then costs a level check or two, and when neither level is enabled nothing
+ * more. Arguments and return values are only formatted when their level is enabled, and are cut
+ * down with {@link LogFormat} so that a call returning thousands of missions logs a handful of
+ * them.
+ */
+@Aspect
+public class LoggedAspect {
+
+  private final ConcurrentMap<Method, CallLogger> callLoggers = new ConcurrentHashMap<>();
+
+  /**
+   * Log a call to a public method of a {@link Logged} bean, or to a {@link Logged} method.
+   */
+  @Around("execution(public * *(..)) && (@within(org.galatea.starter.utils.logging.Logged)"
+      + " || @annotation(org.galatea.starter.utils.logging.Logged))")
+  public Object logCall(final ProceedingJoinPoint joinPoint) throws Throwable {
+    Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+    return callLoggers.computeIfAbsent(method, CallLogger::new).proceed(joinPoint);
+  }
+
+  /*
+   * Logs calls to one method.
+   */
+  static class CallLogger {
+
+    private final Logger logger;
+    private final String methodName;
+    private final Level enterLevel;
+    private final Level exitLevel;
+    private final int maxElements;
+    private final int maxLength;
+
+    CallLogger(final Method method) {
+      Logged logged = AnnotatedElementUtils.findMergedAnnotation(method, Logged.class);
+      if (logged == null) {
+        logged = AnnotatedElementUtils.findMergedAnnotation(method.getDeclaringClass(),
+            Logged.class);
+      }
+      if (logged == null) {
+        throw new IllegalStateException(method + " isn't in a class annotated with @Logged");
+      }
+      this.logger = LoggerFactory.getLogger(method.getDeclaringClass());
+      this.methodName = method.getName();
+      this.enterLevel = logged.enterLevel();
+      this.exitLevel = logged.exitLevel();
+      this.maxElements = logged.maxElements();
+      this.maxLength = logged.maxLength();
+    }
+
+    Object proceed(final ProceedingJoinPoint joinPoint) throws Throwable {
+      if (isEnabled(enterLevel)) {
+        log(enterLevel, "Entering {}({})", methodName, formatArgs(joinPoint.getArgs()));
+      }
+      if (!isEnabled(exitLevel)) {
+        return joinPoint.proceed();
+      }
+
+      Object result;
+      try {
+        result = joinPoint.proceed();
+      } catch (Throwable e) {
+        log(exitLevel, "Exiting {} by throwing {}", methodName, e.toString());
+        throw e;
+      }
+      log(exitLevel, "Exiting {} returning {}", methodName,
+          LogFormat.abbreviate(result, maxElements, maxLength));
+      return result;
+    }
+
+    private String formatArgs(final Object[] args) {
+      StringBuilder builder = new StringBuilder();
+      for (int i = 0; i < args.length; i++) {
+        if (i > 0) {
+          builder.append(", ");
+        }
+        builder.append(LogFormat.abbreviate(args[i], maxElements, maxLength));
+      }
+      return builder.toString();
+    }
+
+    private boolean isEnabled(final Level level) {
+      switch (level) {
+        case ERROR:
+          return logger.isErrorEnabled();
+        case WARN:
+          return logger.isWarnEnabled();
+        case INFO:
+          return logger.isInfoEnabled();
+        case DEBUG:
+          return logger.isDebugEnabled();
+        default:
+          return logger.isTraceEnabled();
+      }
+    }
+
+    private void log(final Level level, final String format, final Object... args) {
+      switch (level) {
+        case ERROR:
+          logger.error(format, args);
+          break;
+        case WARN:
+          logger.warn(format, args);
+          break;
+        case INFO:
+          logger.info(format, args);
+          break;
+        case DEBUG:
+          logger.debug(format, args);
+          break;
+        default:
+          logger.trace(format, args);
+      }
+    }
+  }
+}
@@ -0,0 +1,19 @@
+package org.galatea.starter.utils.resilience;
+
+/**
+ * Thrown when a call is turned away without being made, because its circuit breaker is open or
+ * its bulkhead is full.
+ */
+public class CallNotPermittedException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Exception indicating a call was turned away.
+   *
+   * @param message why the call was turned away
+   */
+  public CallNotPermittedException(final String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,183 @@
+package org.galatea.starter.utils.resilience;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Stops calls to a dependency that keeps failing, so that callers fail fast rather than each
+ * waiting on it, and so that it isn't sent more work while it recovers.
+ *
+ * <p>The outcomes of the last windowSize calls are kept. Once at least minimumCalls of them have
+ * been seen, and the share that failed reaches the failure rate threshold, the breaker opens and
+ * turns calls away. After openMillis it lets a single trial call through: if that succeeds the
+ * breaker closes again, and if it fails the breaker stays open for another openMillis.
+ *
+ * <p>Only errors that the given predicate accepts count as failures. Anything else (such as the
+ * dependency rejecting a bad request) shows that it is up, so counts as a success.
+ */
+@Slf4j
+public class CircuitBreaker {
+
+  /**
+   * Whether calls are let through.
+   */
+  public enum State {
+    /**
+     * Calls are let through and their outcomes recorded.
+     */
+    CLOSED,
+    /**
+     * A single trial call is let through to see whether the dependency has recovered.
+     */
+    HALF_OPEN,
+    /**
+     * Calls are turned away.
+     */
+    OPEN
+  }
+
+  private final String name;
+  private final int minimumCalls;
+  private final double failureRateThreshold;
+  private final long openNanos;
+  private final Predicate<Throwable> isFailure;
+
+  // Ring buffer of the most recent outcomes, true for a failure
+  private final boolean[] outcomes;
+  private int next;
+  private int recorded;
+  private int failures;
+
+  private volatile State state = State.CLOSED;
+  private long openedAt;
+  private boolean trialInFlight;
+  private volatile long trips;
+
+  /**
+   * Create a closed circuit breaker.
+   *
+   * @param name identifies the breaker in the logs
+   * @param windowSize how many of the most recent calls the failure rate is worked out over
+   * @param minimumCalls how many calls must have been seen before the breaker can open
+   * @param failureRateThreshold the share of calls, from 0 to 1, that must fail for it to open
+   * @param openMillis how long it stays open before letting a trial call through
+   * @param isFailure decides which errors count as failures
+   */
+  public CircuitBreaker(final String name, final int windowSize, final int minimumCalls,
+      final double failureRateThreshold, final long openMillis,
+      final Predicate<Throwable> isFailure) {
+    if (windowSize < 1 || minimumCalls < 1 || minimumCalls > windowSize) {
+      throw new IllegalArgumentException("Need 1 <= minimumCalls <= windowSize, got "
+          + minimumCalls + " and " + windowSize);
+    }
+    this.name = name;
+    this.outcomes = new boolean[windowSize];
+    this.minimumCalls = minimumCalls;
+    this.failureRateThreshold = failureRateThreshold;
+    this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+    this.isFailure = isFailure;
+  }
+
+  /**
+   * Ask to make a call. Every call that is permitted must be followed by a call to {@link
+   * #onSuccess} or {@link #onError}.
+   *
+   * @return true if the call may go ahead
+   */
+  public synchronized boolean tryAcquirePermission() {
+    if (state == State.OPEN) {
+      if (System.nanoTime() - openedAt < openNanos) {
+        return false;
+      }
+      log.info("Circuit breaker {} letting a trial call through", name);
+      state = State.HALF_OPEN;
+      trialInFlight = false;
+    }
+    if (state == State.HALF_OPEN) {
+      if (trialInFlight) {
+        return false;
+      }
+      trialInFlight = true;
+    }
+    return true;
+  }
+
+  /**
+   * Record that a permitted call succeeded.
+   */
+  public synchronized void onSuccess() {
+    if (state == State.HALF_OPEN) {
+      log.info("Circuit breaker {} closed after a successful trial call", name);
+      reset();
+      state = State.CLOSED;
+    } else if (state == State.CLOSED) {
+      record(false);
+    }
+  }
+
+  /**
+   * Record that a permitted call failed with the given error.
+   */
+  public synchronized void onError(final Throwable error) {
+    if (!isFailure(error)) {
+      onSuccess();
+    } else if (state == State.HALF_OPEN) {
+      log.warn("Circuit breaker {} trial call failed, staying open", name);
+      open();
+    } else if (state == State.CLOSED) {
+      record(true);
+      if (recorded >= minimumCalls && failures >= failureRateThreshold * recorded) {
+        log.warn("Circuit breaker {} opened after {} of the last {} calls failed", name, failures,
+            recorded);
+        trips++;
+        open();
+      }
+    }
+  }
+
+  /**
+   * Returns true if the given error counts as a failure of the dependency.
+   */
+  public boolean isFailure(final Throwable error) {
+    return isFailure.test(error);
+  }
+
+  /**
+   * Returns whether calls are currently let through.
+   */
+  public State getState() {
+    return state;
+  }
+
+  /**
+   * Returns the number of times the breaker has opened because of failing calls.
+   */
+  public long getTrips() {
+    return trips;
+  }
+
+  private void record(final boolean failure) {
+    if (recorded == outcomes.length) {
+      failures -= outcomes[next] ? 1 : 0;
+    } else {
+      recorded++;
+    }
+    outcomes[next] = failure;
+    failures += failure ? 1 : 0;
+    next = (next + 1) % outcomes.length;
+  }
+
+  private void open() {
+    reset();
+    state = State.OPEN;
+    openedAt = System.nanoTime();
+  }
+
+  private void reset() {
+    next = 0;
+    recorded = 0;
+    failures = 0;
+    trialInFlight = false;
+  }
+}
@@ -0,0 +1,47 @@
+package org.galatea.starter.utils.resilience;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the latencies of the most recent calls, so that percentiles of them can be worked out.
+ */
+class LatencyWindow {
+
+  private final long[] latencies;
+  private int next;
+  private int recorded;
+
+  LatencyWindow(final int size) {
+    this.latencies = new long[size];
+  }
+
+  /**
+   * Record how long a call took.
+   */
+  synchronized void record(final long latencyMillis) {
+    latencies[next] = latencyMillis;
+    next = (next + 1) % latencies.length;
+    recorded = Math.min(recorded + 1, latencies.length);
+  }
+
+  /**
+   * Work out the given percentile of the recorded latencies.
+   *
+   * @param percentile between 0 and 1
+   * @param minimumSamples how many latencies must have been recorded for the percentile to mean
+   *     anything
+   * @return the percentile in milliseconds, or -1 if fewer than minimumSamples have been recorded
+   */
+  long percentile(final double percentile, final int minimumSamples) {
+    long[] sorted;
+    synchronized (this) {
+      if (recorded < minimumSamples || recorded == 0) {
+        return -1;
+      }
+      sorted = Arrays.copyOf(latencies, recorded);
+    }
+    Arrays.sort(sorted);
+    int index = (int) Math.ceil(percentile * sorted.length) - 1;
+    return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+  }
+}
@@ -0,0 +1,348 @@
+package org.galatea.starter.utils.resilience;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.galatea.starter.utils.resilience.CircuitBreaker.State;
+
+/**
+ * Guards the calls made to one endpoint of a dependency, so that the dependency slowing down or
+ * failing can't take the rest of the application down with it.
+ *
+ * <ul>
+ *   <li>A bulkhead caps how many calls can be in flight at once. Calls beyond that are turned away
+ *   straight away rather than tying up yet more threads waiting on a slow dependency.</li>
+ *   <li>A {@link CircuitBreaker} turns calls away while the endpoint keeps failing.</li>
+ *   <li>If a hedge executor is given, a call that has taken longer than the 95th percentile of
+ *   recent calls is sent a second time, and whichever answers first is used. This cuts the tail
+ *   latency caused by the odd slow request, at the cost of some extra requests.</li>
+ *   <li>Callers can give a fallback, such as the last known good data, to be served when the call
+ *   fails or is turned away.</li>
+ * </ul>
+ *
+ * <p>Trips, rejections, hedges and fallbacks are published as metrics tagged with the policy's
+ * name, under resilience.*.
+ */
+@Slf4j
+public class ResiliencePolicy implements MeterBinder {
+
+  /**
+   * Calls that take longer than this percentile of recent calls are hedged.
+   */
+  public static final double HEDGE_PERCENTILE = 0.95;
+
+  // How many recent calls the hedging threshold is worked out from, and how many are needed first
+  private static final int LATENCY_WINDOW = 100;
+  private static final int MINIMUM_HEDGE_SAMPLES = 20;
+
+  @Getter
+  private final String name;
+
+  private final int maxConcurrentCalls;
+
+  private final Semaphore bulkhead;
+
+  @Getter
+  private final CircuitBreaker circuitBreaker;
+
+  private final Executor hedgeExecutor;
+
+  private final LatencyWindow latencies = new LatencyWindow(LATENCY_WINDOW);
+
+  private final LongAdder bulkheadRejections = new LongAdder();
+  private final LongAdder circuitRejections = new LongAdder();
+  private final LongAdder hedges = new LongAdder();
+  private final LongAdder fallbacks = new LongAdder();
+
+  /**
+   * Create a policy.
+   *
+   * @param name identifies the policy in logs and metrics
+   * @param maxConcurrentCalls the most calls that can be in flight at once
+   * @param circuitBreaker the breaker for the endpoint
+   * @param hedgeExecutor runs hedged calls, or null to never hedge
+   */
+  public ResiliencePolicy(@NonNull final String name, final int maxConcurrentCalls,
+      @NonNull final CircuitBreaker circuitBreaker, final Executor hedgeExecutor) {
+    this.name = name;
+    this.maxConcurrentCalls = maxConcurrentCalls;
+    this.bulkhead = new Semaphore(maxConcurrentCalls);
+    this.circuitBreaker = circuitBreaker;
+    this.hedgeExecutor = hedgeExecutor;
+  }
+
+  /**
+   * Make a call on the calling thread, unless it's to be hedged.
+   *
+   * @param call makes the call
+   * @return the result of the call
+   * @throws CallNotPermittedException if the call was turned away
+   */
+  public <T> T call(final Supplier<T> call) {
+    acquire();
+    long start = System.nanoTime();
+    try {
+      long hedgeDelay = hedgeDelayMillis();
+      T result = hedgeDelay < 0
+          ? call.get()
+          : join(hedged(() -> CompletableFuture.supplyAsync(call, hedgeExecutor), hedgeDelay));
+      onSuccess(start);
+      return result;
+    } catch (RuntimeException | Error e) {
+      circuitBreaker.onError(e);
+      throw e;
+    } finally {
+      bulkhead.release();
+    }
+  }
+
+  /**
+   * Make a call, serving the fallback instead if the call fails or is turned away. Errors that the
+   * circuit breaker doesn't count as failures, such as bad requests, are thrown as they are.
+   *
+   * @param call makes the call
+   * @param fallback supplies the result to use instead, or null if it has nothing to offer, in
+   *     which case the call's error is thrown
+   * @return the result of the call or the fallback
+   */
+  public <T> T call(final Supplier<T> call, final Supplier<T> fallback) {
+    try {
+      return call(call);
+    } catch (RuntimeException e) {
+      return recover(e, fallback);
+    }
+  }
+
+  /**
+   * Serve the fallback for a call made through this policy that has failed. Useful where only part
+   * of what the caller does is made through the policy.
+   *
+   * @param failure what the call failed with
+   * @param fallback supplies the result to use instead, or null if it has nothing to offer
+   * @return the fallback's result
+   * @throws RuntimeException the failure, if it isn't covered by the fallback or the fallback has
+   *     nothing to offer
+   */
+  public <T> T recover(final RuntimeException failure, final Supplier<T> fallback) {
+    T result = fallback(failure, fallback);
+    if (result == null) {
+      throw failure;
+    }
+    return result;
+  }
+
+  /**
+   * Make a call without blocking the calling thread.
+   *
+   * @param call starts the call. Should return quickly, leaving the work to the future.
+   * @return a future that completes with the result of the call, or fails with a
+   *     CallNotPermittedException if the call was turned away
+   */
+  public <T> CompletableFuture<T> callAsync(final Supplier<CompletableFuture<T>> call) {
+    try {
+      acquire();
+    } catch (CallNotPermittedException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    long start = System.nanoTime();
+    CompletableFuture<T> result;
+    try {
+      long hedgeDelay = hedgeDelayMillis();
+      result = hedgeDelay < 0 ? call.get() : hedged(call, hedgeDelay);
+    } catch (RuntimeException | Error e) {
+      result = CompletableFuture.failedFuture(e);
+    }
+    return result.whenComplete((value, failure) -> {
+      bulkhead.release();
+      if (failure == null) {
+        onSuccess(start);
+      } else {
+        circuitBreaker.onError(unwrap(failure));
+      }
+    });
+  }
+
+  /**
+   * Make a call without blocking the calling thread, serving the fallback instead if the call
+   * fails or is turned away. See {@link #call(Supplier, Supplier)}.
+   *
+   * @param call starts the call. Should return quickly, leaving the work to the future.
+   * @param fallback supplies the result to use instead, or null if it has nothing to offer
+   * @return a future that completes with the result of the call or the fallback
+   */
+  public <T> CompletableFuture<T> callAsync(final Supplier<CompletableFuture<T>> call,
+      final Supplier<T> fallback) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    callAsync(call).whenComplete((value, failure) -> {
+      if (failure == null) {
+        result.complete(value);
+        return;
+      }
+      Throwable cause = unwrap(failure);
+      try {
+        T fallbackResult = fallback(cause, fallback);
+        if (fallbackResult == null) {
+          result.completeExceptionally(cause);
+        } else {
+          result.complete(fallbackResult);
+        }
+      } catch (RuntimeException | Error e) {
+        result.completeExceptionally(e);
+      }
+    });
+    return result;
+  }
+
+  @Override
+  public void bindTo(final MeterRegistry registry) {
+    FunctionCounter.builder("resilience.calls.rejected", bulkheadRejections, LongAdder::sum)
+        .description("Calls turned away because too many were already in flight")
+        .tags("policy", name, "reason", "bulkhead")
+        .register(registry);
+    FunctionCounter.builder("resilience.calls.rejected", circuitRejections, LongAdder::sum)
+        .description("Calls turned away because the circuit breaker was open")
+        .tags("policy", name, "reason", "circuit")
+        .register(registry);
+    FunctionCounter.builder("resilience.circuit.trips", circuitBreaker, CircuitBreaker::getTrips)
+        .description("Times the circuit breaker opened because calls were failing")
+        .tags("policy", name)
+        .register(registry);
+    Gauge.builder("resilience.circuit.state", circuitBreaker, cb -> cb.getState().ordinal())
+        .description("0 if the circuit breaker is closed, 1 if half open and 2 if open")
+        .tags("policy", name)
+        .register(registry);
+    Gauge.builder("resilience.bulkhead.available", bulkhead, Semaphore::availablePermits)
+        .description("Calls that can be made before the bulkhead is full, out of "
+            + maxConcurrentCalls)
+        .tags("policy", name)
+        .register(registry);
+    FunctionCounter.builder("resilience.hedges", hedges, LongAdder::sum)
+        .description("Slow calls that were sent a second time")
+        .tags("policy", name)
+        .register(registry);
+    Gauge.builder("resilience.hedge.threshold", latencies,
+        window -> window.percentile(HEDGE_PERCENTILE, MINIMUM_HEDGE_SAMPLES))
+        .description("How long a call can take before it is hedged, or -1 if not yet known")
+        .tags("policy", name)
+        .baseUnit("milliseconds")
+        .register(registry);
+    FunctionCounter.builder("resilience.fallbacks", fallbacks, LongAdder::sum)
+        .description("Failed or rejected calls that were served a fallback instead")
+        .tags("policy", name)
+        .register(registry);
+  }
+
+  /*
+   * Take a place in the bulkhead and get the circuit breaker's permission, or throw.
+   */
+  private void acquire() {
+    if (!bulkhead.tryAcquire()) {
+      bulkheadRejections.increment();
+      throw new CallNotPermittedException(
+          name + " already has " + maxConcurrentCalls + " calls in flight");
+    }
+    if (!circuitBreaker.tryAcquirePermission()) {
+      bulkhead.release();
+      circuitRejections.increment();
+      throw new CallNotPermittedException("Circuit breaker for " + name + " is open");
+    }
+  }
+
+  private void onSuccess(final long startNanos) {
+    latencies.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    circuitBreaker.onSuccess();
+  }
+
+  /*
+   * How long to wait for a call before hedging it, or -1 if it shouldn't be hedged.
+   */
+  private long hedgeDelayMillis() {
+    return hedgeExecutor == null
+        ? -1
+        : latencies.percentile(HEDGE_PERCENTILE, MINIMUM_HEDGE_SAMPLES);
+  }
+
+  /*
+   * Start the call, and start it again if it hasn't finished within the delay. Completes with the
+   * first result, or with the last error if every attempt fails.
+   */
+  private <T> CompletableFuture<T> hedged(final Supplier<CompletableFuture<T>> call,
+      final long delayMillis) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    AtomicInteger pending = new AtomicInteger(1);
+    BiConsumer<T, Throwable> onDone = (value, failure) -> {
+      if (failure == null) {
+        result.complete(value);
+      } else if (pending.decrementAndGet() == 0) {
+        result.completeExceptionally(unwrap(failure));
+      }
+    };
+    call.get().whenComplete(onDone);
+
+    CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS, hedgeExecutor)
+        .execute(() -> {
+          // No point adding load to a dependency that's already struggling
+          if (result.isDone() || circuitBreaker.getState() != State.CLOSED) {
+            return;
+          }
+          pending.incrementAndGet();
+          hedges.increment();
+          log.debug("{} call still running after {}ms, hedging it", name, delayMillis);
+          try {
+            call.get().whenComplete(onDone);
+          } catch (RuntimeException | Error e) {
+            onDone.accept(null, e);
+          }
+        });
+    return result;
+  }
+
+  /*
+   * Get the fallback for a failed call, if the failure is one that should be covered by it.
+   */
+  private <T> T fallback(final Throwable failure, final Supplier<T> fallback) {
+    if (!(failure instanceof CallNotPermittedException) && !circuitBreaker.isFailure(failure)) {
+      return null;
+    }
+    T result = fallback.get();
+    if (result != null) {
+      fallbacks.increment();
+      log.warn("{} call failed ({}), serving fallback", name, failure.toString());
+    }
+    return result;
+  }
+
+  private static <T> T join(final CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      Throwable cause = unwrap(e);
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw e;
+    }
+  }
+
+  private static Throwable unwrap(final Throwable failure) {
+    return failure instanceof CompletionException && failure.getCause() != null
+        ? failure.getCause()
+        : failure;
+  }
+}
@@ -3,14 +3,17 @@ package org.galatea.starter.utils.rest;
 import static org.galatea.starter.entrypoint.BaseRestController.EXTERNAL_REQUEST_ID;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
-import java.util.Random;
 import java.util.function.Predicate;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
 import lombok.EqualsAndHashCode;
 import lombok.NonNull;
 import lombok.SneakyThrows;
@@ -18,10 +21,12 @@ import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.MDC;
 import org.springframework.boot.actuate.trace.http.HttpExchangeTracer;
+import org.springframework.boot.actuate.trace.http.HttpTrace;
 import org.springframework.boot.actuate.trace.http.HttpTraceRepository;
 import org.springframework.boot.actuate.web.trace.servlet.HttpTraceFilter;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.servlet.HandlerMapping;
 import org.springframework.web.util.ContentCachingRequestWrapper;
-import org.springframework.web.util.ContentCachingResponseWrapper;
 import org.springframework.web.util.WebUtils;
 
 /**
@@ -29,6 +34,21 @@ import org.springframework.web.util.WebUtils;
  * capture some additional timing data as well The filter also adds these audit fields as headers to
  * the response.
  *
+ * <p>Request and response payloads are only captured when debug logging is on, and then only for
+ * a sample of requests, only if they're text, and only up to a limit; see {@link
+ * PayloadCapturePolicy}. The response is always passed straight through to the client rather than
+ * being buffered until the request is done, so tracing costs about the same however big the
+ * payload is.
+ *
+ * <p>How long each traced request takes is recorded, to the nanosecond, in a histogram for the
+ * route it was mapped to; see {@link RouteLatencyRecorder}. An async request is timed until its
+ * response is complete, not just until its handler returns.
+ *
+ * <p>Only a sample of requests are traced to the trace repository; see {@link TraceSampler}. The
+ * rest skip actuator's tracing altogether, unless they fail (throw, or send a 5xx status) and the
+ * sampler says to trace failures anyway, in which case they're traced once they're done. Every
+ * request still gets its audit headers and latency recorded.
+ *
  * @author rbasu
  */
 @ToString
@@ -38,22 +58,49 @@ public class FuseHttpTraceFilter extends HttpTraceFilter {
 
   private static final String INTERNAL_REQUEST_ID = "internal-request-id";
 
-  private static final Random QUERY_ID_GENERATOR = new Random();
-
   @NonNull
   protected final Predicate<String> pathsToSkip;
 
+  @NonNull
+  protected final IRequestIdGenerator requestIdGenerator;
+
+  @NonNull
+  protected final PayloadCapturePolicy payloadCapturePolicy;
+
+  @NonNull
+  protected final RouteLatencyRecorder latencyRecorder;
+
+  @NonNull
+  protected final TraceSampler traceSampler;
+
+  // The superclass keeps these to itself, but they're needed to trace failed requests that
+  // weren't sampled
+  private final HttpTraceRepository repository;
+  private final HttpExchangeTracer tracer;
+
   /**
    * Sadly we have to write our own constructor since lombok can't call super with args.
    *
    * @param repository the repository where we store our trace
    * @param pathsToSkip a predicate that will return try if we want to a skip a certain url
    *     path
+   * @param requestIdGenerator generates the internal id given to each request
+   * @param payloadCapturePolicy decides which request and response payloads are logged
+   * @param latencyRecorder records how long each traced request takes
+   * @param traceSampler decides which requests are traced to the repository
    */
   public FuseHttpTraceFilter(final HttpTraceRepository repository, final HttpExchangeTracer tracer,
-      final Predicate<String> pathsToSkip) {
+      final Predicate<String> pathsToSkip, final IRequestIdGenerator requestIdGenerator,
+      final PayloadCapturePolicy payloadCapturePolicy,
+      final RouteLatencyRecorder latencyRecorder, final TraceSampler traceSampler) {
     super(repository, tracer);
+    this.repository = repository;
+    this.tracer = tracer;
     this.pathsToSkip = pathsToSkip;
+    this.requestIdGenerator = requestIdGenerator;
+    this.payloadCapturePolicy = payloadCapturePolicy;
+    this.latencyRecorder = latencyRecorder;
+    this.traceSampler = traceSampler;
   }
 
   @Override
@@ -62,9 +109,7 @@ public class FuseHttpTraceFilter extends HttpTraceFilter {
       throws ServletException, IOException {
 
     // generate the internal request Id
-    // we want positive numbers only, so use nextInt(upperBound)
-    String internallyGeneratedId =
-        Integer.toString(QUERY_ID_GENERATOR.nextInt(Integer.MAX_VALUE));
+    String internallyGeneratedId = requestIdGenerator.nextId();
 
     log.debug("Created internal request id: {}", internallyGeneratedId);
 
@@ -79,37 +124,138 @@ public class FuseHttpTraceFilter extends HttpTraceFilter {
       return;
     }
 
-    boolean isFirstRequest = !isAsyncDispatch(request);
-    HttpServletRequest requestToUse = request;
-    HttpServletResponse responseToUse = response;
+    long startNanos = System.nanoTime();
+    Instant requestReceivedTime = Instant.now();
+    boolean capturePayloads = log.isDebugEnabled() && payloadCapturePolicy.sample();
+    int maxCaptureBytes = capturePayloads ? payloadCapturePolicy.getMaxBytes() : 0;
 
-    // We need to do this for the request and response since you can only read the stream that holds
-    // the payload once
-    if (isFirstRequest && !(request instanceof ContentCachingRequestWrapper)) {
-      requestToUse = new ContentCachingRequestWrapper(request);
-    }
-    if (isFirstRequest && !(response instanceof ContentCachingRequestWrapper)) {
-      responseToUse = new ContentCachingResponseWrapper(response);
+    // The request body can only be read once, so keep a copy of it as it's read
+    HttpServletRequest requestToUse = request;
+    if (capturePayloads && PayloadCapturePolicy.isCapturable(request.getContentType())
+        && !(request instanceof ContentCachingRequestWrapper)) {
+      requestToUse = new ContentCachingRequestWrapper(request, maxCaptureBytes);
     }
+    // Audit headers have to be added before the response body starts being written
+    HttpServletResponse responseToUse = new PayloadCaptureResponseWrapper(response,
+        maxCaptureBytes, () -> addAuditHeaders(requestReceivedTime.toString(), response));
 
-    doFilterInternalHelper(requestToUse, responseToUse, filterChain, Instant.now());
+    doFilterInternalHelper(requestToUse, responseToUse, filterChain, requestReceivedTime,
+        startNanos, traceSampler.sample(request.getRequestURI()));
   }
 
   @SneakyThrows
   // what's this method responsible for?
   protected void doFilterInternalHelper(final HttpServletRequest request,
       final HttpServletResponse response, final FilterChain filterChain,
-      final Instant requestReceivedTime) {
+      final Instant requestReceivedTime, final long startNanos, final boolean sampled) {
 
     try {
-      super.doFilterInternal(request, response, filterChain);
+      if (sampled) {
+        super.doFilterInternal(request, response, filterChain);
+      } else if (traceSampler.isAlwaysTraceErrors()) {
+        doFilterTracingFailures(request, response, filterChain);
+      } else {
+        filterChain.doFilter(request, response);
+      }
     } finally {
-      addAuditHeaders(requestReceivedTime.toString(), response);
-      updateResponse(response);
+      recordLatency(request, response, startNanos);
+      PayloadCaptureResponseWrapper responseWrapper =
+          WebUtils.getNativeResponse(response, PayloadCaptureResponseWrapper.class);
+      if (responseWrapper != null) {
+        // Adds the audit headers if the response hasn't been committed yet. For an async request
+        // the elapsed time is only the time taken to start handling it.
+        responseWrapper.runBeforeCommit();
+        // The wrapper's writer buffers what's written to it, and the container doesn't know to
+        // flush it. An async request can be written to until it's complete, so flush it then.
+        whenComplete(request, () -> finishPayloads(request, responseWrapper));
+      }
       MDC.clear();
     }
   }
 
+  /**
+   * Handles a request that wasn't sampled, tracing it only if it fails. Its trace is made once
+   * it's done, so the trace's timestamp is when it finished; how long it took is in its latency
+   * histogram.
+   */
+  private void doFilterTracingFailures(final HttpServletRequest request,
+      final HttpServletResponse response, final FilterChain filterChain)
+      throws ServletException, IOException {
+    boolean threw = true;
+    try {
+      filterChain.doFilter(request, response);
+      threw = false;
+    } finally {
+      if (threw) {
+        trace(request, response, HttpStatus.INTERNAL_SERVER_ERROR.value());
+      } else {
+        whenComplete(request, () -> {
+          if (response.getStatus() >= HttpStatus.INTERNAL_SERVER_ERROR.value()) {
+            trace(request, response, response.getStatus());
+          }
+        });
+      }
+    }
+  }
+
+  private void trace(final HttpServletRequest request, final HttpServletResponse response,
+      final int status) {
+    HttpTrace trace = tracer.receivedRequest(new ServletTraceableRequest(request));
+    tracer.sendingResponse(trace, new ServletTraceableResponse(response, status),
+        request::getUserPrincipal, () -> {
+          HttpSession session = request.getSession(false);
+          return session == null ? null : session.getId();
+        });
+    repository.add(trace);
+  }
+
+  /**
+   * Records how long the request took against the route it was mapped to.
+   */
+  private void recordLatency(final HttpServletRequest request,
+      final HttpServletResponse response, final long startNanos) {
+    whenComplete(request, () -> latencyRecorder.record(request.getMethod(), route(request),
+        response.getStatus(), System.nanoTime() - startNanos));
+  }
+
+  /**
+   * Runs the action now if the request is done, or once the async response is complete if the
+   * request went async.
+   */
+  private static void whenComplete(final HttpServletRequest request, final Runnable action) {
+    if (!request.isAsyncStarted()) {
+      action.run();
+      return;
+    }
+    request.getAsyncContext().addListener(new AsyncListener() {
+      @Override
+      public void onComplete(final AsyncEvent event) {
+        action.run();
+      }
+
+      @Override
+      public void onTimeout(final AsyncEvent event) {
+        // onComplete follows, once the timeout response has been sent
+      }
+
+      @Override
+      public void onError(final AsyncEvent event) {
+        // onComplete follows, once the error response has been sent
+      }
+
+      @Override
+      public void onStartAsync(final AsyncEvent event) {
+        // Listeners are dropped when async processing is restarted, so stay registered
+        event.getAsyncContext().addListener(this);
+      }
+    });
+  }
+
+  private static String route(final HttpServletRequest request) {
+    Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+    return pattern == null ? null : pattern.toString();
+  }
+
   private void addAuditHeaders(final String requestReceivedTime,
       final HttpServletResponse response) {
     log.info("Attempting to add audit headers");
@@ -145,13 +291,32 @@ public class FuseHttpTraceFilter extends HttpTraceFilter {
   }
 
   /**
-   * Updates the response because we add headers *after* the filter has been applied. This way we
-   * ensure that any fields that were created during request handling (e.g. externalQueryId) will
-   * make it onto the response.
+   * Logs whatever was captured of the request and response payloads.
    */
-  private void updateResponse(final HttpServletResponse response) throws IOException {
-    ContentCachingResponseWrapper responseWrapper =
-        WebUtils.getNativeResponse(response, ContentCachingResponseWrapper.class);
-    responseWrapper.copyBodyToResponse();
+  /*
+   * Pass on whatever's left in the response's writer, then log the payloads.
+   */
+  @SneakyThrows
+  private void finishPayloads(final HttpServletRequest request,
+      final PayloadCaptureResponseWrapper response) {
+    response.flushWriter();
+    logPayloads(request, response);
+  }
+
+  private void logPayloads(final HttpServletRequest request,
+      final PayloadCaptureResponseWrapper response) throws IOException {
+    ContentCachingRequestWrapper requestWrapper =
+        WebUtils.getNativeRequest(request, ContentCachingRequestWrapper.class);
+    if (requestWrapper != null) {
+      String encoding = requestWrapper.getCharacterEncoding();
+      log.debug("Request payload ({} bytes): {}", request.getContentLengthLong(),
+          new String(requestWrapper.getContentAsByteArray(),
+              encoding == null ? StandardCharsets.UTF_8.name() : encoding));
+    }
+    // Only called once the response is complete, so this is all of the payload that was captured
+    String responsePayload = response.getCapturedPayloadAsString();
+    if (responsePayload != null) {
+      log.debug("Response payload ({} bytes): {}", response.getBytesWritten(), responsePayload);
+    }
   }
 }
@@ -0,0 +1,14 @@
+package org.galatea.starter.utils.rest;
+
+/**
+ * Generates the internal id given to each request handled by {@link FuseHttpTraceFilter}. It's
+ * called once for every request, from many threads at once, so implementations must be thread
+ * safe and shouldn't make threads wait on each other.
+ */
+public interface IRequestIdGenerator {
+
+  /**
+   * Generate a new request id.
+   */
+  String nextId();
+}
@@ -0,0 +1,86 @@
+package org.galatea.starter.utils.rest;
+
+import java.util.concurrent.ThreadLocalRandom;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+
+/**
+ * Decides which request and response payloads the trace filter captures, and how much of them.
+ *
+ * <p>Only text payloads (JSON, XML, CSV, NDJSON, forms...) are captured, and only their first
+ * maxBytes bytes. Binary payloads like XLSX exports and protobuf are never captured, since they're
+ * unreadable in a log anyway. Only a sample of requests have their payloads captured at all.
+ */
+@ToString
+@EqualsAndHashCode
+public class PayloadCapturePolicy {
+
+  /**
+   * Never capture payloads.
+   */
+  public static final PayloadCapturePolicy NONE = new PayloadCapturePolicy(0, 0);
+
+  /**
+   * The most bytes of each payload that are captured.
+   */
+  @Getter
+  private final int maxBytes;
+
+  private final double sampleRate;
+
+  /**
+   * Create a policy.
+   *
+   * @param maxBytes the most bytes of each payload to capture
+   * @param sampleRate the fraction of requests, from 0 to 1, to capture payloads for
+   */
+  public PayloadCapturePolicy(final int maxBytes, final double sampleRate) {
+    if (maxBytes < 0) {
+      throw new IllegalArgumentException("Max bytes can't be negative, got " + maxBytes);
+    }
+    if (sampleRate < 0 || sampleRate > 1) {
+      throw new IllegalArgumentException("Sample rate must be between 0 and 1, got " + sampleRate);
+    }
+    this.maxBytes = maxBytes;
+    this.sampleRate = sampleRate;
+  }
+
+  /**
+   * Decide whether to capture the payloads of a request.
+   */
+  public boolean sample() {
+    return maxBytes > 0
+        && (sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate);
+  }
+
+  /**
+   * Returns true if a payload of the given content type is text, and so worth capturing.
+   *
+   * @param contentType the content type of the payload. May be null if it isn't known.
+   */
+  public static boolean isCapturable(final String contentType) {
+    if (contentType == null) {
+      return false;
+    }
+    MediaType mediaType;
+    try {
+      mediaType = MediaType.parseMediaType(contentType);
+    } catch (InvalidMediaTypeException e) {
+      return false;
+    }
+
+    if ("text".equals(mediaType.getType())) {
+      return true;
+    }
+    if (!"application".equals(mediaType.getType())) {
+      return false;
+    }
+    String subtype = mediaType.getSubtype();
+    return "json".equals(subtype) || subtype.endsWith("+json")
+        || "xml".equals(subtype) || subtype.endsWith("+xml")
+        || "x-ndjson".equals(subtype) || "x-www-form-urlencoded".equals(subtype);
+  }
+}
@@ -0,0 +1,217 @@
+package org.galatea.starter.utils.rest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Passes the response body straight through to the client, keeping a copy of at most the first
+ * few bytes of it.
+ *
+ * <p>Unlike {@link org.springframework.web.util.ContentCachingResponseWrapper}, nothing is held
+ * back until the request finishes, so a large response (an XLSX export, say) isn't buffered in
+ * memory twice. That also means headers can't be added once the body has started to be written,
+ * so the wrapper runs a callback just before the response is committed, which is the last chance
+ * to add them.
+ */
+public class PayloadCaptureResponseWrapper extends HttpServletResponseWrapper {
+
+  private final int maxCaptureBytes;
+
+  private final Runnable beforeCommit;
+
+  private boolean beforeCommitRun;
+
+  private ServletOutputStream outputStream;
+
+  private PrintWriter writer;
+
+  private ByteArrayOutputStream captured;
+
+  private long bytesWritten;
+
+  /**
+   * Create a wrapper.
+   *
+   * @param response the response to wrap
+   * @param maxCaptureBytes the most bytes of the body to keep a copy of. The body is only copied
+   *     if it's text; see {@link PayloadCapturePolicy#isCapturable}. Zero to copy nothing.
+   * @param beforeCommit run once, just before the response is committed
+   */
+  public PayloadCaptureResponseWrapper(final HttpServletResponse response,
+      final int maxCaptureBytes, final Runnable beforeCommit) {
+    super(response);
+    this.maxCaptureBytes = maxCaptureBytes;
+    this.beforeCommit = beforeCommit;
+  }
+
+  /**
+   * Run the before-commit callback, unless it's already been run. Call this once the request has
+   * been handled, since a response with no body may never be committed until then.
+   */
+  public void runBeforeCommit() {
+    if (!beforeCommitRun) {
+      beforeCommitRun = true;
+      beforeCommit.run();
+    }
+  }
+
+  /**
+   * Pass on anything still buffered in the writer, if one was used. The container only knows to
+   * flush its own writer when the request finishes, not this one.
+   */
+  public void flushWriter() {
+    if (writer != null) {
+      writer.flush();
+    }
+  }
+
+  @Override
+  public ServletOutputStream getOutputStream() throws IOException {
+    if (writer != null) {
+      throw new IllegalStateException("getWriter() has already been called on this response");
+    }
+    return outputStream();
+  }
+
+  @Override
+  public PrintWriter getWriter() throws IOException {
+    if (writer == null) {
+      if (outputStream != null) {
+        throw new IllegalStateException(
+            "getOutputStream() has already been called on this response");
+      }
+      writer = new PrintWriter(new OutputStreamWriter(outputStream(), getCharacterEncoding()));
+    }
+    return writer;
+  }
+
+  @Override
+  public void flushBuffer() throws IOException {
+    runBeforeCommit();
+    if (writer != null) {
+      writer.flush();
+    }
+    super.flushBuffer();
+  }
+
+  @Override
+  public void sendError(final int sc) throws IOException {
+    runBeforeCommit();
+    super.sendError(sc);
+  }
+
+  @Override
+  public void sendError(final int sc, final String msg) throws IOException {
+    runBeforeCommit();
+    super.sendError(sc, msg);
+  }
+
+  @Override
+  public void sendRedirect(final String location) throws IOException {
+    runBeforeCommit();
+    super.sendRedirect(location);
+  }
+
+  /**
+   * Returns the copy of the start of the body, or null if the body wasn't copied.
+   */
+  public byte[] getCapturedPayload() {
+    return captured == null ? null : captured.toByteArray();
+  }
+
+  /**
+   * Returns the copy of the start of the body as a string, or null if the body wasn't copied.
+   */
+  public String getCapturedPayloadAsString() throws UnsupportedEncodingException {
+    return captured == null ? null : captured.toString(getCharacterEncoding());
+  }
+
+  /**
+   * Returns the number of bytes of the body written so far.
+   */
+  public long getBytesWritten() {
+    return bytesWritten;
+  }
+
+  private ServletOutputStream outputStream() throws IOException {
+    if (outputStream == null) {
+      // The content type has been set by now if it's going to be
+      if (maxCaptureBytes > 0 && PayloadCapturePolicy.isCapturable(getContentType())) {
+        captured = new ByteArrayOutputStream(Math.min(maxCaptureBytes, 1024));
+      }
+      outputStream = new CapturingOutputStream(super.getOutputStream());
+    }
+    return outputStream;
+  }
+
+  /*
+   * Writes through to the response, copying the start of what's written.
+   */
+  private class CapturingOutputStream extends ServletOutputStream {
+
+    private final ServletOutputStream delegate;
+
+    CapturingOutputStream(final ServletOutputStream delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+      runBeforeCommit();
+      delegate.write(b);
+      if (capture(1) > 0) {
+        captured.write(b);
+      }
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+      runBeforeCommit();
+      delegate.write(b, off, len);
+      int toCapture = capture(len);
+      if (toCapture > 0) {
+        captured.write(b, off, toCapture);
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      runBeforeCommit();
+      delegate.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      runBeforeCommit();
+      delegate.close();
+    }
+
+    @Override
+    public boolean isReady() {
+      return delegate.isReady();
+    }
+
+    @Override
+    public void setWriteListener(final WriteListener writeListener) {
+      delegate.setWriteListener(writeListener);
+    }
+
+    /*
+     * Count the bytes written, and return how many of them should be copied.
+     */
+    private int capture(final int len) {
+      bytesWritten += len;
+      if (captured == null) {
+        return 0;
+      }
+      return Math.min(len, maxCaptureBytes - captured.size());
+    }
+  }
+}
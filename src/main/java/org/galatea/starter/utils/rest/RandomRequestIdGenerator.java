@@ -0,0 +1,18 @@
+package org.galatea.starter.utils.rest;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generates random, positive request ids.
+ *
+ * <p>Each thread draws from its own generator, so unlike a shared java.util.Random there's no
+ * seed for threads to contend on. Ids are 63 bits, rather than the 31 of a positive int, so
+ * collisions are vanishingly unlikely rather than expected every few tens of thousands of requests.
+ */
+public class RandomRequestIdGenerator implements IRequestIdGenerator {
+
+  @Override
+  public String nextId() {
+    return Long.toString(ThreadLocalRandom.current().nextLong(Long.MAX_VALUE));
+  }
+}
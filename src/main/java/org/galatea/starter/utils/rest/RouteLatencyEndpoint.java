@@ -0,0 +1,25 @@
+package org.galatea.starter.utils.rest;
+
+import java.util.List;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.galatea.starter.utils.rest.RouteLatencyRecorder.RouteLatency;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+/**
+ * Actuator endpoint, at /actuator/latency, listing the p50/p99/p999 latency of every route over the
+ * last few minutes. The same numbers are under /actuator/metrics, but only one route at a time.
+ */
+@Endpoint(id = "latency")
+@RequiredArgsConstructor
+public class RouteLatencyEndpoint {
+
+  @NonNull
+  private final RouteLatencyRecorder recorder;
+
+  @ReadOperation
+  public List<RouteLatency> latencies() {
+    return recorder.snapshot();
+  }
+}
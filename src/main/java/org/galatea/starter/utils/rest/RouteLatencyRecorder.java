@@ -0,0 +1,156 @@
+package org.galatea.starter.utils.rest;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import lombok.NonNull;
+import lombok.Value;
+
+/**
+ * Records how long requests take, in a histogram per route. Routes are the URL patterns requests
+ * were mapped to (/settlementEngine/mission/{id}, say) rather than the URLs themselves, so there's
+ * one histogram per endpoint however many different ids are asked for.
+ *
+ * <p>The histograms are Micrometer timers, which are backed by HDR histograms, so recording a
+ * latency is cheap and keeps nanosecond resolution. They show up under
+ * /actuator/metrics/http.server.route.latency, tagged with the route, its group (the first part of
+ * its path: settlementEngine, iex, hal...), the method and the status class. The p50, p99 and p999
+ * are worked out over a rolling window, so they reflect recent requests rather than every request
+ * since startup.
+ */
+public class RouteLatencyRecorder {
+
+  public static final String METRIC_NAME = "http.server.route.latency";
+
+  /**
+   * The route given to requests that weren't mapped to a handler, such as 404s.
+   */
+  public static final String UNMAPPED_ROUTE = "UNMAPPED";
+
+  private static final double[] PERCENTILES = {0.5, 0.99, 0.999};
+
+  private final MeterRegistry registry;
+
+  private final Duration window;
+
+  private final int windowBuffers;
+
+  private final ConcurrentMap<TimerKey, Timer> timers = new ConcurrentHashMap<>();
+
+  /**
+   * Create a recorder.
+   *
+   * @param registry where the histograms are registered
+   * @param window how far back the percentiles look
+   * @param windowBuffers how many histograms the window is made up of. The window rolls forward
+   *     by window / windowBuffers at a time, so more buffers make for a smoother window
+   */
+  public RouteLatencyRecorder(@NonNull final MeterRegistry registry,
+      @NonNull final Duration window, final int windowBuffers) {
+    if (windowBuffers < 1) {
+      throw new IllegalArgumentException("Need at least one window buffer, got " + windowBuffers);
+    }
+    this.registry = registry;
+    this.window = window;
+    this.windowBuffers = windowBuffers;
+  }
+
+  /**
+   * Record how long a request took.
+   *
+   * @param method the request's HTTP method
+   * @param route the URL pattern the request was mapped to, or null if it wasn't mapped
+   * @param status the response's status code
+   * @param elapsedNanos how long the request took
+   */
+  public void record(final String method, final String route, final int status,
+      final long elapsedNanos) {
+    TimerKey key = new TimerKey(method, route == null ? UNMAPPED_ROUTE : route,
+        status / 100 + "xx");
+    timers.computeIfAbsent(key, this::register).record(elapsedNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Returns the latencies of every route requests have been made to, ordered by route.
+   */
+  public List<RouteLatency> snapshot() {
+    List<RouteLatency> latencies = new ArrayList<>(timers.size());
+    timers.forEach((key, timer) -> latencies.add(RouteLatency.of(key, timer.takeSnapshot())));
+    latencies.sort(Comparator.comparing(RouteLatency::getRoute)
+        .thenComparing(RouteLatency::getMethod).thenComparing(RouteLatency::getStatus));
+    return latencies;
+  }
+
+  private Timer register(final TimerKey key) {
+    return Timer.builder(METRIC_NAME)
+        .description("How long requests take, by route")
+        .tags(Tags.of("route", key.route, "group", group(key.route), "method", key.method,
+            "status", key.status))
+        .publishPercentiles(PERCENTILES)
+        // Keeps two significant digits, which p999 needs to mean anything
+        .percentilePrecision(2)
+        .distributionStatisticExpiry(window)
+        .distributionStatisticBufferLength(windowBuffers)
+        .register(registry);
+  }
+
+  /*
+   * The first part of the route's path, e.g. iex for /iex/historicalPrices.
+   */
+  static String group(final String route) {
+    int start = route.startsWith("/") ? 1 : 0;
+    int end = route.indexOf('/', start);
+    String group = end < 0 ? route.substring(start) : route.substring(start, end);
+    return group.isEmpty() ? "root" : group;
+  }
+
+  @Value
+  private static class TimerKey {
+
+    private String method;
+    private String route;
+    private String status;
+  }
+
+  /**
+   * The latencies of one route, in milliseconds. The percentiles cover the recorder's window and
+   * the max the most recent part of it, while the count and mean cover every request since
+   * startup.
+   */
+  @Value
+  public static class RouteLatency {
+
+    private String route;
+    private String method;
+    private String status;
+    private long count;
+    private double meanMillis;
+    private double p50Millis;
+    private double p99Millis;
+    private double p999Millis;
+    private double maxMillis;
+
+    private static RouteLatency of(final TimerKey key, final HistogramSnapshot snapshot) {
+      double[] percentiles = new double[PERCENTILES.length];
+      for (ValueAtPercentile value : snapshot.percentileValues()) {
+        for (int i = 0; i < PERCENTILES.length; i++) {
+          if (value.percentile() == PERCENTILES[i]) {
+            percentiles[i] = value.value(TimeUnit.MILLISECONDS);
+          }
+        }
+      }
+      return new RouteLatency(key.route, key.method, key.status, snapshot.count(),
+          snapshot.mean(TimeUnit.MILLISECONDS), percentiles[0], percentiles[1], percentiles[2],
+          snapshot.max(TimeUnit.MILLISECONDS));
+    }
+  }
+}
@@ -0,0 +1,58 @@
+package org.galatea.starter.utils.rest;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.servlet.http.HttpServletRequest;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.trace.http.TraceableRequest;
+import org.springframework.util.StringUtils;
+
+/**
+ * Lets a request be traced once it's been handled. Actuator's own adapter isn't public, and
+ * requests that weren't sampled only get traced after the fact, if they fail.
+ */
+@RequiredArgsConstructor
+class ServletTraceableRequest implements TraceableRequest {
+
+  @NonNull
+  private final HttpServletRequest request;
+
+  @Override
+  public String getMethod() {
+    return request.getMethod();
+  }
+
+  @Override
+  public URI getUri() {
+    StringBuffer url = request.getRequestURL();
+    String queryString = request.getQueryString();
+    if (StringUtils.hasText(queryString)) {
+      url.append('?').append(queryString);
+    }
+    try {
+      return new URI(url.toString());
+    } catch (URISyntaxException e) {
+      // The query string wasn't properly encoded; trace the request without it
+      return URI.create(request.getRequestURL().toString());
+    }
+  }
+
+  @Override
+  public Map<String, List<String>> getHeaders() {
+    Map<String, List<String>> headers = new LinkedHashMap<>();
+    for (String name : Collections.list(request.getHeaderNames())) {
+      headers.put(name, Collections.list(request.getHeaders(name)));
+    }
+    return headers;
+  }
+
+  @Override
+  public String getRemoteAddress() {
+    return request.getRemoteAddr();
+  }
+}
@@ -0,0 +1,40 @@
+package org.galatea.starter.utils.rest;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.servlet.http.HttpServletResponse;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.trace.http.TraceableResponse;
+
+/**
+ * Lets a response be traced once its request has been handled; see {@link
+ * ServletTraceableRequest}.
+ */
+@RequiredArgsConstructor
+class ServletTraceableResponse implements TraceableResponse {
+
+  @NonNull
+  private final HttpServletResponse response;
+
+  /**
+   * The status to trace, which isn't the response's own status if handling the request threw.
+   */
+  private final int status;
+
+  @Override
+  public int getStatus() {
+    return status;
+  }
+
+  @Override
+  public Map<String, List<String>> getHeaders() {
+    Map<String, List<String>> headers = new LinkedHashMap<>();
+    for (String name : response.getHeaderNames()) {
+      headers.put(name, new ArrayList<>(response.getHeaders(name)));
+    }
+    return headers;
+  }
+}
@@ -0,0 +1,73 @@
+package org.galatea.starter.utils.rest;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates time-ordered request ids in the style of Twitter's Snowflake: 41 bits of milliseconds
+ * since 2020-01-01, 10 bits identifying the node the id was generated on, and a 12 bit sequence
+ * number for ids generated in the same millisecond.
+ *
+ * <p>Ids from one node are strictly increasing and never repeat, and ids from nodes with different
+ * node ids never collide. Sorting ids sorts requests by when they arrived, which makes them handy
+ * for finding things in the logs.
+ *
+ * <p>Generating an id takes a single compare-and-set rather than a lock. If more than 4096 ids are
+ * needed in a millisecond, or the clock goes backwards, ids carry on from the last one rather than
+ * waiting for the clock to catch up.
+ */
+public class SnowflakeRequestIdGenerator implements IRequestIdGenerator {
+
+  /**
+   * The highest node id that fits in an id.
+   */
+  public static final int MAX_NODE_ID = 1023;
+
+  // 2020-01-01T00:00:00Z
+  private static final long EPOCH_MILLIS = 1577836800000L;
+
+  private static final int NODE_BITS = 10;
+  private static final int SEQUENCE_BITS = 12;
+  private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+  private final long node;
+
+  // The time and sequence of the last id, packed as they appear in the id. A sequence that
+  // overflows carries over into the time.
+  private final AtomicLong lastTimeAndSequence = new AtomicLong();
+
+  /**
+   * Create a generator for the given node.
+   *
+   * @param nodeId identifies this instance of the application, from 0 to {@link #MAX_NODE_ID}.
+   *     Each instance running at the same time needs its own.
+   */
+  public SnowflakeRequestIdGenerator(final int nodeId) {
+    if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+      throw new IllegalArgumentException(
+          "Node id must be between 0 and " + MAX_NODE_ID + ", got " + nodeId);
+    }
+    this.node = nodeId;
+  }
+
+  @Override
+  public String nextId() {
+    return Long.toString(nextLongId());
+  }
+
+  /**
+   * Generate a new request id as a number.
+   */
+  public long nextLongId() {
+    long now = System.currentTimeMillis() - EPOCH_MILLIS;
+    long last;
+    long next;
+    do {
+      last = lastTimeAndSequence.get();
+      next = now > (last >>> SEQUENCE_BITS) ? now << SEQUENCE_BITS : last + 1;
+    } while (!lastTimeAndSequence.compareAndSet(last, next));
+
+    long time = next >>> SEQUENCE_BITS;
+    return (time << (NODE_BITS + SEQUENCE_BITS)) | (node << SEQUENCE_BITS)
+        | (next & SEQUENCE_MASK);
+  }
+}
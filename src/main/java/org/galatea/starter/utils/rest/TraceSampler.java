@@ -0,0 +1,135 @@
+package org.galatea.starter.utils.rest;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+
+/**
+ * Decides which requests the trace filter traces.
+ *
+ * <p>Each request is traced with a probability, which can be overridden for the paths starting
+ * with a given prefix (the longest matching prefix wins). On top of that, the number of requests
+ * traced can be capped at so many a second, in which case requests beyond the cap aren't traced
+ * whatever their probability. The cap lets through bursts of up to a second's worth of traces, or
+ * of one trace if the cap is below one a second.
+ *
+ * <p>Whether requests that fail are always traced, sampled or not, is up to the filter; this only
+ * carries the setting.
+ */
+@ToString
+public class TraceSampler {
+
+  /**
+   * Trace every request.
+   */
+  public static final TraceSampler ALWAYS =
+      new TraceSampler(1, 0, Collections.emptyMap(), true);
+
+  private final double probability;
+
+  /**
+   * Probabilities by path prefix, longest prefix first.
+   */
+  private final Map<String, Double> routeProbabilities;
+
+  /**
+   * Whether requests that fail are traced even if they weren't sampled.
+   */
+  @Getter
+  private final boolean alwaysTraceErrors;
+
+  // The time, in nanos, the rate limiter will next let a trace through at an even rate. Zero
+  // intervalNanos means there's no limit
+  private final long intervalNanos;
+  private final long burstNanos;
+  private final AtomicLong nextTraceNanos = new AtomicLong(System.nanoTime());
+
+  /**
+   * Create a sampler.
+   *
+   * @param probability the fraction of requests, from 0 to 1, to trace
+   * @param maxPerSecond the most requests to trace a second, or 0 for no limit
+   * @param routeProbabilities the fraction of requests to trace for paths starting with each
+   *     prefix, overriding probability
+   * @param alwaysTraceErrors whether requests that fail are traced even if they weren't sampled
+   */
+  public TraceSampler(final double probability, final double maxPerSecond,
+      @NonNull final Map<String, Double> routeProbabilities, final boolean alwaysTraceErrors) {
+    checkProbability("Trace probability", probability);
+    routeProbabilities.forEach((route, routeProbability) ->
+        checkProbability("Trace probability for " + route, routeProbability));
+    if (maxPerSecond < 0) {
+      throw new IllegalArgumentException("Max traces a second can't be negative, got "
+          + maxPerSecond);
+    }
+
+    this.probability = probability;
+    this.routeProbabilities = new LinkedHashMap<>();
+    routeProbabilities.entrySet().stream()
+        .sorted(Comparator.comparing((Map.Entry<String, Double> entry) -> entry.getKey().length())
+            .reversed())
+        .forEach(entry -> this.routeProbabilities.put(entry.getKey(), entry.getValue()));
+    this.alwaysTraceErrors = alwaysTraceErrors;
+    this.intervalNanos =
+        maxPerSecond == 0 ? 0 : (long) (TimeUnit.SECONDS.toNanos(1) / maxPerSecond);
+    // Below one a second, a burst is a single trace
+    this.burstNanos = Math.max(0, TimeUnit.SECONDS.toNanos(1) - intervalNanos);
+  }
+
+  /**
+   * Decide whether to trace a request.
+   *
+   * @param path the request's path
+   */
+  public boolean sample(final String path) {
+    double routeProbability = probability(path);
+    if (routeProbability <= 0
+        || routeProbability < 1 && ThreadLocalRandom.current().nextDouble() >= routeProbability) {
+      return false;
+    }
+    return intervalNanos == 0 || acquire();
+  }
+
+  /**
+   * Returns the probability a request for the given path is traced with, before the rate limit.
+   */
+  double probability(final String path) {
+    for (Map.Entry<String, Double> route : routeProbabilities.entrySet()) {
+      if (path.startsWith(route.getKey())) {
+        return route.getValue();
+      }
+    }
+    return probability;
+  }
+
+  /*
+   * Let a trace through if that doesn't take the rate over the limit. Each trace pushes the next
+   * slot back by one interval; a trace is let through as long as the next slot is less than the
+   * burst allowance ahead of now.
+   */
+  private boolean acquire() {
+    long now = System.nanoTime();
+    while (true) {
+      long next = nextTraceNanos.get();
+      if (next - now > burstNanos) {
+        return false;
+      }
+      if (nextTraceNanos.compareAndSet(next, Math.max(next, now) + intervalNanos)) {
+        return true;
+      }
+    }
+  }
+
+  private static void checkProbability(final String name, final double probability) {
+    if (probability < 0 || probability > 1) {
+      throw new IllegalArgumentException(name + " must be between 0 and 1, got " + probability);
+    }
+  }
+}
@@ -0,0 +1,9 @@
+package org.galatea.starter;
+
+/**
+ * Tests that measure throughput rather than check behaviour. They're slow, so they're left out of
+ * the unit and integration test runs. Run them with mvn test -Pbenchmark.
+ */
+public interface BenchmarkTestCategory {
+
+}
@@ -7,7 +7,7 @@ import org.junit.runner.RunWith;
 
 @RunWith(WildcardPatternSuite.class)
 @SuiteClasses("**/*Test.class")
-@ExcludeCategories({IntegrationTestCategory.class})
+@ExcludeCategories({IntegrationTestCategory.class, BenchmarkTestCategory.class})
 public class UnitTestRunner {
 
 }
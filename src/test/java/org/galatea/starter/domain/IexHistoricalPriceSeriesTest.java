@@ -0,0 +1,183 @@
+package org.galatea.starter.domain;
+
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.galatea.starter.BenchmarkTestCategory;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Slf4j
+public class IexHistoricalPriceSeriesTest {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private static final List<IexHistoricalPrices> PRICES = Arrays.asList(
+      bar("AAPL", "2021-06-25", "116.57", "117.49", "116.22", "116.59", 46691331),
+      bar("AAPL", "2021-06-28", "116.60", "118.01", "116.4", "117.99", 51201000));
+
+  @Test
+  public void testFromAndGet() {
+    IexHistoricalPriceSeries series = IexHistoricalPriceSeries.from("ignored", PRICES);
+
+    assertEquals("AAPL", series.getSymbol());
+    assertEquals(2, series.size());
+    assertEquals(LocalDate.of(2021, 6, 28).toEpochDay(), series.getEpochDay(1));
+    assertEquals(117.99, series.getClose(1), 0);
+    assertEquals(116.6, series.getOpen(1), 0);
+    assertEquals(51201000, series.getVolume(1));
+    // Prices keep their scale, so 116.60 doesn't come back as 116.6
+    assertEquals(PRICES, series.asList());
+  }
+
+  @Test
+  public void testPricesThatDontFitALong() {
+    BigDecimal large = new BigDecimal("123456789012345678901234.5");
+    BigDecimal tiny = new BigDecimal("1E-200");
+    IexHistoricalPrices bar = IexHistoricalPrices.builder().symbol("AAPL").date("2021-06-25")
+        .open(large).close(tiny).volume(new BigDecimal("1000.5")).build();
+
+    IexHistoricalPriceSeries series = IexHistoricalPriceSeries.from("AAPL", Arrays.asList(bar));
+
+    assertEquals(bar, series.get(0));
+    assertEquals(large.doubleValue(), series.getOpen(0), 0);
+    assertEquals(1000, series.getVolume(0));
+  }
+
+  @Test
+  public void testSymbolInterned() {
+    IexHistoricalPriceSeries series = IexHistoricalPriceSeries.from(
+        new String("IBM".toCharArray()), new ArrayList<>());
+
+    assertSame("IBM", series.getSymbol());
+  }
+
+  @Test
+  public void testMissingValues() {
+    IexHistoricalPrices bar = IexHistoricalPrices.builder().symbol("AAPL").date("20210625")
+        .close(new BigDecimal("116.59")).build();
+
+    IexHistoricalPriceSeries series = IexHistoricalPriceSeries.from("AAPL", Arrays.asList(bar));
+
+    assertEquals(IexHistoricalPriceSeries.MISSING, series.getVolume(0));
+    assertNull(series.get(0).getOpen());
+    assertNull(series.get(0).getVolume());
+    assertEquals(Double.NaN, series.getOpen(0), 0);
+    // Intraday dates come back in the format IEX sent them in
+    assertEquals("20210625", series.get(0).getDate());
+    assertEquals(LocalDate.of(2021, 6, 25).toEpochDay(), series.getEpochDay(0));
+  }
+
+  @Test
+  public void testUnrecognizedDate() {
+    IexHistoricalPriceSeries series = IexHistoricalPriceSeries.from("AAPL", Arrays.asList(
+        IexHistoricalPrices.builder().date("June 25th").build(),
+        IexHistoricalPrices.builder().date("2021-6-28").build()));
+
+    assertEquals("June 25th", series.get(0).getDate());
+    assertEquals("2021-6-28", series.get(1).getDate());
+    assertEquals(IexHistoricalPriceSeries.MISSING, series.getEpochDay(0));
+  }
+
+  @Test
+  public void testJsonMatchesList() throws Exception {
+    IexHistoricalPriceSeries series = IexHistoricalPriceSeries.from("AAPL", PRICES);
+
+    // Compared as strings, so that 116.60 being written as 116.6 would fail
+    assertEquals(MAPPER.writeValueAsString(PRICES), MAPPER.writeValueAsString(series));
+  }
+
+  @Test
+  public void testJsonMatchesListWithMissingValues() throws Exception {
+    List<IexHistoricalPrices> prices = Arrays.asList(
+        IexHistoricalPrices.builder().symbol("AAPL").date("20210625")
+            .close(new BigDecimal("116.50")).build(),
+        IexHistoricalPrices.builder().symbol("AAPL").date("June 25th")
+            .open(new BigDecimal("1E-200")).build());
+    IexHistoricalPriceSeries series = IexHistoricalPriceSeries.from("AAPL", prices);
+
+    assertEquals(MAPPER.writeValueAsString(prices), MAPPER.writeValueAsString(series));
+  }
+
+  /**
+   * A year of daily bars for 500 symbols, held both ways. The series should need a fraction of the
+   * heap, as it has no per-bar objects. Measuring the heap relies on System.gc(), so this only
+   * runs with the benchmarks.
+   */
+  @Test
+  @Category(BenchmarkTestCategory.class)
+  public void testMemoryFootprint() {
+    int symbols = 500;
+    int days = 252;
+
+    List<List<IexHistoricalPrices>> lists = new ArrayList<>(symbols);
+    long listBytes = retainedBytes(() -> {
+      for (int s = 0; s < symbols; s++) {
+        lists.add(yearOfBars("SYM" + s, days));
+      }
+      return lists;
+    });
+
+    List<IexHistoricalPriceSeries> series = new ArrayList<>(symbols);
+    long seriesBytes = retainedBytes(() -> {
+      for (List<IexHistoricalPrices> list : lists) {
+        series.add(IexHistoricalPriceSeries.from(null, list));
+      }
+      return series;
+    });
+
+    log.info("{} bars take {} KB as lists and {} KB as series", symbols * days,
+        listBytes / 1024, seriesBytes / 1024);
+    assertEquals(symbols, series.size());
+    assertThat(seriesBytes, lessThan(listBytes / 3));
+  }
+
+  /*
+   * Roughly how much heap the object built by the given supplier holds on to.
+   */
+  private static long retainedBytes(final Supplier<Object> builder) {
+    long before = usedHeap();
+    Object built = builder.get();
+    long after = usedHeap();
+    log.debug("Measured {}", built.getClass());
+    return after - before;
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private static List<IexHistoricalPrices> yearOfBars(final String symbol, final int days) {
+    List<IexHistoricalPrices> bars = new ArrayList<>(days);
+    LocalDate date = LocalDate.of(2020, 1, 1);
+    for (int d = 0; d < days; d++) {
+      String price = (100 + d) + "." + (d % 100);
+      bars.add(bar(symbol, date.plusDays(d).toString(), price, price, price, price,
+          1_000_000 + d));
+    }
+    return bars;
+  }
+
+  private static IexHistoricalPrices bar(final String symbol, final String date,
+      final String open, final String high, final String low, final String close,
+      final long volume) {
+    return IexHistoricalPrices.builder().symbol(symbol).date(date)
+        .open(new BigDecimal(open)).high(new BigDecimal(high)).low(new BigDecimal(low))
+        .close(new BigDecimal(close)).volume(BigDecimal.valueOf(volume)).build();
+  }
+}
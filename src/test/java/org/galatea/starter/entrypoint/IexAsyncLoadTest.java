@@ -0,0 +1,100 @@
+package org.galatea.starter.entrypoint;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.okJson;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import lombok.extern.slf4j.Slf4j;
+import org.galatea.starter.ASpringTest;
+import org.galatea.starter.BenchmarkTestCategory;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.cloud.contract.wiremock.WireMockConfigurationCustomizer;
+import org.springframework.context.annotation.Bean;
+
+/**
+ * Load test for the async IEX endpoints. IEX is stood in for by WireMock, which takes a second to
+ * answer each request, and the server only has a handful of threads. Were the request threads held
+ * for the whole of each IEX call, the requests would have to queue up for them; as they aren't,
+ * every request is in flight at the same time.
+ *
+ * <p>The fan-out cap on IEX calls is raised to match, so that it isn't what's measured. Timing
+ * depends on the machine, so this only runs with the benchmarks; IexServiceTest checks that async
+ * requests don't block.
+ */
+@Slf4j
+@Category(BenchmarkTestCategory.class)
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = {
+    "server.jetty.acceptors=1",
+    "server.jetty.selectors=1",
+    "server.jetty.min-threads=8",
+    "server.jetty.max-threads=8",
+    "iex.async.threads=2",
+    "iex.fan-out.pool-size=" + IexAsyncLoadTest.CONCURRENT_REQUESTS})
+@AutoConfigureWireMock(port = 0, files = "classpath:/wiremock")
+public class IexAsyncLoadTest extends ASpringTest {
+
+  private static final int CONCURRENT_REQUESTS = 100;
+
+  private static final int IEX_DELAY_MILLIS = 1000;
+
+  @LocalServerPort
+  private int port;
+
+  @Test
+  public void testLastTradedPriceConcurrency() {
+    stubFor(get(urlPathEqualTo("/tops/last")).willReturn(
+        okJson("[{\"symbol\":\"FB\",\"price\":186.3011,\"size\":100,\"time\":1565273330617}]")
+            .withFixedDelay(IEX_DELAY_MILLIS)));
+
+    HttpClient client = HttpClient.newHttpClient();
+    long start = System.currentTimeMillis();
+    // Every request asks for a different symbol, so none of them are coalesced
+    List<CompletableFuture<HttpResponse<String>>> responses = IntStream
+        .range(0, CONCURRENT_REQUESTS)
+        .mapToObj(i -> HttpRequest.newBuilder(
+            URI.create("http://localhost:" + port + "/iex/lastTradedPrice?symbols=SYM" + i))
+            .build())
+        .map(request -> client.sendAsync(request, HttpResponse.BodyHandlers.ofString()))
+        .collect(Collectors.toList());
+
+    for (CompletableFuture<HttpResponse<String>> response : responses) {
+      assertEquals(200, response.join().statusCode());
+    }
+    long elapsedMillis = System.currentTimeMillis() - start;
+    log.info("{} requests with {}ms IEX latency took {}ms", CONCURRENT_REQUESTS, IEX_DELAY_MILLIS,
+        elapsedMillis);
+
+    // Holding one of the 8 server threads per IEX call would take well over 10s
+    assertThat(elapsedMillis, lessThan(8L * IEX_DELAY_MILLIS));
+  }
+
+  @TestConfiguration
+  static class WireMockConfig {
+
+    /**
+     * Have WireMock delay its responses without holding a thread, so that it isn't the bottleneck.
+     */
+    @Bean
+    public WireMockConfigurationCustomizer asyncResponses() {
+      return config -> config.asynchronousResponseEnabled(true).asynchronousResponseThreads(4);
+    }
+  }
+}
@@ -1,7 +1,11 @@
 package org.galatea.starter.entrypoint;
 
 import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import java.math.BigDecimal;
@@ -16,9 +20,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
 
@@ -57,9 +64,28 @@ public class IexRestControllerTest extends ASpringTest {
   }
 
   @Test
-  public void testGetLastTradedPrice() throws Exception {
+  public void testGetSymbolsEndpointNotModified() throws Exception {
+    String etag = this.mvc.perform(
+        MockMvcRequestBuilders.get("/iex/symbols").accept(MediaType.APPLICATION_JSON_VALUE))
+        .andExpect(status().isOk())
+        .andExpect(header().exists(HttpHeaders.ETAG))
+        .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
 
+    // Sending the ETag back means the client already has the latest symbols
     MvcResult result = this.mvc.perform(
+        MockMvcRequestBuilders.get("/iex/symbols")
+            .header(HttpHeaders.IF_NONE_MATCH, etag)
+            .accept(MediaType.APPLICATION_JSON_VALUE))
+        .andExpect(status().isNotModified())
+        .andExpect(header().string(HttpHeaders.ETAG, etag))
+        .andReturn();
+    assertEquals("", result.getResponse().getContentAsString());
+  }
+
+  @Test
+  public void testGetLastTradedPrice() throws Exception {
+
+    MvcResult result = performAsync(
         org.springframework.test.web.servlet.request.MockMvcRequestBuilders
             .get("/iex/lastTradedPrice?symbols=FB")
             // This URL will be hit by the MockMvc client. The result is configured in the file
@@ -74,7 +100,7 @@ public class IexRestControllerTest extends ASpringTest {
   @Test
   public void testGetHistoricalPrice() throws Exception {
 
-    MvcResult result = this.mvc.perform(
+    MvcResult result = performAsync(
         org.springframework.test.web.servlet.request.MockMvcRequestBuilders
             .get("/iex/historicalPrices?symbol=AAPL&range=1m&date=20210627")
             .accept(MediaType.APPLICATION_JSON_VALUE))
@@ -92,7 +118,7 @@ public class IexRestControllerTest extends ASpringTest {
   @Test
   public void testGetHistoricalPriceNoDate() throws Exception {
 
-    MvcResult result = this.mvc.perform(
+    MvcResult result = performAsync(
         org.springframework.test.web.servlet.request.MockMvcRequestBuilders
             .get("/iex/historicalPrices?symbol=IBM&range=1m&date=")
             .accept(MediaType.APPLICATION_JSON_VALUE))
@@ -110,7 +136,7 @@ public class IexRestControllerTest extends ASpringTest {
   @Test
   public void testGetHistoricalPriceNoRangeNoDate() throws Exception {
 
-    MvcResult result = this.mvc.perform(
+    MvcResult result = performAsync(
         org.springframework.test.web.servlet.request.MockMvcRequestBuilders
             .get("/iex/historicalPrices?symbol=MSFT&range=&date=")
             .accept(MediaType.APPLICATION_JSON_VALUE))
@@ -125,6 +151,33 @@ public class IexRestControllerTest extends ASpringTest {
         .andReturn();
   }
 
+  @Test
+  public void testGetHistoricalPricesBatch() throws Exception {
+
+    // There's no WireMock mapping for NOPE, so IEX responds with a 404 for it
+    MvcResult result = this.mvc.perform(
+        org.springframework.test.web.servlet.request.MockMvcRequestBuilders
+            .get("/iex/historicalPrices/batch?symbols=IBM,NOPE&range=1m")
+            .accept(MediaType.APPLICATION_JSON_VALUE))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.prices.IBM[0].symbol", is("IBM")))
+        .andExpect(jsonPath("$.prices.IBM[0].close").value(new BigDecimal("116.59")))
+        .andExpect(jsonPath("$.prices.NOPE").doesNotExist())
+        .andExpect(jsonPath("$.errors.NOPE").exists())
+        .andReturn();
+  }
+
+  @Test
+  public void testGetHistoricalPricesBatchNoSymbols() throws Exception {
+
+    MvcResult result = this.mvc.perform(
+        org.springframework.test.web.servlet.request.MockMvcRequestBuilders
+            .get("/iex/historicalPrices/batch?symbols=")
+            .accept(MediaType.APPLICATION_JSON_VALUE))
+        .andExpect(status().isBadRequest())
+        .andReturn();
+  }
+
   @Test
   public void testGetHistoricalPriceNoSymbol() throws Exception {
 
@@ -140,7 +193,7 @@ public class IexRestControllerTest extends ASpringTest {
   @Test
   public void testGetLastTradedPriceEmpty() throws Exception {
 
-    MvcResult result = this.mvc.perform(
+    MvcResult result = performAsync(
         org.springframework.test.web.servlet.request.MockMvcRequestBuilders
             .get("/iex/lastTradedPrice?symbols=")
             .accept(MediaType.APPLICATION_JSON_VALUE))
@@ -148,4 +201,16 @@ public class IexRestControllerTest extends ASpringTest {
         .andExpect(jsonPath("$", is(Collections.emptyList())))
         .andReturn();
   }
+
+  /*
+   * Perform a request to an endpoint that's handled asynchronously, returning the result of the
+   * async dispatch that writes the response.
+   */
+  private ResultActions performAsync(final MockHttpServletRequestBuilder requestBuilder)
+      throws Exception {
+    MvcResult started = this.mvc.perform(requestBuilder)
+        .andExpect(request().asyncStarted())
+        .andReturn();
+    return this.mvc.perform(asyncDispatch(started));
+  }
 }
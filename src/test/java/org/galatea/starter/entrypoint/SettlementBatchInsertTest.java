@@ -0,0 +1,116 @@
+package org.galatea.starter.entrypoint;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.restassured.RestAssured;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.sql.DataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.galatea.starter.ASpringTest;
+import org.galatea.starter.entrypoint.messagecontracts.TradeAgreementMessage;
+import org.galatea.starter.entrypoint.messagecontracts.TradeAgreementMessages;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+
+/**
+ * Load test for settling a large number of agreements in one request. Nothing is mocked, so the
+ * missions are really persisted, and every statement executed against the database is counted.
+ */
+@Slf4j
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+public class SettlementBatchInsertTest extends ASpringTest {
+
+  private static final int AGREEMENT_COUNT = 10_000;
+
+  // Matches hibernate.jdbc.batch_size and the id allocationSize on SettlementMission
+  private static final int BATCH_SIZE = 50;
+
+  // Number of statements (or batches of statements) sent to the database
+  private static final AtomicLong ROUND_TRIPS = new AtomicLong();
+
+  @LocalServerPort
+  private int port;
+
+  @Before
+  public void setup() {
+    RestAssured.port = port;
+    ROUND_TRIPS.set(0);
+  }
+
+  @Test
+  public void testSettleAgreementsInBatches() throws Exception {
+    TradeAgreementMessages.TradeAgreementMessagesBuilder messages = TradeAgreementMessages.builder();
+    for (int i = 0; i < AGREEMENT_COUNT; i++) {
+      messages.agreement(TradeAgreementMessage.builder().instrument("IBM").internalParty("INT-1")
+          .externalParty("EXT-" + i).buySell(i % 2 == 0 ? "B" : "S").qty(100d).build());
+    }
+
+    RestAssured.given()
+        .contentType(MediaType.APPLICATION_JSON_VALUE)
+        .body(new ObjectMapper().writeValueAsString(messages.build()))
+        .when()
+        .post("/settlementEngine?requestId=1234")
+        .then()
+        .statusCode(HttpStatus.OK.value())
+        .body("spawnedMissions", hasSize(AGREEMENT_COUNT));
+
+    log.info("Settling {} agreements took {} round trips", AGREEMENT_COUNT, ROUND_TRIPS.get());
+
+    // One batch of inserts, plus a read and a write of the id sequence, per BATCH_SIZE agreements.
+    // Without batching and pooled ids this would be at least one per agreement.
+    long batches = AGREEMENT_COUNT / BATCH_SIZE;
+    assertThat(ROUND_TRIPS.get(), lessThanOrEqualTo(3 * batches + 10));
+  }
+
+  @TestConfiguration
+  static class RoundTripCountingConfig {
+
+    /**
+     * The usual data source, wrapped so that every statement execution bumps ROUND_TRIPS.
+     */
+    @Bean
+    public DataSource dataSource(final DataSourceProperties properties) {
+      return countingProxy(properties.initializeDataSourceBuilder().build(), DataSource.class);
+    }
+
+    /*
+     * Proxy the given JDBC object, following any connections and statements it hands out.
+     */
+    private static <T> T countingProxy(final Object target, final Class<T> type) {
+      return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type},
+          (proxy, method, args) -> {
+            if (target instanceof Statement && method.getName().startsWith("execute")) {
+              ROUND_TRIPS.incrementAndGet();
+            }
+            Object result;
+            try {
+              result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+              throw e.getCause();
+            }
+            if (result instanceof Connection) {
+              return countingProxy(result, Connection.class);
+            }
+            if (result instanceof Statement) {
+              return countingProxy(result, (Class<?>) method.getReturnType());
+            }
+            return result;
+          }));
+    }
+  }
+}
@@ -4,6 +4,7 @@ import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import javax.jms.TextMessage;
@@ -29,7 +30,9 @@ import org.springframework.test.annotation.DirtiesContext;
 @Slf4j
 @ToString
 @EqualsAndHashCode(callSuper = true)
-@SpringBootTest
+// A single listener thread and a long batch wait, so that agreements sent together are reliably
+// handled as one batch
+@SpringBootTest(properties = {"jms.listener-concurrency=1", "jms.batch.max-wait-millis=2000"})
 public class SettlementJmsListenerTest extends ASpringTest {
 
   @Autowired
@@ -74,6 +77,24 @@ public class SettlementJmsListenerTest extends ASpringTest {
     verify(mockSettlementService, timeout(10000)).spawnMissions(expectedAgreements);
   }
 
+  @Test
+  @DirtiesContext
+  public void testSettleAgreementBatchJson() throws IOException {
+    String message = readData("Test_IBM_Agreement.json").replace("\n", "")
+        .replace("[", "").replace("]", "");
+
+    TradeAgreement agreement = TradeAgreement.builder().instrument("IBM").internalParty("INT-1")
+        .externalParty("EXT-1").buySell("B").qty(100d).build();
+    List<TradeAgreement> expectedAgreements = Arrays.asList(agreement, agreement, agreement);
+
+    for (int i = 0; i < expectedAgreements.size(); i++) {
+      jmsTemplate.send(jsonQueueName, s -> s.createTextMessage(message));
+    }
+
+    // All three agreements should be persisted together rather than one at a time
+    verify(mockSettlementService, timeout(10000)).spawnMissions(expectedAgreements);
+  }
+
   @Test
   @DirtiesContext
   public void testSettleOneAgreementProto() {
@@ -0,0 +1,148 @@
+package org.galatea.starter.entrypoint;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.BDDMockito.given;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.galatea.starter.ASpringTest;
+import org.galatea.starter.BenchmarkTestCategory;
+import org.galatea.starter.service.SettlementService;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.MediaType;
+
+/**
+ * Measures the throughput of the settlement endpoint when logging with the default profile
+ * (log4j2.yml) and the async, garbage-free one (log4j2-async.yml). Requests are sent from 16
+ * threads at once, and the service is mocked so that what's measured is the request handling and
+ * its logging.
+ *
+ * <p>Both profiles write to files under target/benchmark-logs. Settings that log4j only reads at
+ * startup, such as whether thread locals are used, keep the values they were started with.
+ */
+@Slf4j
+@Category(BenchmarkTestCategory.class)
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+public class SettlementLoggingProfileBenchmarkTest extends ASpringTest {
+
+  private static final int THREADS = 16;
+
+  private static final int REQUESTS_PER_THREAD = 500;
+
+  private static final String AGREEMENTS = "{\"agreements\" : [ {\"instrument\" : \"IBM\","
+      + " \"internalParty\" : \"INT-1\", \"externalParty\" : \"EXT-1\", \"buySell\" : \"B\","
+      + " \"qty\" : 100.0} ]}";
+
+  private static final String[] LOG_PROPERTIES = {"application.log-dir",
+      "application.log-archive-root-dir", "log4j2.asyncQueueFullPolicy",
+      "log4j2.discardThreshold"};
+
+  private static URI testLogConfig;
+
+  @MockBean
+  private SettlementService mockSettlementService;
+
+  @LocalServerPort
+  private int port;
+
+  @BeforeClass
+  public static void setupLogging() throws Exception {
+    Path logDir = Files.createDirectories(Path.of("target", "benchmark-logs"));
+    System.setProperty("application.log-dir", logDir.toString());
+    System.setProperty("application.log-archive-root-dir", logDir.resolve("archive").toString());
+    System.setProperty("log4j2.asyncQueueFullPolicy", "Discard");
+    System.setProperty("log4j2.discardThreshold", "INFO");
+  }
+
+  @AfterClass
+  public static void restoreLogging() {
+    for (String property : LOG_PROPERTIES) {
+      System.clearProperty(property);
+    }
+  }
+
+  @After
+  public void restoreLogConfig() {
+    if (testLogConfig != null) {
+      loggerContext().setConfigLocation(testLogConfig);
+    }
+  }
+
+  @Test
+  public void testSettleAgreementThroughput() throws Exception {
+    testLogConfig = loggerContext().getConfiguration().getConfigurationSource().getURI();
+    given(mockSettlementService.spawnMissions(anyList())).willReturn(Set.of(1L));
+
+    // Twice each, the first time to warm up
+    for (int i = 0; i < 2; i++) {
+      run("log4j2.yml");
+      run("log4j2-async.yml");
+    }
+  }
+
+  private void run(final String logConfig) throws Exception {
+    loggerContext().setConfigLocation(getClass().getClassLoader().getResource(logConfig).toURI());
+
+    HttpClient client = HttpClient.newHttpClient();
+    HttpRequest request = HttpRequest.newBuilder(
+        URI.create("http://localhost:" + port + "/settlementEngine?requestId=1234"))
+        .header("Content-Type", MediaType.APPLICATION_JSON_VALUE)
+        .POST(BodyPublishers.ofString(AGREEMENTS))
+        .build();
+
+    ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+    try {
+      long start = System.nanoTime();
+      List<Future<?>> threads = new ArrayList<>();
+      for (int t = 0; t < THREADS; t++) {
+        threads.add(pool.submit(() -> {
+          for (int r = 0; r < REQUESTS_PER_THREAD; r++) {
+            assertEquals(200, client.send(request, BodyHandlers.discarding()).statusCode());
+          }
+          return null;
+        }));
+      }
+      for (Future<?> thread : threads) {
+        thread.get(5, TimeUnit.MINUTES);
+      }
+      long elapsedNanos = System.nanoTime() - start;
+
+      int requests = THREADS * REQUESTS_PER_THREAD;
+      // Logged under the test config, so it shows up however the profile logs
+      loggerContext().setConfigLocation(testLogConfig);
+      log.info("{}: {} requests on {} threads in {}ms, {} requests a second", logConfig,
+          requests, THREADS, TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+          requests * TimeUnit.SECONDS.toNanos(1) / elapsedNanos);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  private static LoggerContext loggerContext() {
+    return (LoggerContext) LogManager.getContext(false);
+  }
+}
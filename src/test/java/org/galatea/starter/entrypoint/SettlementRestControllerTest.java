@@ -3,13 +3,22 @@ package org.galatea.starter.entrypoint;
 import static io.restassured.module.mockmvc.RestAssuredMockMvc.given;
 import static java.util.Collections.singletonList;
 import static org.galatea.starter.MvcConfig.APPLICATION_EXCEL;
+import static org.galatea.starter.MvcConfig.APPLICATION_NDJSON;
 import static org.galatea.starter.MvcConfig.TEXT_CSV;
 import static org.hamcrest.Matchers.hasXPath;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -28,6 +37,7 @@ import javax.xml.bind.JAXBContext;
 import javax.xml.bind.Marshaller;
 import junitparams.FileParameters;
 import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
 import lombok.extern.slf4j.Slf4j;
 import org.galatea.starter.ASpringTest;
 import org.galatea.starter.MessageTranslationConfig;
@@ -35,9 +45,13 @@ import org.galatea.starter.domain.SettlementMission;
 import org.galatea.starter.domain.TradeAgreement;
 import org.galatea.starter.entrypoint.messagecontracts.SettlementMissionList;
 import org.galatea.starter.entrypoint.messagecontracts.SettlementMissionMessage;
+import org.galatea.starter.entrypoint.messagecontracts.SettlementMissionMessages;
 import org.galatea.starter.entrypoint.messagecontracts.TradeAgreementMessage;
 import org.galatea.starter.entrypoint.messagecontracts.TradeAgreementMessages;
+import org.galatea.starter.service.MissionUpdateResult;
+import org.galatea.starter.service.MissionUpdateResult.Reason;
 import org.galatea.starter.service.SettlementService;
+import org.galatea.starter.service.SettlementService.IMissionConsumer;
 import org.galatea.starter.testutils.TestDataGenerator;
 import org.galatea.starter.testutils.XlsxComparator;
 import org.galatea.starter.utils.http.converter.SettlementMissionCsvConverter;
@@ -61,10 +75,14 @@ import org.springframework.dao.DataAccessException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.http.converter.xml.Jaxb2RootElementHttpMessageConverter;
 import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.validation.beanvalidation.MethodValidationPostProcessor;
 import org.springframework.web.accept.ContentNegotiationManager;
 import org.springframework.web.accept.ParameterContentNegotiationStrategy;
 
@@ -83,12 +101,21 @@ public class SettlementRestControllerTest
   @Value("${mvc.getMissionsPath}")
   private String getMissionsPath;
 
+  @Value("${mvc.streamMissionsPath}")
+  private String streamMissionsPath;
+
   @Value("${mvc.deleteMissionPath}")
   private String deleteMissionPath;
 
+  @Value("${mvc.deleteMissionsPath}")
+  private String deleteMissionsPath;
+
   @Value("${mvc.updateMissionPath}")
   private String updateMissionPath;
 
+  @Value("${mvc.updateMissionsPath}")
+  private String updateMissionsPath;
+
   @Autowired
   private ITranslator<TradeAgreementMessages, List<TradeAgreement>> tradeAgreementTranslator;
 
@@ -106,6 +133,9 @@ public class SettlementRestControllerTest
 
   private ObjectMapper objectMapper;
 
+  // For endpoints that write their response asynchronously, which RestAssured doesn't wait for
+  private MockMvc mockMvc;
+
   private JacksonTester<TradeAgreementMessages> agreementJsonTester;
 
   private JacksonTester<List<Long>> missionIdJsonTester;
@@ -129,19 +159,23 @@ public class SettlementRestControllerTest
     ContentNegotiationManager manager =
         new ContentNegotiationManager(parameterContentNegotiationStrategy);
 
-    RestAssuredMockMvc.standaloneSetup(
-        MockMvcBuilders.standaloneSetup(settlementRestController).
+    mockMvc = MockMvcBuilders.standaloneSetup(settlementRestController).
             addPlaceholderValue("mvc.settleMissionPath", settleMissionPath).
             addPlaceholderValue("mvc.deleteMissionPath", deleteMissionPath).
+            addPlaceholderValue("mvc.deleteMissionsPath", deleteMissionsPath).
             addPlaceholderValue("mvc.updateMissionPath", updateMissionPath).
+            addPlaceholderValue("mvc.updateMissionsPath", updateMissionsPath).
             addPlaceholderValue("mvc.getMissionsPath", getMissionsPath).
             addPlaceholderValue("mvc.getMissionPath", getMissionPath).
+            addPlaceholderValue("mvc.streamMissionsPath", streamMissionsPath).
             setContentNegotiationManager(manager).
             setMessageConverters(new MappingJackson2HttpMessageConverter(),
                 new Jaxb2RootElementHttpMessageConverter(),
                 new SettlementMissionCsvConverter(),
                 new SettlementMissionXlsxConverter()).
-            setControllerAdvice(new RestExceptionHandler()));
+            setControllerAdvice(new RestExceptionHandler()).
+            build();
+    RestAssuredMockMvc.mockMvc(mockMvc);
   }
 
   @Test
@@ -393,6 +427,80 @@ public class SettlementRestControllerTest
     assertTrue(XlsxComparator.equals(expectedXlsx, response.asByteArray()));
   }
 
+  @Test
+  public void testStreamMissions_NDJSON() throws Exception {
+    SettlementMission mission1 = TestDataGenerator.defaultSettlementMissionData()
+        .id(11L).build();
+    SettlementMission mission2 = TestDataGenerator.defaultSettlementMissionData()
+        .id(12L).build();
+
+    givenStreamedMissions("DEPOT-1", 10L, 2, Arrays.asList(mission1, mission2));
+
+    String expectedNdjson = objectMapper.writeValueAsString(mission1) + "\n"
+        + objectMapper.writeValueAsString(mission2) + "\n";
+
+    MvcResult result = mockMvc.perform(
+        get("/settlementEngine/missions/stream?depot=DEPOT-1&afterId=10&limit=2&requestId=1234")
+            .accept(APPLICATION_NDJSON))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+
+    mockMvc.perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(content().contentType(APPLICATION_NDJSON))
+        .andExpect(content().string(expectedNdjson));
+  }
+
+  @Test
+  public void testStreamMissions_CSV() throws Exception {
+    SettlementMission mission1 = SettlementMission.builder()
+        .id(1L).instrument("ABC").externalParty("EXT-1").depot("DEPOT-1").direction("REC")
+        .qty(100.0).version(0L).build();
+    SettlementMission mission2 = SettlementMission.builder()
+        .id(2L).instrument("ABC").externalParty("EXT-1").depot("DEPOT-1").direction("REC")
+        .qty(100.0).version(0L).build();
+
+    givenStreamedMissions(null, 0L, null, Arrays.asList(mission1, mission2));
+
+    String expectedCsv = readData("SettlementMissions.csv");
+
+    // The standalone MockMvc setup only applies the format parameter when picking a message
+    // converter, not when picking between handlers, so use the Accept header instead
+    MvcResult result = mockMvc.perform(
+        get("/settlementEngine/missions/stream?requestId=1234").accept(TEXT_CSV))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+
+    mockMvc.perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(content().contentType(TEXT_CSV))
+        .andExpect(content().string(expectedCsv));
+  }
+
+  @Test
+  @Parameters({"0", "-1"})
+  public void testStreamMissionsRejectsLimitBelowOne(final int limit) throws Exception {
+    // Rejected before the response starts, so the status can still say so
+    mockMvc.perform(
+        get("/settlementEngine/missions/stream?limit=" + limit + "&requestId=1234")
+            .accept(APPLICATION_NDJSON))
+        .andExpect(status().isBadRequest());
+
+    verifyZeroInteractions(mockSettlementService);
+  }
+
+  /*
+   * Have the mock settlement service hand the given missions to whatever consumer it's given.
+   */
+  private void givenStreamedMissions(final String depot, final long afterId, final Integer limit,
+      final List<SettlementMission> missions) throws Exception {
+    BDDMockito.willAnswer(invocation -> {
+      invocation.<IMissionConsumer>getArgument(3).accept(missions);
+      return null;
+    }).given(this.mockSettlementService)
+        .streamMissions(eq(depot), eq(afterId), eq(limit), any(IMissionConsumer.class));
+  }
+
   @Test
   public void testIncorrectlyFormattedAgreement() {
     String expectedMessage = "Incorrectly formatted message.  Please consult the documentation.";
@@ -491,6 +599,59 @@ public class SettlementRestControllerTest
         .statusCode(HttpStatus.CONFLICT.value());
   }
 
+  @Test
+  public void testUpdateMissions() {
+    SettlementMission settlementMission1 = TestDataGenerator.defaultSettlementMissionData()
+        .id(MISSION_ID_1).build();
+    SettlementMission settlementMission2 = TestDataGenerator.defaultSettlementMissionData()
+        .id(MISSION_ID_1 + 1).build();
+    SettlementMissionMessages messages = SettlementMissionMessages.builder()
+        .mission(settlementMissionTranslator.translate(settlementMission1))
+        .mission(settlementMissionTranslator.translate(settlementMission2)).build();
+
+    when(mockSettlementService.updateMissions(Arrays.asList(settlementMission1,
+        settlementMission2))).thenReturn(new MissionUpdateResult(singletonList(MISSION_ID_1),
+        singletonList(new MissionUpdateResult.Conflict(MISSION_ID_1 + 1, Reason.VERSION_MISMATCH,
+            3L))));
+
+    given()
+        .log().ifValidationFails()
+        .contentType(MediaType.APPLICATION_JSON_VALUE)
+        .body(objectMapper.convertValue(messages, JsonNode.class).toString())
+        .accept(MediaType.APPLICATION_JSON_VALUE)
+        .when()
+        .put("/settlementEngine/missions?requestId=1234")
+        .then()
+        .log().ifValidationFails()
+        .statusCode(HttpStatus.OK.value())
+        .body("updatedMissions", is(singletonList("/settlementEngine/mission/" + MISSION_ID_1)))
+        .body("conflicts[0].id", is((int) (MISSION_ID_1 + 1)))
+        .body("conflicts[0].reason", is("VERSION_MISMATCH"))
+        .body("conflicts[0].currentVersion", is(3));
+  }
+
+  @Test
+  public void testUpdateMissionsChangedConcurrently() {
+    SettlementMission settlementMission = TestDataGenerator.defaultSettlementMissionData()
+        .id(MISSION_ID_1).build();
+    SettlementMissionMessages messages = SettlementMissionMessages.builder()
+        .mission(settlementMissionTranslator.translate(settlementMission)).build();
+
+    when(mockSettlementService.updateMissions(singletonList(settlementMission))).thenThrow(
+        ObjectOptimisticLockingFailureException.class);
+
+    given()
+        .log().ifValidationFails()
+        .contentType(MediaType.APPLICATION_JSON_VALUE)
+        .body(objectMapper.convertValue(messages, JsonNode.class).toString())
+        .accept(MediaType.APPLICATION_JSON_VALUE)
+        .when()
+        .put("/settlementEngine/missions?requestId=1234")
+        .then()
+        .log().ifValidationFails()
+        .statusCode(HttpStatus.CONFLICT.value());
+  }
+
   @Test
   public void testDeleteMission() {
     doNothing().when(mockSettlementService).deleteMission(MISSION_ID_1);
@@ -520,11 +681,57 @@ public class SettlementRestControllerTest
         .statusCode(HttpStatus.NOT_FOUND.value());
   }
 
+  @Test
+  public void testDeleteMissions() {
+    when(mockSettlementService.deleteMissions(Sets.newLinkedHashSet(
+        Arrays.asList(MISSION_ID_1, MISSION_ID_1 + 1)))).thenReturn(1);
+
+    given()
+        .log().ifValidationFails()
+        .accept(MediaType.APPLICATION_JSON_VALUE)
+        .when()
+        .delete("/settlementEngine/missions?ids=" + MISSION_ID_1 + "," + (MISSION_ID_1 + 1)
+            + "&requestId=1234")
+        .then()
+        .log().ifValidationFails()
+        .statusCode(HttpStatus.OK.value())
+        .body("deletedMissions", is(1))
+        .body("notFoundMissions", is(1));
+  }
+
+  @Test
+  public void testDeleteMissionsByDepot() {
+    when(mockSettlementService.deleteMissionsByDepot("DTC", "IBM")).thenReturn(3);
+
+    given()
+        .log().ifValidationFails()
+        .accept(MediaType.APPLICATION_JSON_VALUE)
+        .when()
+        .delete("/settlementEngine/missions?depot=DTC&instrument=IBM&requestId=1234")
+        .then()
+        .log().ifValidationFails()
+        .statusCode(HttpStatus.OK.value())
+        .body("deletedMissions", is(3))
+        .body("notFoundMissions", is(0));
+  }
+
   @Configuration
   @Import(SettlementRestController.class)
   @ConditionalOnNotWebApplication
   static class PropertyConfig {
 
+    // Validates controller method parameters, as Spring Boot does for the running application
+    @Bean
+    MethodValidationPostProcessor methodValidationPostProcessor() {
+      return new MethodValidationPostProcessor();
+    }
+
+    // Stands in for the mapper Spring Boot configures for the running application
+    @Bean
+    ObjectMapper objectMapper() {
+      return Jackson2ObjectMapperBuilder.json().build();
+    }
+
     @Bean
     PropertyPlaceholderConfigurer propertyPlaceholderConfigurer() {
       PropertyPlaceholderConfigurer propertyPlaceholderConfigurer =
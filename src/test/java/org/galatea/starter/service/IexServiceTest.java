@@ -0,0 +1,194 @@
+package org.galatea.starter.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.galatea.starter.ASpringTest;
+import org.galatea.starter.domain.IexHistoricalPrices;
+import org.galatea.starter.domain.IexHistoricalPricesBatch;
+import org.galatea.starter.domain.IexLastTradedPrice;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cache.CacheManager;
+
+@SpringBootTest(properties = "iex.historical-batch.timeout-millis=1000")
+public class IexServiceTest extends ASpringTest {
+
+  private static final List<IexHistoricalPrices> PRICES = Collections.singletonList(
+      IexHistoricalPrices.builder().symbol("AAPL").close(new BigDecimal("116.59"))
+          .date("2021-06-27").build());
+
+  @MockBean
+  private IexHistoricalClient mockIexHistoricalClient;
+
+  @MockBean
+  private IexAsyncClient mockIexAsyncClient;
+
+  @Value("${iex.fan-out.pool-size}")
+  private int fanOutPoolSize;
+
+  @Autowired
+  private IexService service;
+
+  @Autowired
+  private CacheManager cacheManager;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Before
+  public void setup() {
+    cacheManager.getCache(IexService.CLOSED_PRICES_CACHE).clear();
+    cacheManager.getCache(IexService.INTRADAY_PRICES_CACHE).clear();
+    cacheManager.getCache(IexService.LAST_KNOWN_GOOD_PRICES_CACHE).clear();
+  }
+
+  @Test
+  public void testClosedHistoricalPricesCached() {
+    given(mockIexHistoricalClient.getHistoricalPricesForSymbols("AAPL", "date", "20210627"))
+        .willReturn(PRICES);
+
+    assertEquals(PRICES, service.getHistoricalPricesForSymbols("AAPL", "date", "20210627"));
+    assertEquals(PRICES, service.getHistoricalPricesForSymbols("AAPL", "date", "20210627"));
+
+    verify(mockIexHistoricalClient, times(1))
+        .getHistoricalPricesForSymbols("AAPL", "date", "20210627");
+    assertNotNull(cacheManager.getCache(IexService.CLOSED_PRICES_CACHE).get(
+        new IexService.HistoricalPricesKey("AAPL", "date", "20210627")));
+  }
+
+  @Test
+  public void testIntradayHistoricalPricesCachedSeparately() {
+    given(mockIexHistoricalClient.getHistoricalPricesForSymbols("AAPL", "1m")).willReturn(PRICES);
+
+    service.getHistoricalPricesForSymbols("AAPL", "1m");
+    service.getHistoricalPricesForSymbols("AAPL", "1m");
+
+    verify(mockIexHistoricalClient, times(1)).getHistoricalPricesForSymbols("AAPL", "1m");
+    assertNotNull(cacheManager.getCache(IexService.INTRADAY_PRICES_CACHE).get(
+        new IexService.HistoricalPricesKey("AAPL", "1m", null)));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testHistoricalPricesFailureNotWrapped() {
+    given(mockIexHistoricalClient.getHistoricalPricesForSymbols("AAPL"))
+        .willThrow(new IllegalStateException("IEX is down"));
+
+    service.getHistoricalPricesForSymbols("AAPL");
+  }
+
+  @Test
+  public void testLastKnownGoodPricesServedWhenIexFails() {
+    given(mockIexHistoricalClient.getHistoricalPricesForSymbols("IBM", "1m"))
+        .willReturn(PRICES)
+        .willThrow(new IllegalStateException("IEX is down"));
+    service.getHistoricalPricesForSymbols("IBM", "1m");
+    // The intraday prices have expired
+    cacheManager.getCache(IexService.INTRADAY_PRICES_CACHE).clear();
+
+    assertEquals(PRICES, service.getHistoricalPricesForSymbols("IBM", "1m"));
+
+    verify(mockIexHistoricalClient, times(2)).getHistoricalPricesForSymbols("IBM", "1m");
+    // The fallback isn't cached, so IEX is tried again next time
+    assertNull(cacheManager.getCache(IexService.INTRADAY_PRICES_CACHE).get(
+        new IexService.HistoricalPricesKey("IBM", "1m", null)));
+    assertEquals(1, meterRegistry.get("resilience.fallbacks").tag("policy", "historicalPrices")
+        .functionCounter().count(), 0);
+  }
+
+  @Test
+  public void testHistoricalPricesBatchPartialFailure() {
+    given(mockIexHistoricalClient.getHistoricalPricesForSymbols("AAPL", "1m")).willReturn(PRICES);
+    given(mockIexHistoricalClient.getHistoricalPricesForSymbols("IBM", "1m"))
+        .willThrow(new IllegalStateException("IEX is down"));
+    given(mockIexHistoricalClient.getHistoricalPricesForSymbols("MSFT", "1m")).willAnswer(
+        invocation -> {
+          Thread.sleep(3000);
+          return PRICES;
+        });
+
+    IexHistoricalPricesBatch batch = service.getHistoricalPriceSeriesForSymbols(
+        Arrays.asList("AAPL", "IBM", "MSFT", "AAPL"), "1m", null);
+
+    assertEquals(Collections.singleton("AAPL"), batch.getPrices().keySet());
+    assertEquals(PRICES, batch.getPrices().get("AAPL").asList());
+    assertEquals(Arrays.asList("IBM", "MSFT"), new ArrayList<>(batch.getErrors().keySet()));
+    assertTrue(batch.getErrors().get("IBM").contains("IEX is down"));
+    assertEquals("Timed out after 1000ms", batch.getErrors().get("MSFT"));
+  }
+
+  @Test
+  public void testAsyncLastTradedPricesCappedWithoutBlocking() {
+    List<CompletableFuture<List<IexLastTradedPrice>>> iexCalls = new ArrayList<>();
+    given(mockIexAsyncClient.getLastTradedPriceForSymbols(anyList())).willAnswer(invocation -> {
+      CompletableFuture<List<IexLastTradedPrice>> call = new CompletableFuture<>();
+      iexCalls.add(call);
+      return call;
+    });
+
+    // Two more requests than the fan-out cap, all made from this one thread. Each asks for a
+    // different symbol, so none of them are coalesced
+    List<CompletableFuture<List<IexLastTradedPrice>>> responses = IntStream
+        .range(0, fanOutPoolSize + 2)
+        .mapToObj(i -> service.getLastTradedPriceForSymbolsAsync(
+            Collections.singletonList("SYM" + i)))
+        .collect(Collectors.toList());
+
+    // Every request returned without waiting for IEX, but only as many calls as the cap started
+    assertEquals(fanOutPoolSize, iexCalls.size());
+    assertTrue(responses.stream().noneMatch(CompletableFuture::isDone));
+
+    // Each call that completes lets a waiting one start
+    iexCalls.get(0).complete(Collections.emptyList());
+    iexCalls.get(1).complete(Collections.emptyList());
+    assertEquals(fanOutPoolSize + 2, iexCalls.size());
+    iexCalls.forEach(call -> call.complete(Collections.emptyList()));
+    assertTrue(responses.stream().allMatch(CompletableFuture::isDone));
+  }
+
+  @Test
+  public void testIsClosed() {
+    String nextYear = LocalDate.now().plusYears(1).format(DateTimeFormatter.BASIC_ISO_DATE);
+
+    assertTrue(IexService.isClosed("20210627"));
+    assertFalse(IexService.isClosed(nextYear));
+    assertFalse(IexService.isClosed(null));
+    assertFalse(IexService.isClosed("not a date"));
+  }
+
+  @Test
+  public void testHistoricalPriceCacheMetricsRegistered() {
+    assertNotNull(meterRegistry.find("cache.gets")
+        .tags("cache", IexService.CLOSED_PRICES_CACHE, "result", "hit").functionCounter());
+    assertNotNull(meterRegistry.find("cache.evictions")
+        .tags("cache", IexService.INTRADAY_PRICES_CACHE).functionCounter());
+  }
+
+  @Test
+  public void testConnectionPoolMetricsRegistered() {
+    assertEquals(50, meterRegistry.get("http.client.pool.max").tag("pool", "iex").gauge().value(),
+        0);
+  }
+}
@@ -0,0 +1,71 @@
+package org.galatea.starter.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.galatea.starter.domain.IexSymbol;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class IexSymbolStoreTest {
+
+  private static final IexSymbol AAPL = IexSymbol.builder().symbol("AAPL").name("Apple").build();
+
+  private static final IexSymbol FB = IexSymbol.builder().symbol("FB").name("Facebook").build();
+
+  private IexClient mockIexClient;
+
+  private IexSymbolStore store;
+
+  @Before
+  public void setup() {
+    mockIexClient = Mockito.mock(IexClient.class);
+    store = new IexSymbolStore(mockIexClient);
+  }
+
+  @Test
+  public void testGetSnapshotLoadsOnce() {
+    given(mockIexClient.getAllSymbols()).willReturn(Arrays.asList(AAPL, FB));
+
+    IexSymbolStore.Snapshot snapshot = store.getSnapshot();
+
+    assertEquals(Arrays.asList(AAPL, FB), snapshot.getSymbols());
+    assertSame(snapshot, store.getSnapshot());
+    verify(mockIexClient, times(1)).getAllSymbols();
+  }
+
+  @Test
+  public void testRefreshReplacesSnapshot() {
+    given(mockIexClient.getAllSymbols())
+        .willReturn(Collections.singletonList(AAPL))
+        .willReturn(Collections.singletonList(AAPL))
+        .willReturn(Arrays.asList(AAPL, FB));
+
+    String etag = store.refresh().getEtag();
+    // Same symbols, same tag
+    assertEquals(etag, store.refresh().getEtag());
+
+    store.scheduledRefresh();
+    assertEquals(Arrays.asList(AAPL, FB), store.getSnapshot().getSymbols());
+    assertNotEquals(etag, store.getSnapshot().getEtag());
+  }
+
+  @Test
+  public void testFailedRefreshKeepsSnapshot() {
+    given(mockIexClient.getAllSymbols())
+        .willReturn(Collections.singletonList(AAPL))
+        .willThrow(new IllegalStateException("IEX is down"));
+
+    IexSymbolStore.Snapshot snapshot = store.refresh();
+    store.scheduledRefresh();
+
+    assertSame(snapshot, store.getSnapshot());
+  }
+}
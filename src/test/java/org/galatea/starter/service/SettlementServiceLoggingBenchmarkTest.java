@@ -0,0 +1,108 @@
+package org.galatea.starter.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.BDDMockito.given;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import javax.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.galatea.starter.BenchmarkTestCategory;
+import org.galatea.starter.domain.SettlementMission;
+import org.galatea.starter.domain.TradeAgreement;
+import org.galatea.starter.domain.rpsy.ISettlementMissionRpsy;
+import org.galatea.starter.testutils.TestDataGenerator;
+import org.galatea.starter.utils.cache.JitteredCacheWriter;
+import org.galatea.starter.utils.logging.LoggedAspect;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.mockito.Mockito;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+/**
+ * Measures what logging calls to SettlementService.spawnMissions costs: without the @Logged
+ * aspect, with it but with call logging turned off (the service's logger above debug), and with
+ * call logging turned on. The repository is a mock that hands back what it's given, so what's
+ * measured is the service and its logging rather than the database.
+ */
+@Slf4j
+@Category(BenchmarkTestCategory.class)
+public class SettlementServiceLoggingBenchmarkTest {
+
+  private static final int AGREEMENTS_PER_CALL = 1_000;
+
+  private static final int CALLS = 1_000;
+
+  private final List<TradeAgreement> agreements = IntStream.range(0, AGREEMENTS_PER_CALL)
+      .mapToObj(i -> TestDataGenerator.defaultTradeAgreementData().qty((double) i).build())
+      .collect(Collectors.toList());
+
+  private SettlementService service;
+
+  private SettlementService loggedService;
+
+  private Level serviceLogLevel;
+
+  @Before
+  public void setup() {
+    serviceLogLevel = LogManager.getLogger(SettlementService.class).getLevel();
+
+    ISettlementMissionRpsy rpsy = Mockito.mock(ISettlementMissionRpsy.class);
+    AtomicLong ids = new AtomicLong();
+    given(rpsy.saveAll(anyList())).willAnswer(invocation -> {
+      List<SettlementMission> missions = invocation.getArgument(0);
+      missions.forEach(mission -> mission.setId(ids.incrementAndGet()));
+      return new ArrayList<>(missions);
+    });
+    IAgreementTransformer transformer = agreement -> TestDataGenerator
+        .defaultSettlementMissionData().instrument(agreement.getInstrument())
+        .qty(agreement.getQty()).build();
+    service = new SettlementService(rpsy, transformer, Mockito.mock(EntityManager.class),
+        new ConcurrentMapCacheManager(ISettlementMissionRpsy.MISSIONS_CACHE),
+        new JitteredCacheWriter(0));
+
+    AspectJProxyFactory factory = new AspectJProxyFactory(service);
+    factory.setProxyTargetClass(true);
+    factory.addAspect(new LoggedAspect());
+    loggedService = factory.getProxy();
+  }
+
+  @After
+  public void tearDown() {
+    Configurator.setLevel(SettlementService.class.getName(), serviceLogLevel);
+  }
+
+  @Test
+  public void testSpawnMissions() {
+    // Twice each, the first time to warm up
+    for (int i = 0; i < 2; i++) {
+      Configurator.setLevel(SettlementService.class.getName(), Level.INFO);
+      run("no @Logged", service);
+      run("@Logged, call logging off", loggedService);
+      Configurator.setLevel(SettlementService.class.getName(), Level.DEBUG);
+      run("@Logged, call logging on", loggedService);
+    }
+  }
+
+  private void run(final String name, final SettlementService serviceToCall) {
+    long start = System.nanoTime();
+    for (int i = 0; i < CALLS; i++) {
+      assertEquals(AGREEMENTS_PER_CALL, serviceToCall.spawnMissions(agreements).size());
+    }
+    long elapsedNanos = System.nanoTime() - start;
+    log.info("{}: {} calls of {} agreements in {}ms, {}us per call", name, CALLS,
+        AGREEMENTS_PER_CALL, TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+        TimeUnit.NANOSECONDS.toMicros(elapsedNanos / CALLS));
+  }
+}
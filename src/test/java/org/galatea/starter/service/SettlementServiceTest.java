@@ -2,26 +2,41 @@ package org.galatea.starter.service;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 
+import com.google.common.collect.Sets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Stream;
+import javax.persistence.EntityManager;
 import org.galatea.starter.ASpringTest;
 import org.galatea.starter.domain.SettlementMission;
 import org.galatea.starter.domain.TradeAgreement;
 import org.galatea.starter.domain.rpsy.ISettlementMissionRpsy;
 import org.galatea.starter.entrypoint.exception.EntityNotFoundException;
+import org.galatea.starter.service.MissionUpdateResult.Reason;
 import org.galatea.starter.testutils.TestDataGenerator;
+import org.galatea.starter.utils.cache.JitteredCacheWriter;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.util.ReflectionTestUtils;
 
 public class SettlementServiceTest extends ASpringTest {
 
@@ -31,11 +46,18 @@ public class SettlementServiceTest extends ASpringTest {
   @MockBean
   private IAgreementTransformer mockAgreementTransformer;
 
+  private EntityManager mockEntityManager;
+
+  private CacheManager cacheManager;
+
   private SettlementService service;
 
   @Before
   public void setup() {
-    service = new SettlementService(mockSettlementMissionRpsy, mockAgreementTransformer);
+    mockEntityManager = Mockito.mock(EntityManager.class);
+    cacheManager = new ConcurrentMapCacheManager(ISettlementMissionRpsy.MISSIONS_CACHE);
+    service = new SettlementService(mockSettlementMissionRpsy, mockAgreementTransformer,
+        mockEntityManager, cacheManager, new JitteredCacheWriter(0));
   }
 
   @Test
@@ -98,6 +120,47 @@ public class SettlementServiceTest extends ASpringTest {
     }
   }
 
+  @Test
+  public void testFindMissionsFromCache() {
+    Cache cache = cacheManager.getCache(ISettlementMissionRpsy.MISSIONS_CACHE);
+    SettlementMission cachedMission = TestDataGenerator.defaultSettlementMissionData()
+        .id(1L).build();
+    cache.put(1L, cachedMission);
+    SettlementMission storedMission = TestDataGenerator.defaultSettlementMissionData()
+        .id(2L).build();
+
+    given(this.mockSettlementMissionRpsy.findAllById(Collections.singletonList(2L)))
+        .willReturn(Collections.singletonList(storedMission));
+
+    // Only the mission that isn't cached is read, and it's cached once it has been
+    List<SettlementMission> actual = service.findMissions(Arrays.asList(2L, 1L, 2L));
+    assertEquals(Arrays.asList(storedMission, cachedMission), actual);
+    assertEquals(storedMission, cache.get(2L, SettlementMission.class));
+
+    actual = service.findMissions(Arrays.asList(1L, 2L));
+    assertEquals(Arrays.asList(cachedMission, storedMission), actual);
+    verify(this.mockSettlementMissionRpsy).findAllById(Mockito.anyIterable());
+  }
+
+  @Test
+  public void testStreamMissions() throws Exception {
+    SettlementMission settlementMission1 = TestDataGenerator.defaultSettlementMissionData()
+        .id(11L).build();
+    SettlementMission settlementMission2 = TestDataGenerator.defaultSettlementMissionData()
+        .id(12L).build();
+
+    given(this.mockSettlementMissionRpsy.streamByDepotAndIdGreaterThan("DTC", 10L,
+        PageRequest.of(0, 2))).willReturn(Stream.of(settlementMission1, settlementMission2));
+
+    List<SettlementMission> streamed = new ArrayList<>();
+    service.streamMissions("DTC", 10L, 2, missions -> missions.forEach(streamed::add));
+
+    assertEquals(Arrays.asList(settlementMission1, settlementMission2), streamed);
+    // Each mission should be detached so the persistence context doesn't grow with the stream
+    verify(this.mockEntityManager).detach(settlementMission1);
+    verify(this.mockEntityManager).detach(settlementMission2);
+  }
+
   @Test
   public void testSpawnMissions() {
 
@@ -114,6 +177,41 @@ public class SettlementServiceTest extends ASpringTest {
     assertEquals(1, missionIds.size());
   }
 
+  @Test
+  public void testSpawnMissionsWriteThrough() {
+    ReflectionTestUtils.setField(service, "writeThrough", true);
+    SettlementMission testSettlementMission = TestDataGenerator.defaultSettlementMissionData()
+        .id(35L).build();
+
+    given(this.mockSettlementMissionRpsy.saveAll(Mockito.anyList()))
+        .willReturn(Collections.singletonList(testSettlementMission));
+
+    service.spawnMissions(Collections.singletonList(TestDataGenerator.defaultTradeAgreementData()
+        .build()));
+    assertEquals(testSettlementMission, cacheManager.getCache(
+        ISettlementMissionRpsy.MISSIONS_CACHE).get(35L, SettlementMission.class));
+  }
+
+  @Test
+  public void testUpdateMissionsWriteThrough() {
+    ReflectionTestUtils.setField(service, "writeThrough", true);
+    SettlementMission current = TestDataGenerator.defaultSettlementMissionData().id(1L).build();
+    SettlementMission update = TestDataGenerator.defaultSettlementMissionData().id(1L)
+        .qty(200d).build();
+    // What the repository hands back is what's in the database once the update is committed
+    SettlementMission saved = TestDataGenerator.defaultSettlementMissionData().id(1L)
+        .qty(200d).version(1L).build();
+    Cache cache = cacheManager.getCache(ISettlementMissionRpsy.MISSIONS_CACHE);
+    cache.put(1L, current);
+
+    given(this.mockSettlementMissionRpsy.findAllById(Collections.singleton(1L)))
+        .willReturn(Collections.singletonList(current));
+    given(this.mockSettlementMissionRpsy.save(update)).willReturn(saved);
+
+    service.updateMissions(Collections.singletonList(update));
+    assertEquals(saved, cache.get(1L, SettlementMission.class));
+  }
+
   @Test
   public void testUpdateMission() {
 
@@ -124,12 +222,65 @@ public class SettlementServiceTest extends ASpringTest {
         .willReturn(testSettlementMission);
 
     SettlementService service =
-        new SettlementService(this.mockSettlementMissionRpsy, this.mockAgreementTransformer);
+        new SettlementService(this.mockSettlementMissionRpsy, this.mockAgreementTransformer,
+            this.mockEntityManager, this.cacheManager, new JitteredCacheWriter(0));
 
     Optional<SettlementMission> settlementMissionOptional = service.updateMission(35L, testSettlementMission);
     assertEquals((Long) 35L, settlementMissionOptional.get().getId());
   }
 
+  @Test
+  public void testUpdateMissions() {
+    SettlementMission current1 = TestDataGenerator.defaultSettlementMissionData().id(1L)
+        .version(2L).build();
+    SettlementMission current2 = TestDataGenerator.defaultSettlementMissionData().id(2L)
+        .version(5L).build();
+    given(this.mockSettlementMissionRpsy.findAllById(Sets.newHashSet(1L, 2L, 3L)))
+        .willReturn(Arrays.asList(current1, current2));
+
+    SettlementMission update1 = TestDataGenerator.defaultSettlementMissionData().id(1L)
+        .version(2L).qty(200d).build();
+    SettlementMission duplicate1 = TestDataGenerator.defaultSettlementMissionData().id(1L)
+        .version(2L).qty(300d).build();
+    SettlementMission staleUpdate2 = TestDataGenerator.defaultSettlementMissionData().id(2L)
+        .version(4L).build();
+    SettlementMission update3 = TestDataGenerator.defaultSettlementMissionData().id(3L).build();
+    SettlementMission noId = TestDataGenerator.defaultSettlementMissionData().id(null).build();
+
+    MissionUpdateResult result = service.updateMissions(
+        Arrays.asList(update1, duplicate1, staleUpdate2, update3, noId));
+
+    assertEquals(Collections.singletonList(1L), result.getUpdatedIds());
+    assertEquals(Arrays.asList(
+        new MissionUpdateResult.Conflict(1L, Reason.DUPLICATE_ID, 2L),
+        new MissionUpdateResult.Conflict(2L, Reason.VERSION_MISMATCH, 5L),
+        new MissionUpdateResult.Conflict(3L, Reason.NOT_FOUND, null),
+        new MissionUpdateResult.Conflict(null, Reason.MISSING_ID, null)), result.getConflicts());
+    verify(this.mockSettlementMissionRpsy).save(update1);
+    verify(this.mockSettlementMissionRpsy, never()).save(duplicate1);
+    verify(this.mockSettlementMissionRpsy, never()).save(staleUpdate2);
+    verify(this.mockSettlementMissionRpsy, never()).existsById(Mockito.anyLong());
+  }
+
+  @Test
+  public void testUpdateMissionsNullVersion() {
+    SettlementMission current = TestDataGenerator.defaultSettlementMissionData().id(1L)
+        .version(null).build();
+    given(this.mockSettlementMissionRpsy.findAllById(Collections.singleton(1L)))
+        .willReturn(Collections.singletonList(current));
+
+    SettlementMission update = TestDataGenerator.defaultSettlementMissionData().id(1L)
+        .version(3L).build();
+    MissionUpdateResult result = service.updateMissions(Collections.singletonList(update));
+
+    // A row without a version is a conflict like any other, rather than failing the batch
+    assertEquals(Collections.emptyList(), result.getUpdatedIds());
+    assertEquals(Collections.singletonList(
+        new MissionUpdateResult.Conflict(1L, Reason.VERSION_MISMATCH, null)),
+        result.getConflicts());
+    verify(this.mockSettlementMissionRpsy, never()).save(update);
+  }
+
   @Test
   public void testMissionExists() {
 
@@ -137,7 +288,8 @@ public class SettlementServiceTest extends ASpringTest {
         .willReturn(true);
 
     SettlementService service =
-        new SettlementService(this.mockSettlementMissionRpsy, this.mockAgreementTransformer);
+        new SettlementService(this.mockSettlementMissionRpsy, this.mockAgreementTransformer,
+            this.mockEntityManager, this.cacheManager, new JitteredCacheWriter(0));
 
     boolean missionExists = service.missionExists(35L);
     assertTrue(missionExists);
@@ -149,10 +301,43 @@ public class SettlementServiceTest extends ASpringTest {
     doNothing().when(this.mockSettlementMissionRpsy).deleteById(35L);
 
     SettlementService service =
-        new SettlementService(this.mockSettlementMissionRpsy, this.mockAgreementTransformer);
+        new SettlementService(this.mockSettlementMissionRpsy, this.mockAgreementTransformer,
+            this.mockEntityManager, this.cacheManager, new JitteredCacheWriter(0));
 
     service.deleteMission(35L);
     boolean missionExists = service.missionExists(35L);
     assertFalse(missionExists);
   }
+
+  @Test
+  public void testDeleteMissions() {
+    Cache cache = cacheManager.getCache(ISettlementMissionRpsy.MISSIONS_CACHE);
+    cache.put(1L, TestDataGenerator.defaultSettlementMissionData().id(1L).build());
+    cache.put(2L, TestDataGenerator.defaultSettlementMissionData().id(2L).build());
+    cache.put(3L, TestDataGenerator.defaultSettlementMissionData().id(3L).build());
+
+    given(this.mockSettlementMissionRpsy.deleteByIdIn(Arrays.asList(1L, 2L))).willReturn(1);
+
+    int deleted = service.deleteMissions(Arrays.asList(1L, 2L, 1L));
+    assertEquals(1, deleted);
+    // The duplicate id is dropped, and every requested id is evicted whether or not it was
+    // deleted. Ids that weren't requested stay cached
+    verify(this.mockSettlementMissionRpsy).deleteByIdIn(Arrays.asList(1L, 2L));
+    assertNull(cache.get(1L));
+    assertNull(cache.get(2L));
+    assertNotNull(cache.get(3L));
+  }
+
+  @Test
+  public void testDeleteMissionsByDepot() {
+    Cache cache = cacheManager.getCache(ISettlementMissionRpsy.MISSIONS_CACHE);
+    cache.put(1L, TestDataGenerator.defaultSettlementMissionData().id(1L).build());
+
+    given(this.mockSettlementMissionRpsy.deleteByDepot("DTC")).willReturn(5);
+    given(this.mockSettlementMissionRpsy.deleteByDepotAndInstrument("DTC", "IBM")).willReturn(2);
+
+    assertEquals(5, service.deleteMissionsByDepot("DTC", null));
+    assertEquals(2, service.deleteMissionsByDepot("DTC", "IBM"));
+    assertNull(cache.get(1L));
+  }
 }
@@ -0,0 +1,98 @@
+package org.galatea.starter.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.net.URI;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.trace.http.HttpTrace;
+
+public class FuseHttpTraceRepositoryTest {
+
+  private MeterRegistry registry;
+
+  private FuseHttpTraceRepository repository;
+
+  @Before
+  public void setup() {
+    registry = new SimpleMeterRegistry();
+  }
+
+  @After
+  public void tearDown() throws InterruptedException {
+    repository.close();
+  }
+
+  @Test
+  public void testTracesWrittenInBackground() throws InterruptedException {
+    repository = newRepository(1024);
+    repository.start();
+
+    for (int i = 0; i < 500; i++) {
+      repository.add(trace(i));
+    }
+
+    // Still available to actuator straight away
+    assertEquals(100, repository.findAll().size());
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (count("http.trace.written") < 500 && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(500, count("http.trace.written"), 0);
+    assertEquals(500, count("http.trace.published"), 0);
+    assertEquals(0, count("http.trace.dropped"), 0);
+    assertEquals(0, registry.get("http.trace.pending").gauge().value(), 0);
+  }
+
+  @Test
+  public void testTracesDroppedWhenQueueFull() {
+    // Not started, so nothing takes traces off the queue
+    repository = newRepository(16);
+
+    for (int i = 0; i < 50; i++) {
+      repository.add(trace(i));
+    }
+
+    assertEquals(16, count("http.trace.published"), 0);
+    assertEquals(34, count("http.trace.dropped"), 0);
+    assertEquals(16, repository.getPending());
+  }
+
+  @Test
+  public void testQueuedTracesWrittenOnClose() throws InterruptedException {
+    repository = newRepository(64);
+    for (int i = 0; i < 20; i++) {
+      repository.add(trace(i));
+    }
+
+    repository.start();
+    repository.close();
+
+    assertEquals(20, count("http.trace.written"), 0);
+    assertEquals(0, repository.getPending());
+  }
+
+  private FuseHttpTraceRepository newRepository(final int capacity) {
+    FuseHttpTraceRepository newRepository =
+        new FuseHttpTraceRepository(new ObjectMapper(), capacity, 32, 10);
+    newRepository.bindTo(registry);
+    return newRepository;
+  }
+
+  private double count(final String name) {
+    return registry.get(name).functionCounter().count();
+  }
+
+  private static HttpTrace trace(final int id) {
+    HttpTrace.Request request = new HttpTrace.Request("GET", URI.create("/trace/" + id),
+        Collections.emptyMap(), null);
+    return new HttpTrace(request, null, Instant.now(), null, null, 1L);
+  }
+}
@@ -0,0 +1,62 @@
+package org.galatea.starter.utils.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.ehcache.EhCacheCacheManager;
+
+public class CacheHitRatioMetricsTest {
+
+  private CacheManager ehcacheManager;
+
+  private EhCacheCacheManager cacheManager;
+
+  private MeterRegistry registry;
+
+  @Before
+  public void setup() {
+    ehcacheManager = new CacheManager(new Configuration().name("cacheHitRatioMetricsTest"));
+    ehcacheManager.addCache(new net.sf.ehcache.Cache(new CacheConfiguration("missions", 100)));
+    ehcacheManager.addCache(new net.sf.ehcache.Cache(new CacheConfiguration("prices", 100)));
+    cacheManager = new EhCacheCacheManager(ehcacheManager);
+    cacheManager.afterPropertiesSet();
+
+    registry = new SimpleMeterRegistry();
+    new CacheHitRatioMetrics(cacheManager).bindTo(registry);
+  }
+
+  @After
+  public void tearDown() {
+    ehcacheManager.shutdown();
+  }
+
+  @Test
+  public void testHitRatioPerCache() {
+    assertTrue(Double.isNaN(hitRatio("missions")));
+
+    Cache missions = cacheManager.getCache("missions");
+    missions.put(1L, "mission");
+    missions.get(1L);
+    missions.get(1L);
+    missions.get(1L);
+    assertNull(missions.get(2L));
+
+    assertEquals(0.75, hitRatio("missions"), 0);
+    // Each cache is counted on its own
+    assertTrue(Double.isNaN(hitRatio("prices")));
+  }
+
+  private double hitRatio(final String cacheName) {
+    return registry.get("cache.hit.ratio").tag("cache", cacheName).gauge().value();
+  }
+}
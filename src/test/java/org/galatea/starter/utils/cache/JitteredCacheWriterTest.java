@@ -0,0 +1,95 @@
+package org.galatea.starter.utils.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.cache.ehcache.EhCacheCache;
+
+public class JitteredCacheWriterTest {
+
+  private static final int TIME_TO_LIVE_SECONDS = 1000;
+
+  private CacheManager ehcacheManager;
+
+  private Ehcache ehcache;
+
+  private Cache cache;
+
+  @Before
+  public void setup() {
+    ehcacheManager = new CacheManager(new Configuration().name("jitteredCacheWriterTest"));
+    ehcacheManager.addCache(new net.sf.ehcache.Cache(new CacheConfiguration("test", 1000)
+        .timeToLiveSeconds(TIME_TO_LIVE_SECONDS)));
+    ehcache = ehcacheManager.getEhcache("test");
+    cache = new EhCacheCache(ehcache);
+  }
+
+  @After
+  public void tearDown() {
+    ehcacheManager.shutdown();
+  }
+
+  @Test
+  public void testTimeToLiveIsSpread() {
+    JitteredCacheWriter writer = new JitteredCacheWriter(0.2);
+
+    Set<Integer> timesToLive = new HashSet<>();
+    for (int i = 0; i < 100; i++) {
+      writer.put(cache, i, "value" + i);
+      int timeToLive = ehcache.get(i).getTimeToLive();
+      assertTrue("Time to live was " + timeToLive,
+          timeToLive >= 0.8 * TIME_TO_LIVE_SECONDS && timeToLive <= TIME_TO_LIVE_SECONDS);
+      timesToLive.add(timeToLive);
+    }
+    assertTrue(timesToLive.size() > 1);
+    // Values put directly are read back through the Spring cache as they are
+    assertEquals("value1", cache.get(1, String.class));
+  }
+
+  @Test
+  public void testPutIfAbsentKeepsExistingValue() {
+    JitteredCacheWriter writer = new JitteredCacheWriter(0.2);
+
+    writer.putIfAbsent(cache, 1, "first");
+    writer.putIfAbsent(cache, 1, "second");
+    assertEquals("first", cache.get(1, String.class));
+
+    writer.put(cache, 1, "third");
+    assertEquals("third", cache.get(1, String.class));
+  }
+
+  @Test
+  public void testNoJitterLeavesTimeToLiveAlone() {
+    new JitteredCacheWriter(0).put(cache, 1, "value");
+
+    // The entry takes the cache's time to live
+    assertFalse(ehcache.get(1).isLifespanSet());
+  }
+
+  @Test
+  public void testOtherCachesArePutAsTheyAre() {
+    Cache mapCache = new ConcurrentMapCache("test");
+    JitteredCacheWriter writer = new JitteredCacheWriter(0.2);
+
+    writer.put(mapCache, 1, "first");
+    writer.putIfAbsent(mapCache, 1, "second");
+    assertEquals("first", mapCache.get(1, String.class));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testJitterOutOfRange() {
+    new JitteredCacheWriter(1.5);
+  }
+}
@@ -0,0 +1,88 @@
+package org.galatea.starter.utils.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.Test;
+
+public class BoundedRingBufferTest {
+
+  @Test
+  public void testFirstInFirstOut() {
+    BoundedRingBuffer<Integer> buffer = new BoundedRingBuffer<>(4);
+    buffer.offer(1);
+    buffer.offer(2);
+    buffer.offer(3);
+
+    assertEquals(3, buffer.size());
+    assertEquals(Integer.valueOf(1), buffer.poll());
+    assertEquals(Integer.valueOf(2), buffer.poll());
+    assertEquals(Integer.valueOf(3), buffer.poll());
+    assertNull(buffer.poll());
+  }
+
+  @Test
+  public void testOfferFailsWhenFull() {
+    BoundedRingBuffer<Integer> buffer = new BoundedRingBuffer<>(3);
+    // Rounded up to a power of two
+    assertEquals(4, buffer.capacity());
+    for (int i = 0; i < 4; i++) {
+      assertTrue(buffer.offer(i));
+    }
+
+    assertFalse(buffer.offer(4));
+    buffer.poll();
+    assertTrue(buffer.offer(4));
+  }
+
+  @Test
+  public void testWrapsAround() {
+    BoundedRingBuffer<Integer> buffer = new BoundedRingBuffer<>(2);
+    List<Integer> drained = new ArrayList<>();
+
+    for (int i = 0; i < 10; i += 2) {
+      buffer.offer(i);
+      buffer.offer(i + 1);
+      assertEquals(2, buffer.drainTo(drained, 5));
+    }
+
+    assertEquals(IntStream.range(0, 10).boxed().collect(Collectors.toList()), drained);
+  }
+
+  @Test
+  public void testManyProducers() {
+    BoundedRingBuffer<Integer> buffer = new BoundedRingBuffer<>(1024);
+    Set<Integer> taken = ConcurrentHashMap.newKeySet();
+
+    List<CompletableFuture<Void>> producers = IntStream.range(0, 8)
+        .mapToObj(t -> CompletableFuture.runAsync(() -> {
+          for (int i = 0; i < 10_000; i++) {
+            // Spin while the queue's full, taking something off it to make room
+            while (!buffer.offer(t * 10_000 + i)) {
+              Integer item = buffer.poll();
+              if (item != null) {
+                taken.add(item);
+              }
+            }
+          }
+        }))
+        .collect(Collectors.toList());
+    producers.forEach(CompletableFuture::join);
+    Integer item;
+    while ((item = buffer.poll()) != null) {
+      taken.add(item);
+    }
+
+    // Nothing lost, nothing taken twice
+    assertEquals(80_000, taken.size());
+  }
+}
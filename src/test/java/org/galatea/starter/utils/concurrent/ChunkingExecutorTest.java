@@ -0,0 +1,149 @@
+package org.galatea.starter.utils.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.After;
+import org.junit.Test;
+
+public class ChunkingExecutorTest {
+
+  private final ChunkingExecutor executor =
+      new ChunkingExecutor(Executors.newFixedThreadPool(4), 3, 4);
+
+  @After
+  public void tearDown() {
+    executor.close();
+  }
+
+  @Test
+  public void testExecuteMergesChunksInOrder() {
+    List<Integer> inputs = IntStream.range(0, 10).boxed().collect(Collectors.toList());
+    Set<List<Integer>> chunks = ConcurrentHashMap.newKeySet();
+
+    List<String> results = executor.execute(inputs, chunk -> {
+      chunks.add(chunk);
+      return chunk.stream().map(String::valueOf).collect(Collectors.toList());
+    });
+
+    assertEquals(Arrays.asList("0", "1", "2", "3", "4", "5", "6", "7", "8", "9"), results);
+    assertEquals(4, chunks.size());
+    assertTrue(chunks.contains(Collections.singletonList(9)));
+  }
+
+  @Test
+  public void testExecuteRunsChunksConcurrently() {
+    // Every chunk waits for all the others to start, so this would never finish if the chunks ran
+    // one after another
+    CountDownLatch started = new CountDownLatch(3);
+
+    List<Integer> results = executor.execute(Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 9), chunk -> {
+      started.countDown();
+      try {
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return chunk;
+    });
+
+    assertEquals(9, results.size());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testExecuteRethrowsChunkFailure() {
+    executor.execute(Arrays.asList(1, 2, 3, 4, 5, 6), chunk -> {
+      if (chunk.contains(4)) {
+        throw new IllegalStateException("IEX is down");
+      }
+      return chunk;
+    });
+  }
+
+  @Test
+  public void testExecuteEmptyInput() {
+    assertTrue(executor.execute(Collections.emptyList(), chunk -> chunk).isEmpty());
+  }
+
+  @Test
+  public void testExecuteAsyncCapsCallsInFlight() {
+    ChunkingExecutor capped = new ChunkingExecutor(Runnable::run, 1, 2);
+    List<List<Integer>> chunks = new ArrayList<>();
+    List<CompletableFuture<List<Integer>>> calls = new ArrayList<>();
+
+    CompletableFuture<List<Integer>> results = capped.executeAsync(Arrays.asList(1, 2, 3, 4),
+        chunk -> {
+          CompletableFuture<List<Integer>> call = new CompletableFuture<>();
+          chunks.add(chunk);
+          calls.add(call);
+          return call;
+        });
+
+    // Only two calls start until one of them completes
+    assertEquals(2, calls.size());
+    calls.get(1).complete(chunks.get(1));
+    assertEquals(3, calls.size());
+    calls.get(0).complete(chunks.get(0));
+    calls.get(2).complete(chunks.get(2));
+    assertEquals(4, calls.size());
+    assertFalse(results.isDone());
+    calls.get(3).complete(chunks.get(3));
+
+    assertEquals(Arrays.asList(1, 2, 3, 4), results.join());
+  }
+
+  @Test
+  public void testSubmitFailsWhenRejected() {
+    ChunkingExecutor full = new ChunkingExecutor(command -> {
+      throw new RejectedExecutionException("Full");
+    }, 1, 1);
+
+    CompletableFuture<Integer> result = full.submit(1, input -> input);
+
+    try {
+      result.join();
+      fail("Expected the rejection");
+    } catch (CompletionException e) {
+      assertTrue(e.getCause() instanceof RejectedExecutionException);
+    }
+  }
+
+  @Test
+  public void testSubmitInterruptsCallOnTimeout() throws Exception {
+    CountDownLatch interrupted = new CountDownLatch(1);
+
+    CompletableFuture<Integer> result = executor.submit(1, input -> {
+      try {
+        Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+      } catch (InterruptedException e) {
+        interrupted.countDown();
+      }
+      return input;
+    }).orTimeout(50, TimeUnit.MILLISECONDS);
+
+    try {
+      result.join();
+      fail("Expected the timeout");
+    } catch (CompletionException e) {
+      assertTrue(e.getCause() instanceof TimeoutException);
+    }
+    assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+  }
+}
@@ -0,0 +1,70 @@
+package org.galatea.starter.utils.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class RequestCoalescerTest {
+
+  private final RequestCoalescer<String, Integer> coalescer = new RequestCoalescer<>();
+
+  @Test
+  public void testConcurrentRequestsShareOneCall() throws Exception {
+    AtomicInteger calls = new AtomicInteger();
+    CountDownLatch inCall = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+
+    CompletableFuture<Integer> first = CompletableFuture.supplyAsync(
+        () -> coalescer.get("FB", () -> {
+          inCall.countDown();
+          await(release);
+          return calls.incrementAndGet();
+        }));
+    assertTrue(inCall.await(5, TimeUnit.SECONDS));
+
+    CompletableFuture<Integer> second = new CompletableFuture<>();
+    Thread secondCaller = new Thread(
+        () -> second.complete(coalescer.get("FB", calls::incrementAndGet)));
+    secondCaller.start();
+    // Only let the first call finish once the second request is waiting on it
+    while (secondCaller.getState() != Thread.State.WAITING) {
+      Thread.sleep(10);
+    }
+    release.countDown();
+
+    assertEquals(Integer.valueOf(1), first.get(5, TimeUnit.SECONDS));
+    assertEquals(Integer.valueOf(1), second.get(5, TimeUnit.SECONDS));
+    assertEquals(1, calls.get());
+    assertEquals(0, coalescer.inFlightCount());
+  }
+
+  @Test
+  public void testCompletedRequestsAreNotCached() {
+    AtomicInteger calls = new AtomicInteger();
+
+    coalescer.get("FB", calls::incrementAndGet);
+    coalescer.get("FB", calls::incrementAndGet);
+
+    assertEquals(2, calls.get());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testFailureIsRethrown() {
+    coalescer.get("FB", () -> {
+      throw new IllegalStateException("IEX is down");
+    });
+  }
+
+  private static void await(final CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,119 @@
+package org.galatea.starter.utils.http;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.containing;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.ok;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.junit.Assert.assertEquals;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import feign.Feign;
+import feign.Request;
+import feign.RequestLine;
+import feign.RetryableException;
+import feign.Retryer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class PooledFeignClientTest {
+
+  @Rule
+  public WireMockRule wireMockRule = new WireMockRule(options().dynamicPort());
+
+  private PoolingHttpClientConnectionManager connectionManager;
+
+  private CloseableHttpClient httpClient;
+
+  private Quotes quotes;
+
+  @Before
+  public void setup() {
+    connectionManager = new PoolingHttpClientConnectionManager();
+    httpClient = HttpClients.custom().setConnectionManager(connectionManager).build();
+    quotes = Feign.builder()
+        .client(new PooledFeignClient(httpClient))
+        .options(new Request.Options(1000, 200))
+        .retryer(Retryer.NEVER_RETRY)
+        .target(Quotes.class, "http://localhost:" + wireMockRule.port());
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    httpClient.close();
+  }
+
+  @Test
+  public void testConnectionReused() {
+    wireMockRule.stubFor(get(urlEqualTo("/quote")).willReturn(ok("IBM 140.2")));
+
+    for (int i = 0; i < 3; i++) {
+      assertEquals("IBM 140.2", quotes.getQuote());
+    }
+
+    // One connection, handed back to the pool after each response was read
+    assertEquals(0, connectionManager.getTotalStats().getLeased());
+    assertEquals(1, connectionManager.getTotalStats().getAvailable());
+  }
+
+  @Test
+  public void testGzipResponseUnpacked() throws IOException {
+    wireMockRule.stubFor(get(urlEqualTo("/quote")).willReturn(aResponse()
+        .withHeader("Content-Encoding", "gzip")
+        .withBody(gzip("IBM 140.2"))));
+
+    assertEquals("IBM 140.2", quotes.getQuote());
+    wireMockRule.verify(getRequestedFor(urlEqualTo("/quote"))
+        .withHeader("Accept-Encoding", containing("gzip")));
+  }
+
+  @Test(expected = RetryableException.class)
+  public void testReadTimeout() {
+    wireMockRule.stubFor(get(urlEqualTo("/quote")).willReturn(ok("IBM 140.2")
+        .withFixedDelay(1000)));
+
+    quotes.getQuote();
+  }
+
+  @Test
+  public void testPoolMetrics() {
+    wireMockRule.stubFor(get(urlEqualTo("/quote")).willReturn(ok("IBM 140.2")));
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    new ConnectionPoolMetrics(connectionManager, "test").bindTo(registry);
+
+    quotes.getQuote();
+
+    assertEquals(1, registry.get("http.client.pool.available").tag("pool", "test").gauge().value(),
+        0);
+    assertEquals(0, registry.get("http.client.pool.leased").tag("pool", "test").gauge().value(),
+        0);
+    assertEquals(connectionManager.getMaxTotal(),
+        registry.get("http.client.pool.max").tag("pool", "test").gauge().value(), 0);
+  }
+
+  private static byte[] gzip(final String body) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+      gzip.write(body.getBytes(StandardCharsets.UTF_8));
+    }
+    return bytes.toByteArray();
+  }
+
+  interface Quotes {
+
+    @RequestLine("GET /quote")
+    String getQuote();
+  }
+}
@@ -4,6 +4,8 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -100,6 +102,18 @@ public class CsvSerializerTest {
     assertEquals(expected, actual);
   }
 
+  @Test
+  public void serializeToCsv_streaming() throws Exception {
+    List<BasicClass> rows = Arrays.asList(new BasicClass("foo", "bar"),
+        new BasicClass("baz", null));
+
+    String expected = CsvSerializer.serializeToCsv(rows, BasicClass.class);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    CsvSerializer.serializeToCsv(rows, BasicClass.class, out);
+    assertEquals(expected, new String(out.toByteArray(), StandardCharsets.UTF_8));
+  }
+
   @AllArgsConstructor
   @NoArgsConstructor
   @Getter
@@ -1,5 +1,7 @@
 package org.galatea.starter.utils.http.converter;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
@@ -160,6 +162,36 @@ public class XlsxSerializerTest {
     assertTrue(XlsxComparator.equals(expected, actual));
   }
 
+  @Test
+  public void serializeToXlsx_streaming() throws Exception {
+    List<BasicClass> rows = Arrays.asList(new BasicClass("foo", "bar"),
+        new BasicClass("baz", null), new BasicClass("qux", "quux"));
+
+    byte[] expected = XlsxSerializer.serializeToXlsx(rows, BasicClass.class);
+
+    // A window of 1 forces every row but the last to be flushed out of memory before the
+    // spreadsheet is written
+    byte[] actual;
+    try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
+      XlsxSerializer.serializeToXlsx(rows, BasicClass.class, baos, 1);
+      actual = baos.toByteArray();
+    }
+    assertTrue(XlsxComparator.equals(expected, actual));
+  }
+
+  @Test
+  public void getColumns_cachedPerClass() {
+    List<XlsxSerializer.Column> columns = XlsxSerializer.getColumns(ClassHoldingOtherClass.class);
+
+    // The second lookup should reuse the columns built by the first rather than re-reading the class
+    assertSame(columns, XlsxSerializer.getColumns(ClassHoldingOtherClass.class));
+
+    ClassHoldingOtherClass row = new ClassHoldingOtherClass(7, new BasicClass("foo", "bar"));
+    assertEquals("field1", columns.get(0).getHeader());
+    assertEquals(7, columns.get(0).read(row));
+    assertSame(row.field2, columns.get(1).read(row));
+  }
+
   private static byte[] writeSpreadsheetToBytes(final Workbook wb) throws IOException {
     try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
       wb.write(baos);
@@ -0,0 +1,63 @@
+package org.galatea.starter.utils.logging;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.Test;
+import org.springframework.http.ResponseEntity;
+
+public class LogFormatTest {
+
+  private static final List<Integer> THOUSAND =
+      IntStream.range(0, 1000).boxed().collect(Collectors.toList());
+
+  @Test
+  public void testSmallValuesUnchanged() {
+    assertEquals("null", LogFormat.abbreviate(null, 3, 100));
+    assertEquals("abc", LogFormat.abbreviate("abc", 3, 100));
+    assertEquals("[1, 2, 3]", LogFormat.abbreviate(Arrays.asList(1, 2, 3), 3, 100));
+    assertEquals("[]", LogFormat.abbreviate(Collections.emptySet(), 3, 100));
+  }
+
+  @Test
+  public void testCollectionTruncated() {
+    assertEquals("[0, 1, 2, ... 997 more]", LogFormat.abbreviate(THOUSAND, 3, 100));
+  }
+
+  @Test
+  public void testIterableCounted() {
+    Iterable<Integer> iterable = THOUSAND::iterator;
+
+    assertEquals("[0, 1, ... 998 more]", LogFormat.abbreviate(iterable, 2, 100));
+  }
+
+  @Test
+  public void testMapAndArraysTruncated() {
+    assertEquals("[a=1, ... 1 more]",
+        LogFormat.abbreviate(ImmutableMap.of("a", 1, "b", 2), 1, 100));
+    assertEquals("[1, 2, ... 2 more]", LogFormat.abbreviate(new long[] {1, 2, 3, 4}, 2, 100));
+    assertEquals("[x, ... 1 more]", LogFormat.abbreviate(new String[] {"x", "y"}, 1, 100));
+  }
+
+  @Test
+  public void testNestedValuesTruncated() {
+    assertEquals("Optional[[0, ... 999 more]]",
+        LogFormat.abbreviate(Optional.of(THOUSAND), 1, 100));
+    assertEquals("ResponseEntity[[0, ... 999 more]]",
+        LogFormat.abbreviate(ResponseEntity.ok(THOUSAND), 1, 100));
+    assertEquals("[[0, ... 999 more], ... 1 more]",
+        LogFormat.abbreviate(Arrays.asList(THOUSAND, THOUSAND), 1, 100));
+  }
+
+  @Test
+  public void testLengthCapped() {
+    assertEquals("abcde...", LogFormat.abbreviate("abcdefghij", 3, 5));
+    assertEquals("[0, 1...", LogFormat.abbreviate(THOUSAND, 100, 5));
+  }
+}
@@ -0,0 +1,120 @@
+package org.galatea.starter.utils.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.Logger;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+public class LoggedAspectTest {
+
+  private final List<String> messages = new ArrayList<>();
+
+  private Logger logger;
+
+  private AbstractAppender appender;
+
+  private Level level;
+
+  private Calls calls;
+
+  @Before
+  public void setup() {
+    // Named as slf4j names it, which log4j doesn't for nested classes
+    logger = (Logger) LogManager.getLogger(Calls.class.getName());
+    level = logger.getLevel();
+    appender = new AbstractAppender("calls", null, null) {
+      @Override
+      public void append(final LogEvent event) {
+        messages.add(event.getLevel() + " " + event.getMessage().getFormattedMessage());
+      }
+    };
+    appender.start();
+    logger.addAppender(appender);
+    Configurator.setLevel(Calls.class.getName(), Level.DEBUG);
+
+    AspectJProxyFactory factory = new AspectJProxyFactory(new Calls());
+    factory.setProxyTargetClass(true);
+    factory.addAspect(new LoggedAspect());
+    calls = factory.getProxy();
+  }
+
+  @After
+  public void tearDown() {
+    logger.removeAppender(appender);
+    Configurator.setLevel(Calls.class.getName(), level);
+  }
+
+  @Test
+  public void testCallLogged() {
+    calls.range(3);
+
+    assertEquals(2, messages.size());
+    assertEquals("DEBUG Entering range(3)", messages.get(0));
+    assertEquals("DEBUG Exiting range returning [0, 1, 2]", messages.get(1));
+  }
+
+  @Test
+  public void testLargeValuesTruncated() {
+    calls.range(1000);
+
+    assertEquals("DEBUG Exiting range returning [0, 1, 2, 3, 4, ... 995 more]", messages.get(1));
+  }
+
+  @Test
+  public void testMethodLevelsOverrideClass() {
+    calls.quiet();
+
+    assertEquals(1, messages.size());
+    assertEquals("INFO Exiting quiet returning done", messages.get(0));
+  }
+
+  @Test
+  public void testThrowLogged() {
+    try {
+      calls.fail();
+    } catch (IllegalStateException e) {
+      // expected
+    }
+
+    assertEquals("DEBUG Exiting fail by throwing java.lang.IllegalStateException: nope",
+        messages.get(1));
+  }
+
+  @Test
+  public void testNothingLoggedWhenLevelDisabled() {
+    Configurator.setLevel(Calls.class.getName(), Level.WARN);
+
+    assertEquals(3, calls.range(3).size());
+    assertTrue(messages.isEmpty());
+  }
+
+  @Logged(maxElements = 5)
+  static class Calls {
+
+    public List<Integer> range(final int size) {
+      return IntStream.range(0, size).boxed().collect(Collectors.toList());
+    }
+
+    @Logged(enterLevel = org.slf4j.event.Level.TRACE, exitLevel = org.slf4j.event.Level.INFO)
+    public String quiet() {
+      return "done";
+    }
+
+    public void fail() {
+      throw new IllegalStateException("nope");
+    }
+  }
+}
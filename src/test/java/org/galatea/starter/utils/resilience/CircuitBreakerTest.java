@@ -0,0 +1,100 @@
+package org.galatea.starter.utils.resilience;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.galatea.starter.utils.resilience.CircuitBreaker.State;
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+  private static final long OPEN_MILLIS = 100;
+
+  // Opens once half of at least 4 of the last 10 calls have failed
+  private final CircuitBreaker breaker = new CircuitBreaker("test", 10, 4, 0.5, OPEN_MILLIS,
+      error -> !(error instanceof IllegalArgumentException));
+
+  @Test
+  public void testOpensAtFailureRate() {
+    succeed(2);
+    fail(1);
+    assertEquals(State.CLOSED, breaker.getState());
+
+    fail(1);
+
+    assertEquals(State.OPEN, breaker.getState());
+    assertFalse(breaker.tryAcquirePermission());
+    assertEquals(1, breaker.getTrips());
+  }
+
+  @Test
+  public void testNeedsMinimumCalls() {
+    fail(3);
+
+    assertEquals(State.CLOSED, breaker.getState());
+    assertTrue(breaker.tryAcquirePermission());
+  }
+
+  @Test
+  public void testOnlyRecentCallsCount() {
+    fail(3);
+    // The early failures drop out of the window of 10 calls
+    succeed(10);
+    fail(4);
+
+    assertEquals(State.CLOSED, breaker.getState());
+  }
+
+  @Test
+  public void testIgnoredErrorsCountAsSuccesses() {
+    for (int i = 0; i < 10; i++) {
+      assertTrue(breaker.tryAcquirePermission());
+      breaker.onError(new IllegalArgumentException("Unknown symbol"));
+    }
+
+    assertEquals(State.CLOSED, breaker.getState());
+  }
+
+  @Test
+  public void testSuccessfulTrialCloses() throws Exception {
+    fail(4);
+    Thread.sleep(OPEN_MILLIS + 50);
+
+    assertTrue(breaker.tryAcquirePermission());
+    assertEquals(State.HALF_OPEN, breaker.getState());
+    // Only the one trial call is let through
+    assertFalse(breaker.tryAcquirePermission());
+    breaker.onSuccess();
+
+    assertEquals(State.CLOSED, breaker.getState());
+    assertTrue(breaker.tryAcquirePermission());
+  }
+
+  @Test
+  public void testFailedTrialReopens() throws Exception {
+    fail(4);
+    Thread.sleep(OPEN_MILLIS + 50);
+
+    assertTrue(breaker.tryAcquirePermission());
+    breaker.onError(new IllegalStateException("IEX is down"));
+
+    assertEquals(State.OPEN, breaker.getState());
+    assertFalse(breaker.tryAcquirePermission());
+    assertEquals(1, breaker.getTrips());
+  }
+
+  private void succeed(final int calls) {
+    for (int i = 0; i < calls; i++) {
+      assertTrue(breaker.tryAcquirePermission());
+      breaker.onSuccess();
+    }
+  }
+
+  private void fail(final int calls) {
+    for (int i = 0; i < calls; i++) {
+      assertTrue(breaker.tryAcquirePermission());
+      breaker.onError(new IllegalStateException("IEX is down"));
+    }
+  }
+}
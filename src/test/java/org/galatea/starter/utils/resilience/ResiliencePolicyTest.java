@@ -0,0 +1,151 @@
+package org.galatea.starter.utils.resilience;
+
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+public class ResiliencePolicyTest {
+
+  private final MeterRegistry registry = new SimpleMeterRegistry();
+
+  private final ExecutorService hedgeExecutor = Executors.newCachedThreadPool();
+
+  @After
+  public void tearDown() {
+    hedgeExecutor.shutdownNow();
+  }
+
+  @Test
+  public void testBulkheadTurnsAwayExcessCalls() throws Exception {
+    ResiliencePolicy policy = policy(1, null);
+    CountDownLatch inCall = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> policy.call(() -> {
+      inCall.countDown();
+      await(release);
+      return "first";
+    }));
+    assertTrue(inCall.await(5, TimeUnit.SECONDS));
+
+    try {
+      policy.call(() -> "second");
+      fail("Expected the second call to be turned away");
+    } catch (CallNotPermittedException e) {
+      assertEquals(1, count("resilience.calls.rejected", "bulkhead"), 0);
+    }
+    release.countDown();
+
+    assertEquals("first", first.get(5, TimeUnit.SECONDS));
+    assertEquals("third", policy.call(() -> "third"));
+  }
+
+  @Test
+  public void testFallbackServedWhileCircuitOpen() {
+    ResiliencePolicy policy = policy(10, null);
+    for (int i = 0; i < 2; i++) {
+      assertEquals("last known good", policy.call(() -> {
+        throw new IllegalStateException("IEX is down");
+      }, () -> "last known good"));
+    }
+
+    // The circuit is open, so IEX isn't called at all
+    AtomicInteger calls = new AtomicInteger();
+    assertEquals("last known good", policy.call(() -> "price " + calls.incrementAndGet(),
+        () -> "last known good"));
+
+    assertEquals(0, calls.get());
+    assertEquals(1, count("resilience.circuit.trips", null), 0);
+    assertEquals(1, count("resilience.calls.rejected", "circuit"), 0);
+    assertEquals(3, count("resilience.fallbacks", null), 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testFallbackNotServedForBadRequests() {
+    policy(10, null).call(() -> {
+      throw new IllegalArgumentException("Unknown symbol");
+    }, () -> "last known good");
+  }
+
+  @Test
+  public void testAsyncFallback() {
+    ResiliencePolicy policy = policy(10, null);
+
+    CompletableFuture<String> result = policy.callAsync(
+        () -> CompletableFuture.failedFuture(new IllegalStateException("IEX is down")),
+        () -> "last known good");
+
+    assertEquals("last known good", result.join());
+    assertEquals(10, registry.get("resilience.bulkhead.available").gauge().value(), 0);
+  }
+
+  @Test
+  public void testSlowCallHedged() {
+    ResiliencePolicy policy = policy(10, hedgeExecutor);
+    // Give the policy an idea of how long calls usually take
+    for (int i = 0; i < 20; i++) {
+      policy.call(() -> sleep(5));
+    }
+
+    // The first attempt hangs, so the hedged second attempt is the one that answers
+    CountDownLatch never = new CountDownLatch(1);
+    AtomicInteger attempts = new AtomicInteger();
+    long start = System.currentTimeMillis();
+    String result = policy.call(() -> {
+      if (attempts.incrementAndGet() == 1) {
+        await(never);
+      }
+      return "hedged";
+    });
+
+    assertEquals("hedged", result);
+    assertThat(System.currentTimeMillis() - start, lessThan(2000L));
+    assertEquals(1, count("resilience.hedges", null), 0);
+  }
+
+  private ResiliencePolicy policy(final int maxConcurrentCalls,
+      final ExecutorService hedgeExecutor) {
+    // Opens once both of the last 2 calls have failed, and stays open for the rest of the test
+    CircuitBreaker breaker = new CircuitBreaker("test", 2, 2, 1.0, 60_000,
+        error -> !(error instanceof IllegalArgumentException));
+    ResiliencePolicy policy = new ResiliencePolicy("test", maxConcurrentCalls, breaker,
+        hedgeExecutor);
+    policy.bindTo(registry);
+    return policy;
+  }
+
+  private double count(final String name, final String reason) {
+    return reason == null
+        ? registry.get(name).tag("policy", "test").functionCounter().count()
+        : registry.get(name).tags("policy", "test", "reason", reason).functionCounter().count();
+  }
+
+  private static String sleep(final long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return "slept";
+  }
+
+  private static void await(final CountDownLatch latch) {
+    try {
+      latch.await(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,42 @@
+package org.galatea.starter.utils.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.servlet.AsyncContext;
+import org.junit.Test;
+import org.springframework.boot.actuate.trace.http.HttpExchangeTracer;
+import org.springframework.boot.actuate.trace.http.InMemoryHttpTraceRepository;
+import org.springframework.boot.actuate.trace.http.Include;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class FuseHttpTraceFilterAsyncTest {
+
+  private final FuseHttpTraceFilter filter = new FuseHttpTraceFilter(
+      new InMemoryHttpTraceRepository(), new HttpExchangeTracer(Include.defaultIncludes()),
+      path -> false, new SnowflakeRequestIdGenerator(0), PayloadCapturePolicy.NONE,
+      new RouteLatencyRecorder(new SimpleMeterRegistry(), Duration.ofMinutes(1), 1),
+      new TraceSampler(0, 0, Collections.emptyMap(), false));
+
+  @Test
+  public void testWriterFlushedWhenAsyncResponseCompletes() throws Exception {
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/stream");
+    request.setAsyncSupported(true);
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    AtomicReference<AsyncContext> asyncContext = new AtomicReference<>();
+
+    filter.doFilter(request, response, (req, res) -> asyncContext.set(req.startAsync(req, res)));
+    assertTrue(request.isAsyncStarted());
+
+    // Written after the filter has returned, as an async handler would
+    asyncContext.get().getResponse().getWriter().print("written later");
+    asyncContext.get().complete();
+
+    assertEquals("written later", response.getContentAsString());
+  }
+}
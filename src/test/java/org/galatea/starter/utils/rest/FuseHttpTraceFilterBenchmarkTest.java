@@ -0,0 +1,72 @@
+package org.galatea.starter.utils.rest;
+
+import static org.galatea.starter.utils.rest.FuseHttpTraceFilterConcurrencyTest.run;
+import static org.galatea.starter.utils.rest.FuseHttpTraceFilterConcurrencyTest.sample;
+
+import java.util.Random;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.galatea.starter.BenchmarkTestCategory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Measures the overhead the trace filter adds to each request when 64 threads are handling
+ * requests at once.
+ *
+ * <p>First for each way of generating request ids. Requests are for a skipped path, so what's
+ * measured is generating the id and putting it in the MDC rather than the tracing itself. Also
+ * counts how many ids collide: the shared java.util.Random the filter used to use only generated
+ * 31 bit ids, so some are expected to collide at this volume.
+ *
+ * <p>Then for tracing 100%, 10% and 1% of requests.
+ */
+@Slf4j
+@Category(BenchmarkTestCategory.class)
+public class FuseHttpTraceFilterBenchmarkTest {
+
+  private static final int THREADS = 64;
+
+  private static final int REQUESTS_PER_THREAD = 5_000;
+
+  private Level filterLogLevel;
+
+  @Before
+  public void setup() {
+    // Logging every request would swamp what's being measured
+    filterLogLevel = LogManager.getLogger(FuseHttpTraceFilter.class).getLevel();
+    Configurator.setLevel(FuseHttpTraceFilter.class.getName(), Level.WARN);
+  }
+
+  @After
+  public void tearDown() {
+    Configurator.setLevel(FuseHttpTraceFilter.class.getName(), filterLogLevel);
+  }
+
+  @Test
+  public void testRequestIdGenerators() throws Exception {
+    Random shared = new Random();
+    IRequestIdGenerator sharedRandom = () -> Integer.toString(shared.nextInt(Integer.MAX_VALUE));
+
+    // Twice each, the first time to warm up
+    for (int i = 0; i < 2; i++) {
+      run("shared Random", sharedRandom, THREADS, REQUESTS_PER_THREAD);
+      run("thread local random", new RandomRequestIdGenerator(), THREADS, REQUESTS_PER_THREAD);
+      run("snowflake", new SnowflakeRequestIdGenerator(0), THREADS, REQUESTS_PER_THREAD);
+    }
+  }
+
+  @Test
+  public void testSampling() throws Exception {
+    // Twice each, the first time to warm up
+    for (int i = 0; i < 2; i++) {
+      for (double probability : new double[] {1, 0.1, 0.01}) {
+        sample(probability, THREADS, REQUESTS_PER_THREAD);
+      }
+    }
+  }
+}
@@ -0,0 +1,165 @@
+package org.galatea.starter.utils.rest;
+
+import static org.junit.Assert.assertEquals;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import javax.servlet.FilterChain;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.MDC;
+import org.springframework.boot.actuate.trace.http.HttpExchangeTracer;
+import org.springframework.boot.actuate.trace.http.HttpTrace;
+import org.springframework.boot.actuate.trace.http.HttpTraceRepository;
+import org.springframework.boot.actuate.trace.http.InMemoryHttpTraceRepository;
+import org.springframework.boot.actuate.trace.http.Include;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * Sends requests through the trace filter from several threads at once, checking that request ids
+ * don't collide and that the share of requests traced matches the sampling probability. Kept small
+ * enough for the unit test run; FuseHttpTraceFilterBenchmarkTest measures throughput with the same
+ * helpers at a larger scale.
+ */
+@Slf4j
+public class FuseHttpTraceFilterConcurrencyTest {
+
+  private static final int THREADS = 8;
+
+  private static final int REQUESTS_PER_THREAD = 1_000;
+
+  private Level filterLogLevel;
+
+  @Before
+  public void setup() {
+    // Logging every request would swamp the test output
+    filterLogLevel = LogManager.getLogger(FuseHttpTraceFilter.class).getLevel();
+    Configurator.setLevel(FuseHttpTraceFilter.class.getName(), Level.WARN);
+  }
+
+  @After
+  public void tearDown() {
+    Configurator.setLevel(FuseHttpTraceFilter.class.getName(), filterLogLevel);
+  }
+
+  @Test
+  public void testRequestIdsDontCollide() throws Exception {
+    assertEquals(THREADS * REQUESTS_PER_THREAD, run("thread local random",
+        new RandomRequestIdGenerator(), THREADS, REQUESTS_PER_THREAD));
+    assertEquals(THREADS * REQUESTS_PER_THREAD, run("snowflake",
+        new SnowflakeRequestIdGenerator(0), THREADS, REQUESTS_PER_THREAD));
+  }
+
+  @Test
+  public void testSampling() throws Exception {
+    int requests = THREADS * REQUESTS_PER_THREAD;
+    for (double probability : new double[] {1, 0.1, 0.01}) {
+      long traces = sample(probability, THREADS, REQUESTS_PER_THREAD);
+      // 10 standard deviations either side
+      double expected = requests * probability;
+      assertEquals(expected, traces, Math.max(1, 10 * Math.sqrt(expected)));
+    }
+  }
+
+  /*
+   * Send requests through the filter from every thread at once, and return the number of distinct
+   * request ids generated.
+   */
+  static int run(final String name, final IRequestIdGenerator generator, final int threads,
+      final int requestsPerThread) throws Exception {
+    Set<String> ids = ConcurrentHashMap.newKeySet();
+    time(name, filter(new InMemoryHttpTraceRepository(), path -> true, generator,
+        TraceSampler.ALWAYS), (request, response) -> ids.add(MDC.get("internal-request-id")),
+        threads, requestsPerThread);
+    log.info("{}: {} colliding ids", name, threads * requestsPerThread - ids.size());
+    return ids.size();
+  }
+
+  /*
+   * Send requests that are traced with the given probability through the filter from every thread
+   * at once, and return the number of requests traced.
+   */
+  static long sample(final double probability, final int threads,
+      final int requestsPerThread) throws Exception {
+    LongAdder traces = new LongAdder();
+    HttpTraceRepository repository = new HttpTraceRepository() {
+      @Override
+      public List<HttpTrace> findAll() {
+        return Collections.emptyList();
+      }
+
+      @Override
+      public void add(final HttpTrace trace) {
+        traces.increment();
+      }
+    };
+    time(probability * 100 + "% traced", filter(repository, path -> false,
+        new SnowflakeRequestIdGenerator(0),
+        new TraceSampler(probability, 0, Collections.emptyMap(), true)),
+        (request, response) -> {
+        }, threads, requestsPerThread);
+    return traces.sum();
+  }
+
+  private static FuseHttpTraceFilter filter(final HttpTraceRepository repository,
+      final Predicate<String> pathsToSkip, final IRequestIdGenerator generator,
+      final TraceSampler sampler) {
+    return new FuseHttpTraceFilter(repository, new HttpExchangeTracer(Include.defaultIncludes()),
+        pathsToSkip, generator, PayloadCapturePolicy.NONE,
+        new RouteLatencyRecorder(new SimpleMeterRegistry(), Duration.ofMinutes(1), 1), sampler);
+  }
+
+  /*
+   * Send requests through the filter from every thread at once, and log how long they took.
+   */
+  private static void time(final String name, final FuseHttpTraceFilter filter,
+      final FilterChain chain, final int threads, final int requestsPerThread) throws Exception {
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> workers = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        workers.add(pool.submit(() -> {
+          start.await();
+          for (int i = 0; i < requestsPerThread; i++) {
+            filter.doFilter(new MockHttpServletRequest("GET", "/benchmark"),
+                new MockHttpServletResponse(), chain);
+          }
+          return null;
+        }));
+      }
+
+      long startNanos = System.nanoTime();
+      start.countDown();
+      for (Future<?> worker : workers) {
+        worker.get(1, TimeUnit.MINUTES);
+      }
+      long elapsedNanos = System.nanoTime() - startNanos;
+
+      int requests = threads * requestsPerThread;
+      log.info("{}: {} requests on {} threads in {}ms, {}ns per request per thread", name,
+          requests, threads, TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+          elapsedNanos * threads / requests);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,109 @@
+package org.galatea.starter.utils.rest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.ServletOutputStream;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class PayloadCaptureResponseWrapperTest {
+
+  private final MockHttpServletResponse response = new MockHttpServletResponse();
+
+  @Test
+  public void testBodyWrittenThroughAndStartCaptured() throws Exception {
+    response.setContentType("application/json");
+    PayloadCaptureResponseWrapper wrapper = new PayloadCaptureResponseWrapper(response, 5, () -> {
+    });
+
+    ServletOutputStream out = wrapper.getOutputStream();
+    out.write("[1,2".getBytes());
+    // Already passed on to the client, not held back
+    assertEquals("[1,2", response.getContentAsString());
+    out.write(",3]".getBytes());
+    out.write('\n');
+
+    assertEquals("[1,2,3]\n", response.getContentAsString());
+    assertEquals("[1,2,", wrapper.getCapturedPayloadAsString());
+    assertEquals(8, wrapper.getBytesWritten());
+  }
+
+  @Test
+  public void testBinaryBodyNotCaptured() throws Exception {
+    response.setContentType("application/vnd.ms-excel");
+    PayloadCaptureResponseWrapper wrapper =
+        new PayloadCaptureResponseWrapper(response, 1000, () -> {
+        });
+
+    wrapper.getOutputStream().write(new byte[] {1, 2, 3});
+
+    assertArrayEquals(new byte[] {1, 2, 3}, response.getContentAsByteArray());
+    assertNull(wrapper.getCapturedPayload());
+  }
+
+  @Test
+  public void testWriterCaptured() throws Exception {
+    response.setContentType("text/csv");
+    response.setCharacterEncoding("UTF-8");
+    PayloadCaptureResponseWrapper wrapper = new PayloadCaptureResponseWrapper(response, 100, () -> {
+    });
+
+    PrintWriter writer = wrapper.getWriter();
+    writer.print("a,b\n1,2\n");
+    wrapper.flushWriter();
+
+    assertEquals("a,b\n1,2\n", response.getContentAsString());
+    assertEquals("a,b\n1,2\n", wrapper.getCapturedPayloadAsString());
+  }
+
+  @Test
+  public void testBeforeCommitRunOnceBeforeBody() throws Exception {
+    AtomicInteger runs = new AtomicInteger();
+    PayloadCaptureResponseWrapper wrapper = new PayloadCaptureResponseWrapper(response, 0, () -> {
+      runs.incrementAndGet();
+      // Nothing's been written yet, so headers can still be added
+      assertFalse(response.isCommitted());
+      assertEquals(0, response.getContentAsByteArray().length);
+      response.addHeader("audit", "yes");
+    });
+
+    wrapper.getOutputStream().write(1);
+    wrapper.getOutputStream().write(2);
+    wrapper.flushBuffer();
+    wrapper.runBeforeCommit();
+
+    assertEquals(1, runs.get());
+    assertEquals("yes", response.getHeader("audit"));
+    assertTrue(response.isCommitted());
+  }
+
+  @Test
+  public void testBeforeCommitRunWithoutBody() {
+    AtomicInteger runs = new AtomicInteger();
+    PayloadCaptureResponseWrapper wrapper =
+        new PayloadCaptureResponseWrapper(response, 0, runs::incrementAndGet);
+
+    wrapper.runBeforeCommit();
+    wrapper.runBeforeCommit();
+
+    assertEquals(1, runs.get());
+  }
+
+  @Test
+  public void testOnlyTextPayloadsCapturable() {
+    assertTrue(PayloadCapturePolicy.isCapturable("application/json;charset=UTF-8"));
+    assertTrue(PayloadCapturePolicy.isCapturable("application/hal+json"));
+    assertTrue(PayloadCapturePolicy.isCapturable("text/csv"));
+    assertTrue(PayloadCapturePolicy.isCapturable("application/x-ndjson"));
+    assertFalse(PayloadCapturePolicy.isCapturable("application/vnd.ms-excel"));
+    assertFalse(PayloadCapturePolicy.isCapturable("application/x-protobuf"));
+    assertFalse(PayloadCapturePolicy.isCapturable("not a type"));
+    assertFalse(PayloadCapturePolicy.isCapturable(null));
+  }
+}
@@ -0,0 +1,85 @@
+package org.galatea.starter.utils.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.galatea.starter.utils.rest.RouteLatencyRecorder.RouteLatency;
+import org.junit.Test;
+
+public class RouteLatencyRecorderTest {
+
+  private final MeterRegistry registry = new SimpleMeterRegistry();
+
+  private final RouteLatencyRecorder recorder =
+      new RouteLatencyRecorder(registry, Duration.ofMinutes(1), 2);
+
+  @Test
+  public void testLatenciesRecordedPerRoute() {
+    for (int i = 1; i <= 1000; i++) {
+      recorder.record("GET", "/settlementEngine/mission/{id}", 200,
+          TimeUnit.MICROSECONDS.toNanos(i));
+    }
+    recorder.record("GET", "/iex/symbols", 200, 1);
+
+    List<RouteLatency> latencies = recorder.snapshot();
+
+    assertEquals(2, latencies.size());
+    assertEquals("/iex/symbols", latencies.get(0).getRoute());
+    RouteLatency mission = latencies.get(1);
+    assertEquals("/settlementEngine/mission/{id}", mission.getRoute());
+    assertEquals("GET", mission.getMethod());
+    assertEquals("2xx", mission.getStatus());
+    assertEquals(1000, mission.getCount());
+    // HDR histograms are accurate to the percentile precision, here two significant digits
+    assertEquals(0.5, mission.getP50Millis(), 0.01);
+    assertEquals(0.99, mission.getP99Millis(), 0.02);
+    assertEquals(1.0, mission.getMaxMillis(), 0.001);
+  }
+
+  @Test
+  public void testNanosecondLatenciesKept() {
+    recorder.record("GET", "/iex/symbols", 200, 1_500);
+
+    RouteLatency latency = recorder.snapshot().get(0);
+
+    assertEquals(0.0015, latency.getMaxMillis(), 0.000001);
+  }
+
+  @Test
+  public void testTimersTagged() {
+    recorder.record("POST", "/settlementEngine", 500, 1_000_000);
+
+    Timer timer = registry.find(RouteLatencyRecorder.METRIC_NAME)
+        .tags("route", "/settlementEngine", "group", "settlementEngine", "method", "POST",
+            "status", "5xx")
+        .timer();
+    assertNotNull(timer);
+    assertEquals(1, timer.count());
+  }
+
+  @Test
+  public void testUnmappedRequestsShareARoute() {
+    recorder.record("GET", null, 404, 1);
+    recorder.record("GET", null, 404, 1);
+
+    List<RouteLatency> latencies = recorder.snapshot();
+
+    assertEquals(1, latencies.size());
+    assertEquals(RouteLatencyRecorder.UNMAPPED_ROUTE, latencies.get(0).getRoute());
+    assertEquals(2, latencies.get(0).getCount());
+  }
+
+  @Test
+  public void testGroup() {
+    assertEquals("iex", RouteLatencyRecorder.group("/iex/historicalPrices/batch"));
+    assertEquals("hal", RouteLatencyRecorder.group("/hal"));
+    assertEquals("root", RouteLatencyRecorder.group("/"));
+    assertEquals("UNMAPPED", RouteLatencyRecorder.group(RouteLatencyRecorder.UNMAPPED_ROUTE));
+  }
+}
@@ -0,0 +1,71 @@
+package org.galatea.starter.utils.rest;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.Test;
+
+public class SnowflakeRequestIdGeneratorTest {
+
+  @Test
+  public void testIdsIncrease() {
+    SnowflakeRequestIdGenerator generator = new SnowflakeRequestIdGenerator(1);
+    long previous = generator.nextLongId();
+    // Far more than fit in one millisecond, so the sequence overflows
+    for (int i = 0; i < 100_000; i++) {
+      long next = generator.nextLongId();
+      assertThat(next, greaterThan(previous));
+      previous = next;
+    }
+  }
+
+  @Test
+  public void testNodeIdEncoded() {
+    long id = Long.parseLong(new SnowflakeRequestIdGenerator(723).nextId());
+
+    assertEquals(723, (id >>> 12) & SnowflakeRequestIdGenerator.MAX_NODE_ID);
+  }
+
+  @Test
+  public void testNodesDontCollide() {
+    SnowflakeRequestIdGenerator node1 = new SnowflakeRequestIdGenerator(1);
+    SnowflakeRequestIdGenerator node2 = new SnowflakeRequestIdGenerator(2);
+    Set<Long> ids = ConcurrentHashMap.newKeySet();
+
+    for (int i = 0; i < 10_000; i++) {
+      ids.add(node1.nextLongId());
+      ids.add(node2.nextLongId());
+    }
+
+    assertEquals(20_000, ids.size());
+  }
+
+  @Test
+  public void testUniqueAcrossThreads() {
+    SnowflakeRequestIdGenerator generator = new SnowflakeRequestIdGenerator(0);
+    Set<Long> ids = ConcurrentHashMap.newKeySet();
+
+    List<CompletableFuture<Void>> threads = IntStream.range(0, 16)
+        .mapToObj(t -> CompletableFuture.runAsync(() -> {
+          for (int i = 0; i < 10_000; i++) {
+            ids.add(generator.nextLongId());
+          }
+        }))
+        .collect(Collectors.toList());
+    threads.forEach(CompletableFuture::join);
+
+    assertEquals(160_000, ids.size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNodeIdOutOfRange() {
+    new SnowflakeRequestIdGenerator(SnowflakeRequestIdGenerator.MAX_NODE_ID + 1);
+  }
+}
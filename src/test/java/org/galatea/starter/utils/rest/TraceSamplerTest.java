@@ -0,0 +1,70 @@
+package org.galatea.starter.utils.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.Collections;
+import java.util.stream.IntStream;
+import org.junit.Test;
+
+public class TraceSamplerTest {
+
+  @Test
+  public void testAlwaysAndNever() {
+    TraceSampler never = new TraceSampler(0, 0, Collections.emptyMap(), false);
+
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(TraceSampler.ALWAYS.sample("/settlementEngine"));
+      assertFalse(never.sample("/settlementEngine"));
+    }
+  }
+
+  @Test
+  public void testProbability() {
+    TraceSampler sampler = new TraceSampler(0.1, 0, Collections.emptyMap(), true);
+
+    long sampled = IntStream.range(0, 100_000).filter(i -> sampler.sample("/iex/symbols")).count();
+
+    // 10 standard deviations either side
+    assertEquals(10_000, sampled, 1_000);
+  }
+
+  @Test
+  public void testLongestRoutePrefixWins() {
+    TraceSampler sampler = new TraceSampler(0.5, 0,
+        ImmutableMap.of("/iex", 0.0, "/iex/historicalPrices", 1.0), true);
+
+    assertEquals(0.5, sampler.probability("/settlementEngine"), 0);
+    assertEquals(0.0, sampler.probability("/iex/symbols"), 0);
+    assertEquals(1.0, sampler.probability("/iex/historicalPrices/batch"), 0);
+    assertFalse(sampler.sample("/iex/symbols"));
+    assertTrue(sampler.sample("/iex/historicalPrices"));
+  }
+
+  @Test
+  public void testRateLimited() {
+    TraceSampler sampler = new TraceSampler(1, 100, Collections.emptyMap(), true);
+
+    long sampled = IntStream.range(0, 10_000).filter(i -> sampler.sample("/hal")).count();
+
+    // A second's worth are let through straight away, and a few more as time passes
+    assertTrue("Sampled " + sampled, sampled >= 100 && sampled < 200);
+  }
+
+  @Test
+  public void testRateLimitedBelowOneASecond() {
+    TraceSampler sampler = new TraceSampler(1, 0.5, Collections.emptyMap(), true);
+
+    long sampled = IntStream.range(0, 10_000).filter(i -> sampler.sample("/hal")).count();
+
+    // The first is let through straight away, and the next not for another two seconds
+    assertEquals(1, sampled);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidRouteProbability() {
+    new TraceSampler(1, 0, ImmutableMap.of("/iex", 1.5), true);
+  }
+}